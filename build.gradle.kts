@@ -6,6 +6,7 @@ plugins {
     id("com.diffplug.spotless") version "6.21.0"
     `maven-publish`
     base
+    id("me.champeau.jmh") version "0.7.1"
 }
 group = "net.rptools.advanced-dice"
 version = "1.0-SNAPSHOT"
@@ -58,6 +59,51 @@ spotless {
     }
 }
 
+jmh {
+    jmhVersion.set("1.37")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    resultFormat.set("JSON")
+    // Run a subset with e.g. -PjmhInclude=GenesysDiceRollerBenchmark.lex
+    (project.findProperty("jmhInclude") as String?)?.let { includes.add(it) }
+    // Only meaningful with a single iteration in each fork, run it with jmhStartup instead
+    excludes.add("GenesysStartupBenchmark")
+}
+
+// Runs the benchmarks with the allocation profiler, reporting bytes allocated per operation
+tasks.register<JavaExec>("jmhGc") {
+    group = "benchmark"
+    description = "Runs the JMH benchmarks with the GC allocation profiler (-prof gc)."
+    val jmhJar = tasks.named<Jar>("jmhJar")
+    dependsOn(jmhJar)
+    classpath = files(jmhJar.flatMap { it.archiveFile })
+    mainClass.set("org.openjdk.jmh.Main")
+    val resultFile = layout.buildDirectory.file("results/jmh/gc-results.json")
+    outputs.file(resultFile)
+    args("-prof", "gc", "-f", "1", "-wi", "3", "-i", "5", "-rf", "json")
+    argumentProviders.add(CommandLineArgumentProvider {
+        listOf("-rff", resultFile.get().asFile.path) +
+            listOfNotNull(project.findProperty("jmhInclude") as String?)
+    })
+}
+
+// Times the first roll in fresh JVMs, each fork rolls once with no warmup iterations
+tasks.register<JavaExec>("jmhStartup") {
+    group = "benchmark"
+    description = "Runs the startup benchmark, timing the first roll in fresh JVMs."
+    val jmhJar = tasks.named<Jar>("jmhJar")
+    dependsOn(jmhJar)
+    classpath = files(jmhJar.flatMap { it.archiveFile })
+    mainClass.set("org.openjdk.jmh.Main")
+    val resultFile = layout.buildDirectory.file("results/jmh/startup-results.json")
+    outputs.file(resultFile)
+    args("GenesysStartupBenchmark", "-bm", "ss", "-f", "20", "-wi", "0", "-i", "1", "-rf", "json")
+    argumentProviders.add(CommandLineArgumentProvider {
+        listOf("-rff", resultFile.get().asFile.path)
+    })
+}
+
 tasks.withType<Test> {
     useJUnitPlatform()
     //jvmArgs("--enable-preview")
@@ -71,6 +117,36 @@ application {
     mainClass.set("net.rptools.maptool.advanceddice.Main")
 }
 
+// AppCDS archive of the classes loaded while warming up and rolling, so they are mapped from the
+// archive instead of being loaded and verified at startup. CDS only archives classes from jars.
+val cdsArchiveFile = layout.buildDirectory.file("cds/advanced-dice.jsa")
+
+tasks.register<JavaExec>("cdsArchive") {
+    group = "build"
+    description = "Creates an AppCDS archive from a warmed up run of the application."
+    val jar = tasks.named<Jar>("jar")
+    dependsOn(jar)
+    classpath = files(jar.flatMap { it.archiveFile }, configurations.named("runtimeClasspath"))
+    mainClass.set(application.mainClass)
+    args("--warm-up")
+    outputs.file(cdsArchiveFile)
+    jvmArgumentProviders.add(CommandLineArgumentProvider {
+        listOf("-XX:ArchiveClassesAtExit=" + cdsArchiveFile.get().asFile.path)
+    })
+}
+
+tasks.register<JavaExec>("runCds") {
+    group = "application"
+    description = "Runs the application using the AppCDS archive."
+    val jar = tasks.named<Jar>("jar")
+    dependsOn("cdsArchive")
+    classpath = files(jar.flatMap { it.archiveFile }, configurations.named("runtimeClasspath"))
+    mainClass.set(application.mainClass)
+    jvmArgumentProviders.add(CommandLineArgumentProvider {
+        listOf("-XX:SharedArchiveFile=" + cdsArchiveFile.get().asFile.path)
+    })
+}
+
 tasks.generateGrammarSource {
     maxHeapSize = "64m"
     arguments = arguments + listOf(
@@ -0,0 +1,126 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+import net.rptools.maptool.advanceddice.DiceErrorListener;
+import net.rptools.maptool.advanceddice.RandomSource;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceLexer;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.StartGenesysContext;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks rolling the totals of a prepared roll compiled into method handles against walking
+ * the plan and against {@link GenesysDiceRollVisitor}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GenesysCompiledRollBenchmark {
+
+  /** Resolver used for all variables, properties and prompts by the visitor. */
+  private static final ToIntFunction<String> RESOLVER = n -> 2;
+
+  /** The expressions to benchmark. */
+  @Param({"3g2y1p1r", "2y3g{@skill}p{var}b{?prompt}k", "yellow,green,purple,red,blue,black,white"})
+  public String expression;
+
+  /** The expression prepared with its totals compiled. */
+  private GenesysPreparedRoll compiled;
+
+  /** The expression prepared with its totals never compiled. */
+  private GenesysPreparedRoll walked;
+
+  /** The values of the slots, the same as {@link #RESOLVER} gives. */
+  private int[] slotValues;
+
+  /** The syntax tree of the expression, used as input to the visitor. */
+  private StartGenesysContext tree;
+
+  /** The source of random numbers used by the visitor. */
+  private RandomSource randomSource;
+
+  /** Prepares the expression. */
+  @Setup
+  public void setup() {
+    randomSource = RandomSource.threadLocal();
+    compiled = prepare(expression, randomSource, 0);
+    walked = prepare(expression, randomSource, Integer.MAX_VALUE);
+    slotValues = new int[compiled.getSlots().size()];
+    Arrays.fill(slotValues, 2);
+    var lexer = new GenesysDiceLexer(CharStreams.fromString(expression));
+    lexer.removeErrorListeners();
+    tree = GenesysDiceRoller.parse(new CommonTokenStream(lexer), new DiceErrorListener());
+  }
+
+  /**
+   * Prepares an expression.
+   *
+   * @param expr the expression.
+   * @param randomSource the source of random numbers used to roll the dice.
+   * @param compileThreshold the number of times the totals are rolled before they are compiled.
+   * @return the prepared roll.
+   */
+  private static GenesysPreparedRoll prepare(
+      String expr, RandomSource randomSource, int compileThreshold) {
+    return new GenesysDiceRollerBuilder()
+        .setPlanCache(new GenesysRollPlanCache(0))
+        .setRandomSource(randomSource)
+        .setCompileThreshold(compileThreshold)
+        .build()
+        .prepare(expr);
+  }
+
+  /**
+   * Rolls the totals with the compiled method handles.
+   *
+   * @return the totals.
+   */
+  @Benchmark
+  public GenesysDiceCounts compiled() {
+    return compiled.executeCounts(slotValues);
+  }
+
+  /**
+   * Rolls the totals by walking the plan.
+   *
+   * @return the totals.
+   */
+  @Benchmark
+  public GenesysDiceCounts walked() {
+    return walked.executeCounts(slotValues);
+  }
+
+  /**
+   * Rolls the dice by walking the syntax tree with {@link GenesysDiceRollVisitor}.
+   *
+   * @return the result builder.
+   */
+  @Benchmark
+  public GenesysDiceResultBuilder visit() {
+    return new GenesysDiceRollVisitor(RESOLVER, RESOLVER, RESOLVER, randomSource).visit(tree);
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+import net.rptools.maptool.advanceddice.RandomSource;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks encoding and decoding results with {@link GenesysDiceResultCodec} against writing
+ * them as JSON. The encoded size in each format is reported as the {@code binaryBytes} and {@code
+ * jsonBytes} counters. That results round trip is checked by {@code GenesysDiceResultCodecTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GenesysDiceResultCodecBenchmark {
+
+  /** Resolver used for all variables, properties and prompts. */
+  private static final ToIntFunction<String> RESOLVER = n -> 2;
+
+  /** The expressions to benchmark. */
+  @Param({"3g2y1p1r", "(a:2y(b:g(c:p(d:r(e:3g2y)))))", "20y20g20p", "250y250g250p250r"})
+  public String expression;
+
+  /** The result being encoded. */
+  private GenesysDiceResult result;
+
+  /** The buffer results are encoded into. */
+  private ByteBuffer buffer;
+
+  /** The encoded result, used as input to the decode benchmark. */
+  private ByteBuffer encoded;
+
+  /**
+   * Counters reporting the encoded size of the result in each format, in bytes. They are set on
+   * every invocation so each iteration reports the size rather than a total.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class EncodedSize {
+    /** The size of the binary encoding. */
+    public long binaryBytes;
+
+    /** The size of the JSON encoding. */
+    public long jsonBytes;
+  }
+
+  /** Rolls the result and encodes it. */
+  @Setup
+  public void setup() {
+    var roller = new GenesysDiceRollerBuilder().setRandomSource(RandomSource.seeded(1)).build();
+    result = roller.roll(expression, RESOLVER, RESOLVER, RESOLVER);
+    buffer = ByteBuffer.allocate(GenesysDiceResultCodec.encodedSize(result));
+    encoded = GenesysDiceResultCodec.encode(result);
+  }
+
+  /**
+   * Encodes the result into a reused buffer.
+   *
+   * @param size the counters the encoded size is reported to.
+   * @return the buffer.
+   */
+  @Benchmark
+  public ByteBuffer encode(EncodedSize size) {
+    GenesysDiceResultCodec.encode(result, buffer.clear());
+    size.binaryBytes = buffer.position();
+    return buffer;
+  }
+
+  /**
+   * Decodes the encoded result.
+   *
+   * @return the result.
+   */
+  @Benchmark
+  public GenesysDiceResult decode() {
+    return GenesysDiceResultCodec.decode(encoded.rewind());
+  }
+
+  /**
+   * Writes the result as UTF-8 JSON, with every die as an object as a generic serializer would.
+   *
+   * @param size the counters the encoded size is reported to.
+   * @return the JSON.
+   */
+  @Benchmark
+  public byte[] encodeJson(EncodedSize size) {
+    var json = new StringBuilder();
+    appendJson(json, result);
+    var bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+    size.jsonBytes = bytes.length;
+    return bytes;
+  }
+
+  /**
+   * Appends a result as JSON.
+   *
+   * @param json the JSON to append to.
+   * @param result the result.
+   */
+  private static void appendJson(StringBuilder json, GenesysDiceResult result) {
+    json.append("{\"rollString\":\"").append(result.getRollString()).append("\",\"rolls\":[");
+    var rolls = result.getRolls();
+    for (int i = 0; i < rolls.size(); i++) {
+      json.append(i == 0 ? "" : ",")
+          .append("{\"diceType\":\"")
+          .append(rolls.get(i).diceType())
+          .append("\",\"resultType\":\"")
+          .append(rolls.get(i).resultType())
+          .append("\"}");
+    }
+    json.append("],\"summarizedResults\":[");
+    var summarized = result.getSummarizedResults();
+    for (int i = 0; i < summarized.size(); i++) {
+      json.append(i == 0 ? "" : ",")
+          .append("{\"diceType\":\"")
+          .append(summarized.get(i).diceType())
+          .append("\",\"resultType\":\"")
+          .append(summarized.get(i).resultType())
+          .append("\",\"count\":")
+          .append(summarized.get(i).count())
+          .append('}');
+    }
+    json.append("],\"successCount\":").append(result.getSuccessCount());
+    json.append(",\"failureCount\":").append(result.getFailureCount());
+    json.append(",\"advantageCount\":").append(result.getAdvantageCount());
+    json.append(",\"threatCount\":").append(result.getThreatCount());
+    json.append(",\"triumphCount\":").append(result.getTriumphCount());
+    json.append(",\"despairCount\":").append(result.getDespairCount());
+    json.append(",\"lightCount\":").append(result.getLightCount());
+    json.append(",\"darkCount\":").append(result.getDarkCount());
+    json.append(",\"groups\":{");
+    boolean first = true;
+    for (var name : result.getGroupNames()) {
+      json.append(first ? "\"" : ",\"").append(name).append("\":");
+      appendJson(json, result.getGroup(name));
+      first = false;
+    }
+    json.append("},\"errors\":[]}");
+  }
+}
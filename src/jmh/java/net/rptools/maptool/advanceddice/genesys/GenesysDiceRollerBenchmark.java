@@ -0,0 +1,240 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+import net.rptools.maptool.advanceddice.DiceErrorListener;
+import net.rptools.maptool.advanceddice.RandomSource;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceLexer;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.StartGenesysContext;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ListTokenSource;
+import org.antlr.v4.runtime.Token;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks for rolling Genesys dice, both end to end and for each phase of a roll on its own
+ * (lexing, parsing, visiting and building the result).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GenesysDiceRollerBenchmark {
+
+  /** Resolver used for all variables, properties and prompts. */
+  private static final ToIntFunction<String> RESOLVER = n -> 2;
+
+  /** The expressions to benchmark, from a single die to deeply grouped and very large pools. */
+  @Param({
+    "y",
+    "3g2y1p1r",
+    "2y3g{@skill}p{var}b{?prompt}k",
+    "yellow,green,purple,red,blue,black,white,success,advantage,threat",
+    "(a:2y(b:g(c:p(d:r(e:3g2y)))))",
+    "(a:(b:(c:(d:(e:(f:(g:(h:y)g)p)r)b)k)w)2y)",
+    "1000g",
+    "250y250g250p250r"
+  })
+  public String expression;
+
+  /** Roller that uses a plan cache. */
+  private GenesysDiceRoller cachedRoller;
+
+  /** Roller that uses a plan cache and measures each roll. */
+  private GenesysDiceRoller instrumentedRoller;
+
+  /** Roller that parses the expression on every roll. */
+  private GenesysDiceRoller uncachedRoller;
+
+  /** The expression prepared by the cached roller. */
+  private GenesysPreparedRoll prepared;
+
+  /** The values of the slots of the prepared expression, the same as {@link #RESOLVER} gives. */
+  private int[] slotValues;
+
+  /** The tokens of the expression, used as input to the parse phase. */
+  private List<? extends Token> tokens;
+
+  /** The syntax tree of the expression, used as input to the visit phases. */
+  private StartGenesysContext tree;
+
+  /** The plan for the expression. */
+  private GenesysRollPlan plan;
+
+  /** The context used when evaluating the plan directly. */
+  private GenesysRollPlan.RollContext context;
+
+  /** A builder holding the evaluated expression, used as input to the build phase. */
+  private GenesysDiceResultBuilder builder;
+
+  /** Prepares the inputs for each of the phases. */
+  @Setup
+  public void setup() {
+    var randomSource = RandomSource.threadLocal();
+    cachedRoller = new GenesysDiceRoller(new GenesysRollPlanCache(), randomSource);
+    uncachedRoller = new GenesysDiceRoller(new GenesysRollPlanCache(0), randomSource);
+    instrumentedRoller =
+        new GenesysDiceRollerBuilder()
+            .setPlanCache(new GenesysRollPlanCache())
+            .setRandomSource(randomSource)
+            .setMetrics(measurement -> {})
+            .build();
+    prepared = cachedRoller.prepare(expression);
+    slotValues = new int[prepared.getSlots().size()];
+    Arrays.fill(slotValues, 2);
+    tokens = lex();
+    tree = parse();
+    plan = cachedRoller.getPlan(expression);
+    context = cachedRoller.createContext(RESOLVER, RESOLVER, RESOLVER);
+    builder = visit();
+  }
+
+  /**
+   * Rolls the expression end to end with a warm plan cache.
+   *
+   * @return the result.
+   */
+  @Benchmark
+  public GenesysDiceResult roll() {
+    return cachedRoller.roll(expression, RESOLVER, RESOLVER, RESOLVER);
+  }
+
+  /**
+   * Rolls the expression end to end with a warm plan cache, measuring each phase.
+   *
+   * @return the result.
+   */
+  @Benchmark
+  public GenesysDiceResult rollInstrumented() {
+    return instrumentedRoller.roll(expression, RESOLVER, RESOLVER, RESOLVER);
+  }
+
+  /**
+   * Rolls the prepared expression with the values of its slots.
+   *
+   * @return the result.
+   */
+  @Benchmark
+  public GenesysDiceResult rollPrepared() {
+    return prepared.execute(slotValues);
+  }
+
+  /**
+   * Gets the canonical pool of the expression with a warm plan cache.
+   *
+   * @return the pool.
+   */
+  @Benchmark
+  public GenesysDicePool pool() {
+    return cachedRoller.getPool(expression, RESOLVER, RESOLVER, RESOLVER);
+  }
+
+  /**
+   * Rolls the expression end to end, lexing and parsing it every time.
+   *
+   * @return the result.
+   */
+  @Benchmark
+  public GenesysDiceResult rollUncached() {
+    return uncachedRoller.roll(expression, RESOLVER, RESOLVER, RESOLVER);
+  }
+
+  /**
+   * Rolls the expression end to end keeping only the totals.
+   *
+   * @return the result.
+   */
+  @Benchmark
+  public GenesysDiceCounts rollCounts() {
+    return cachedRoller.rollCounts(expression, RESOLVER, RESOLVER, RESOLVER);
+  }
+
+  /**
+   * Lexes the expression.
+   *
+   * @return the tokens.
+   */
+  @Benchmark
+  public List<? extends Token> lex() {
+    var lexer = new GenesysDiceLexer(CharStreams.fromString(expression));
+    lexer.removeErrorListeners();
+    return lexer.getAllTokens();
+  }
+
+  /**
+   * Parses the already lexed expression the same way as the roller, SLL first then LL.
+   *
+   * @return the syntax tree.
+   */
+  @Benchmark
+  public StartGenesysContext parse() {
+    return GenesysDiceRoller.parse(
+        new CommonTokenStream(new ListTokenSource(tokens)), new DiceErrorListener());
+  }
+
+  /**
+   * Compiles the syntax tree into a plan.
+   *
+   * @return the root of the plan.
+   */
+  @Benchmark
+  public GenesysRollPlan.Node compile() {
+    return new GenesysRollPlanVisitor(expression).visit(tree);
+  }
+
+  /**
+   * Rolls the dice by walking the syntax tree with {@link GenesysDiceRollVisitor}.
+   *
+   * @return the result builder.
+   */
+  @Benchmark
+  public GenesysDiceResultBuilder visit() {
+    return new GenesysDiceRollVisitor(RESOLVER, RESOLVER, RESOLVER, context.randomSource())
+        .visit(tree);
+  }
+
+  /**
+   * Rolls the dice by evaluating the plan.
+   *
+   * @return the result builder.
+   */
+  @Benchmark
+  public GenesysDiceResultBuilder evaluate() {
+    var result = new GenesysDiceResultBuilder();
+    plan.getRoot().evaluate(context, result);
+    return result;
+  }
+
+  /**
+   * Builds the result from an already evaluated builder.
+   *
+   * @return the result.
+   */
+  @Benchmark
+  public GenesysDiceResult build() {
+    return builder.build();
+  }
+}
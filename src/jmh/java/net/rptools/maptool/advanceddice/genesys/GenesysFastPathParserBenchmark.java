@@ -0,0 +1,58 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks compiling flat dice pools with {@link GenesysFastPathParser} against the ANTLR
+ * parser. That both give the same plans is checked by {@code GenesysFastPathParserTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GenesysFastPathParserBenchmark {
+
+  /** The flat pools to benchmark. */
+  @Param({"y", "3g2y1p1r", "2y3g{@skill}p{var}b{?prompt}k", "250y250g250p250r"})
+  public String expression;
+
+  /**
+   * Compiles the expression with the fast path.
+   *
+   * @return the plan.
+   */
+  @Benchmark
+  public GenesysRollPlan fastPath() {
+    return GenesysFastPathParser.parse(expression);
+  }
+
+  /**
+   * Compiles the expression with the ANTLR parser.
+   *
+   * @return the plan.
+   */
+  @Benchmark
+  public GenesysRollPlan antlr() {
+    return GenesysDiceRoller.compileWithAntlr(expression);
+  }
+}
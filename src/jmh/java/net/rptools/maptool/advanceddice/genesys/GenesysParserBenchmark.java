@@ -0,0 +1,112 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import net.rptools.maptool.advanceddice.DiceErrorListener;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceLexer;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.StartGenesysContext;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ListTokenSource;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the parse phase with full LL prediction against the SLL first parse used by the
+ * roller. That both parses agree is checked by {@code GenesysParserTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GenesysParserBenchmark {
+
+  /** The expressions to benchmark. */
+  @Param({
+    "3g2y1p1r",
+    "2y3g{@skill}p{var}b{?prompt}k",
+    "(a:2y(b:g(c:p(d:r(e:3g2y)))))",
+    "(a:(b:(c:(d:(e:(f:(g:(h:y)g)p)r)b)k)w)2y)"
+  })
+  public String expression;
+
+  /** The tokens of the expression. */
+  private List<? extends Token> tokens;
+
+  /** Lexes the expression. */
+  @Setup
+  public void setup() {
+    tokens = lex(expression);
+  }
+
+  /**
+   * Lexes an expression.
+   *
+   * @param expr the expression.
+   * @return the tokens.
+   */
+  private static List<? extends Token> lex(String expr) {
+    var lexer = new GenesysDiceLexer(CharStreams.fromString(expr));
+    lexer.removeErrorListeners();
+    return lexer.getAllTokens();
+  }
+
+  /**
+   * Parses tokens with full LL prediction only.
+   *
+   * @param tokens the tokens.
+   * @param errorListener the listener the syntax errors are reported to.
+   * @return the syntax tree.
+   */
+  private static StartGenesysContext parseLl(
+      CommonTokenStream tokens, DiceErrorListener errorListener) {
+    var parser = new GenesysDiceParser(tokens);
+    parser.removeErrorListeners();
+    parser.addErrorListener(errorListener);
+    parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+    return parser.startGenesys();
+  }
+
+  /**
+   * Parses the expression with full LL prediction.
+   *
+   * @return the syntax tree.
+   */
+  @Benchmark
+  public StartGenesysContext parseLl() {
+    return parseLl(new CommonTokenStream(new ListTokenSource(tokens)), new DiceErrorListener());
+  }
+
+  /**
+   * Parses the expression with SLL prediction, falling back to LL on errors.
+   *
+   * @return the syntax tree.
+   */
+  @Benchmark
+  public StartGenesysContext parseTwoStage() {
+    return GenesysDiceRoller.parse(
+        new CommonTokenStream(new ListTokenSource(tokens)), new DiceErrorListener());
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time to the first roll in a fresh JVM, with and without calling {@link
+ * GenesysDiceRoller#warmUp()} beforehand. Each fork runs a single roll, so this must be run with
+ * no warmup iterations and one measurement iteration, e.g. with the {@code jmhStartup} task.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(20)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+public class GenesysStartupBenchmark {
+
+  /** Resolver used for all variables, properties and prompts. */
+  private static final ToIntFunction<String> RESOLVER = n -> 2;
+
+  /** The expressions to roll, a flat pool and one that needs the ANTLR parser. */
+  @Param({"3g2y1p1r", "(a:2y(b:3g))p{var}b"})
+  public String expression;
+
+  /** If the roller is warmed up before the first roll. */
+  @Param({"false", "true"})
+  public boolean warmUp;
+
+  /** Warms up the roller if requested, outside the measured time. */
+  @Setup
+  public void setup() {
+    if (warmUp) {
+      GenesysDiceRoller.warmUp();
+    }
+  }
+
+  /**
+   * Rolls the expression for the first time.
+   *
+   * @return the result.
+   */
+  @Benchmark
+  public GenesysDiceResult firstRoll() {
+    return new GenesysDiceRoller(new GenesysRollPlanCache())
+        .roll(expression, RESOLVER, RESOLVER, RESOLVER);
+  }
+}
@@ -11,18 +11,18 @@ startGenesys                  : genesysRolls EOF
 genesysRolls                  : (genesysRoll COMMA?)*
                               ;
 
+// The count is optional for both dice and results, so a count is never parsed twice to find out
+// which of them follows, and every decision can be made by looking at most two tokens ahead
 genesysRoll                   : genesysMultipleRoll
-                              | genesysDiceType
                               | genesysMultipleDiceResults
-                              | genesysDiceResults
                               | groupedGenesysRoll
                               | genesysFunction
                               ;
 
-genesysMultipleRoll           : num=genesysNumberDice genesysDiceType
+genesysMultipleRoll           : num=genesysNumberDice? genesysDiceType
                               ;
 
-genesysMultipleDiceResults    : num=genesysNumberDice genesysDiceResults
+genesysMultipleDiceResults    : num=genesysNumberDice? genesysDiceResults
                               ;
 
 groupedGenesysRoll            : LPAREN groupName? genesysRolls RPAREN
@@ -14,14 +14,159 @@
  */
 package net.rptools.maptool.advanceddice;
 
-import java.security.SecureRandom;
-import java.util.Random;
-
 public class DiceRoller {
 
-  private final Random random = new SecureRandom();
+  /** Half the natural logarithm of {@code 2 * PI}. */
+  private static final double HALF_LOG_TWO_PI = 0.5 * StrictMath.log(2 * Math.PI);
+
+  /** The natural logarithms of the factorials too small for Stirling's series. */
+  private static final double[] LOG_FACTORIALS = new double[16];
+
+  static {
+    for (int k = 2; k < LOG_FACTORIALS.length; k++) {
+      LOG_FACTORIALS[k] = LOG_FACTORIALS[k - 1] + StrictMath.log(k);
+    }
+  }
+
+  private final RandomSource randomSource;
+
+  public DiceRoller() {
+    this(RandomSource.secure());
+  }
+
+  public DiceRoller(RandomSource randomSource) {
+    this.randomSource = randomSource;
+  }
 
   public int rollDice(int sides) {
-    return random.nextInt(sides) + 1;
+    return randomSource.nextInt(sides) + 1;
+  }
+
+  /**
+   * Rolls a number of dice and returns how many landed on each side, without rolling the dice one
+   * at a time. The counts are sampled from the multinomial distribution as a chain of binomials, so
+   * the cost depends on the number of sides rather than the number of dice. The sampling uses
+   * {@link StrictMath} so a seeded random source gives the same counts on every JVM.
+   *
+   * @param count the number of dice to roll.
+   * @param sides the number of sides on each die.
+   * @return the number of dice that landed on each side, indexed from {@code 0}.
+   * @throws IllegalArgumentException if the count is negative or the number of sides is not
+   *     positive.
+   */
+  public int[] rollDiceCounts(int count, int sides) {
+    if (count < 0) {
+      throw new IllegalArgumentException("Number of dice can not be negative: " + count);
+    }
+    if (sides <= 0) {
+      throw new IllegalArgumentException("Number of sides must be positive: " + sides);
+    }
+    var counts = new int[sides];
+    int remaining = count;
+    for (int side = 0; side < sides - 1 && remaining > 0; side++) {
+      counts[side] = binomial(remaining, 1.0 / (sides - side));
+      remaining -= counts[side];
+    }
+    counts[sides - 1] += remaining;
+    return counts;
+  }
+
+  /**
+   * Samples the number of successes in a number of trials.
+   *
+   * @param n the number of trials.
+   * @param p the probability of success of each trial.
+   * @return the number of successes.
+   */
+  private int binomial(int n, double p) {
+    if (p >= 1.0) {
+      return n;
+    }
+    if (p > 0.5) {
+      return n - binomial(n, 1.0 - p);
+    }
+    if (n * p < 10) {
+      return binomialInversion(n, p);
+    }
+    return binomialBtrs(n, p);
+  }
+
+  /**
+   * Samples a binomial by inverting its distribution function, which takes about {@code n * p}
+   * steps.
+   *
+   * @param n the number of trials.
+   * @param p the probability of success of each trial, at most {@code 0.5}.
+   * @return the number of successes.
+   */
+  private int binomialInversion(int n, double p) {
+    double q = 1.0 - p;
+    double s = p / q;
+    double a = (n + 1.0) * s;
+    double r = StrictMath.pow(q, n);
+    double u = randomSource.nextDouble();
+    int x = 0;
+    while (u > r && x < n) {
+      u -= r;
+      x++;
+      r *= a / x - s;
+    }
+    return x;
+  }
+
+  /**
+   * Samples a binomial with the transformed rejection method (BTRS) from Hörmann, "The generation
+   * of binomial random variates", which takes a constant number of steps on average.
+   *
+   * @param n the number of trials.
+   * @param p the probability of success of each trial, at most {@code 0.5}.
+   * @return the number of successes.
+   */
+  private int binomialBtrs(int n, double p) {
+    double q = 1.0 - p;
+    double spq = Math.sqrt(n * p * q);
+    double b = 1.15 + 2.53 * spq;
+    double a = -0.0873 + 0.0248 * b + 0.01 * p;
+    double c = n * p + 0.5;
+    double vr = 0.92 - 4.2 / b;
+    double alpha = (2.83 + 5.1 / b) * spq;
+    double lpq = StrictMath.log(p / q);
+    int m = (int) ((n + 1.0) * p);
+    double h = logFactorial(m) + logFactorial(n - m);
+    while (true) {
+      double u = randomSource.nextDouble() - 0.5;
+      double v = randomSource.nextDouble();
+      double us = 0.5 - Math.abs(u);
+      int k = (int) Math.floor((2 * a / us + b) * u + c);
+      if (k < 0 || k > n) {
+        continue;
+      }
+      if (us >= 0.07 && v <= vr) {
+        return k;
+      }
+      v = StrictMath.log(v * alpha / (a / (us * us) + b));
+      if (v <= h - logFactorial(k) - logFactorial(n - k) + (k - m) * lpq) {
+        return k;
+      }
+    }
+  }
+
+  /**
+   * Returns the natural logarithm of {@code k!}.
+   *
+   * @param k the number, must not be negative.
+   * @return the logarithm of the factorial.
+   */
+  private static double logFactorial(int k) {
+    if (k < LOG_FACTORIALS.length) {
+      return LOG_FACTORIALS[k];
+    }
+    // Stirling's series, accurate to double precision from k = 16
+    double x = k;
+    double x2 = x * x;
+    return (x + 0.5) * StrictMath.log(x)
+        - x
+        + HALF_LOG_TWO_PI
+        + (1.0 / 12 - (1.0 / 360 - 1.0 / (1260 * x2)) / x2) / x;
   }
 }
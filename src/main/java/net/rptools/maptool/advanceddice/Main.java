@@ -14,11 +14,15 @@
  */
 package net.rptools.maptool.advanceddice;
 
+import java.util.List;
 import net.rptools.maptool.advanceddice.genesys.GenesysDiceRoller;
 
 public class Main {
 
   public static void main(String[] args) {
+    if (List.of(args).contains("--warm-up")) {
+      GenesysDiceRoller.warmUp();
+    }
     try {
       var res = new GenesysDiceRoller().roll("3y{@prop}y{var}y{?prompt}s", n -> 1, n -> 2, n -> 3);
       System.out.println(res);
@@ -0,0 +1,69 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice;
+
+/**
+ * Source of the random numbers used to roll dice. Implementations must be safe to use from
+ * multiple threads.
+ */
+public interface RandomSource {
+
+  /**
+   * Returns a random number between {@code 0} (inclusive) and {@code bound} (exclusive).
+   *
+   * @param bound the upper bound (exclusive), must be positive.
+   * @return the random number.
+   */
+  int nextInt(int bound);
+
+  /**
+   * Returns a random number between {@code 0.0} (inclusive) and {@code 1.0} (exclusive).
+   *
+   * @return the random number.
+   */
+  default double nextDouble() {
+    return (((long) nextInt(1 << 26) << 27) + nextInt(1 << 27)) * 0x1.0p-53;
+  }
+
+  /**
+   * Returns the shared cryptographically strong random source. This is the default for all dice
+   * rolls.
+   *
+   * @return the shared secure random source.
+   */
+  static RandomSource secure() {
+    return RandomSources.SECURE;
+  }
+
+  /**
+   * Returns a fast random source that uses a separate generator for each thread, so there is no
+   * contention between threads. The numbers are not cryptographically strong.
+   *
+   * @return the per thread random source.
+   */
+  static RandomSource threadLocal() {
+    return RandomSources.THREAD_LOCAL;
+  }
+
+  /**
+   * Returns a new random source that produces the same sequence of numbers for the same seed.
+   *
+   * @param seed the seed.
+   * @return the seeded random source.
+   */
+  static RandomSource seeded(long seed) {
+    return new RandomSources.Seeded(seed);
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice;
+
+import java.security.SecureRandom;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/** The {@link RandomSource} implementations. */
+final class RandomSources {
+
+  /** The secure random generator shared by all dice rolls, seeded once. */
+  private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+  /** Shared cryptographically strong random source. */
+  static final RandomSource SECURE = SECURE_RANDOM::nextInt;
+
+  /** Fast random source with a separate generator for each thread. */
+  static final RandomSource THREAD_LOCAL =
+      new RandomSource() {
+        @Override
+        public int nextInt(int bound) {
+          return ThreadLocalRandom.current().nextInt(bound);
+        }
+
+        @Override
+        public double nextDouble() {
+          return ThreadLocalRandom.current().nextDouble();
+        }
+      };
+
+  /** Private constructor as this class only holds the implementations. */
+  private RandomSources() {}
+
+  /** Random source that produces a repeatable sequence of numbers from a seed. */
+  static final class Seeded implements RandomSource {
+
+    /** The generator, its algorithm is fixed so sequences are the same on every JVM. */
+    private final SplittableRandom random;
+
+    /**
+     * Constructor.
+     *
+     * @param seed the seed.
+     */
+    Seeded(long seed) {
+      this.random = new SplittableRandom(seed);
+    }
+
+    @Override
+    public synchronized int nextInt(int bound) {
+      return random.nextInt(bound);
+    }
+
+    @Override
+    public synchronized double nextDouble() {
+      return random.nextDouble();
+    }
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import net.rptools.maptool.advanceddice.RandomSource;
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.Count;
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.CountType;
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.DiceRoll;
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.FixedResult;
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.Group;
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.Node;
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.Sequence;
+
+/**
+ * The totals of a prepared roll compiled into a chain of method handles, see {@link
+ * GenesysPreparedRoll}. Each roll of dice becomes a handle that samples the faces of its dice type
+ * directly and adds them to the totals, with the dice type, faces and literal counts bound as
+ * constants, and the handles are folded together in the order of the expression. Once the chain
+ * has been invoked enough times the JVM specializes it, so rolling does not walk the plan or
+ * dispatch on its nodes. Random numbers are drawn in the same order as {@link
+ * GenesysRollPlan.Node#count} so both give the same totals from the same random source.
+ */
+final class GenesysCompiledRoll {
+
+  /** The type of the compiled handle, taking the slot values, random source and totals. */
+  private static final MethodType ROLL_TYPE =
+      MethodType.methodType(
+          void.class, int[].class, RandomSource.class, GenesysDiceCountsBuilder.class);
+
+  /** Handle for {@link #rollDice}. */
+  private static final MethodHandle ROLL_DICE;
+
+  /** Handle for {@link #addResults}. */
+  private static final MethodHandle ADD_RESULTS;
+
+  static {
+    var lookup = MethodHandles.lookup();
+    try {
+      ROLL_DICE =
+          lookup.findStatic(
+              GenesysCompiledRoll.class,
+              "rollDice",
+              MethodType.methodType(
+                  void.class,
+                  GenesysDiceType.class,
+                  GenesysResultType[].class,
+                  int.class,
+                  int.class,
+                  RandomSource.class,
+                  GenesysDiceCountsBuilder.class));
+      ADD_RESULTS =
+          lookup.findStatic(
+              GenesysCompiledRoll.class,
+              "addResults",
+              MethodType.methodType(
+                  void.class, GenesysResultType.class, int.class, GenesysDiceCountsBuilder.class));
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  /** The compiled handle, of type {@link #ROLL_TYPE}. */
+  private final MethodHandle handle;
+
+  /** The string that represents the rolls. */
+  private final String rollString;
+
+  /**
+   * Constructor.
+   *
+   * @param handle the compiled handle.
+   * @param rollString the string that represents the rolls.
+   */
+  private GenesysCompiledRoll(MethodHandle handle, String rollString) {
+    this.handle = handle;
+    this.rollString = rollString;
+  }
+
+  /**
+   * Compiles the root of a plan whose counts take their values from slots.
+   *
+   * @param root the root of the plan, see {@link GenesysRollPlan.Node#withSlots}.
+   * @param summarizeThreshold the number of dice of a type above which they are rolled in bulk.
+   * @return the compiled roll.
+   */
+  static GenesysCompiledRoll compile(Sequence root, int summarizeThreshold) {
+    return new GenesysCompiledRoll(compileNode(root, summarizeThreshold), root.rollString());
+  }
+
+  /**
+   * Rolls the compiled plan keeping only the totals of the results.
+   *
+   * @param slotValues the values of the slots.
+   * @param randomSource the source of random numbers used to roll the dice.
+   * @return the totals of the roll.
+   */
+  GenesysDiceCounts rollCounts(int[] slotValues, RandomSource randomSource) {
+    var counts = new GenesysDiceCountsBuilder();
+    try {
+      handle.invokeExact(slotValues, randomSource, counts);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new IllegalStateException(e);
+    }
+    return counts.setRollString(rollString).build();
+  }
+
+  /**
+   * Compiles a node of a plan.
+   *
+   * @param node the node.
+   * @param summarizeThreshold the number of dice of a type above which they are rolled in bulk.
+   * @return the handle, of type {@link #ROLL_TYPE}.
+   */
+  private static MethodHandle compileNode(Node node, int summarizeThreshold) {
+    if (node instanceof Sequence sequence) {
+      var handle = MethodHandles.empty(ROLL_TYPE);
+      var children = sequence.children();
+      for (int i = children.size() - 1; i >= 0; i--) {
+        var child = compileNode(children.get(i), summarizeThreshold);
+        handle = MethodHandles.foldArguments(handle, child);
+      }
+      return handle;
+    } else if (node instanceof DiceRoll roll) {
+      var diceType = roll.diceType();
+      var faces = new GenesysResultType[diceType.getSides()];
+      for (int side = 0; side < faces.length; side++) {
+        faces[side] = diceType.getSide(side);
+      }
+      var handle = MethodHandles.insertArguments(ROLL_DICE, 0, diceType, faces, summarizeThreshold);
+      return MethodHandles.filterArguments(handle, 0, count(roll.count()));
+    } else if (node instanceof FixedResult result) {
+      var handle = MethodHandles.insertArguments(ADD_RESULTS, 0, result.resultType());
+      handle = MethodHandles.filterArguments(handle, 0, count(result.count()));
+      return MethodHandles.dropArguments(handle, 1, RandomSource.class);
+    } else if (node instanceof Group group) {
+      return compileNode(group.body(), summarizeThreshold);
+    }
+    throw new IllegalArgumentException("Unknown node: " + node);
+  }
+
+  /**
+   * Returns a handle that takes the slot values and returns the value of a count.
+   *
+   * @param count the count, see {@link GenesysRollPlan.Count#withSlot}.
+   * @return the handle.
+   */
+  private static MethodHandle count(Count count) {
+    if (count.type() == CountType.LITERAL) {
+      return MethodHandles.dropArguments(
+          MethodHandles.constant(int.class, count.value()), 0, int[].class);
+    }
+    return MethodHandles.insertArguments(
+        MethodHandles.arrayElementGetter(int[].class), 1, count.value());
+  }
+
+  /**
+   * Rolls a number of dice of a type and adds their results to the totals.
+   *
+   * @param diceType the type of dice.
+   * @param faces the result of each side of the dice.
+   * @param summarizeThreshold the number of dice above which they are rolled in bulk.
+   * @param count the number of dice, nothing is rolled if it is not positive.
+   * @param randomSource the source of random numbers used to roll the dice.
+   * @param counts the totals.
+   */
+  private static void rollDice(
+      GenesysDiceType diceType,
+      GenesysResultType[] faces,
+      int summarizeThreshold,
+      int count,
+      RandomSource randomSource,
+      GenesysDiceCountsBuilder counts) {
+    if (count <= 0) {
+      return;
+    }
+    if (count > summarizeThreshold) {
+      var sides = diceType.rollSides(count, randomSource);
+      for (int side = 0; side < sides.length; side++) {
+        counts.add(faces[side], sides[side]);
+      }
+      return;
+    }
+    for (int i = 0; i < count; i++) {
+      counts.add(faces[randomSource.nextInt(faces.length)]);
+    }
+  }
+
+  /**
+   * Adds a number of results that were not rolled to the totals.
+   *
+   * @param resultType the type of result.
+   * @param count the number of results, nothing is added if it is not positive.
+   * @param counts the totals.
+   */
+  private static void addResults(
+      GenesysResultType resultType, int count, GenesysDiceCountsBuilder counts) {
+    counts.add(resultType, Math.max(0, count));
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import java.util.function.ToIntFunction;
+
+/** Enumeration of the totals that are counted for a roll. */
+public enum GenesysCountType {
+  /** The number of successes, includes triumphs. */
+  SUCCESS(GenesysResultType::getSuccess, GenesysDiceCountsBuilder::getSuccessCount),
+  /** The number of failures, includes despairs. */
+  FAILURE(GenesysResultType::getFailure, GenesysDiceCountsBuilder::getFailureCount),
+  /** The number of advantages. */
+  ADVANTAGE(GenesysResultType::getAdvantage, GenesysDiceCountsBuilder::getAdvantageCount),
+  /** The number of threats. */
+  THREAT(GenesysResultType::getThreat, GenesysDiceCountsBuilder::getThreatCount),
+  /** The number of triumphs. */
+  TRIUMPH(GenesysResultType::getTriumph, GenesysDiceCountsBuilder::getTriumphCount),
+  /** The number of despairs. */
+  DESPAIR(GenesysResultType::getDespair, GenesysDiceCountsBuilder::getDespairCount),
+  /** The number of light side points. */
+  LIGHT(GenesysResultType::getLight, GenesysDiceCountsBuilder::getLightCount),
+  /** The number of dark side points. */
+  DARK(GenesysResultType::getDark, GenesysDiceCountsBuilder::getDarkCount);
+
+  /** Function to get this count from a single result. */
+  private final ToIntFunction<GenesysResultType> resultCount;
+
+  /** Function to get this count from the totals of a roll. */
+  private final ToIntFunction<GenesysDiceCountsBuilder> totalCount;
+
+  /**
+   * Constructor.
+   *
+   * @param resultCount function to get this count from a single result.
+   * @param totalCount function to get this count from the totals of a roll.
+   */
+  GenesysCountType(
+      ToIntFunction<GenesysResultType> resultCount,
+      ToIntFunction<GenesysDiceCountsBuilder> totalCount) {
+    this.resultCount = resultCount;
+    this.totalCount = totalCount;
+  }
+
+  /**
+   * Returns how much the result adds to this count.
+   *
+   * @param result the result.
+   * @return how much the result adds to this count.
+   */
+  public int getCount(GenesysResultType result) {
+    return resultCount.applyAsInt(result);
+  }
+
+  /**
+   * Returns this count from the totals of a roll.
+   *
+   * @param counts the totals of the roll.
+   * @return the count.
+   */
+  public int getCount(GenesysDiceCountsBuilder counts) {
+    return totalCount.applyAsInt(counts);
+  }
+}
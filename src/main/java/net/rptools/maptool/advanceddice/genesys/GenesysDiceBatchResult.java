@@ -0,0 +1,216 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import java.util.List;
+import net.rptools.maptool.advanceddice.DiceExpressionError;
+
+/**
+ * Class that represents the totals of the same Genesys dice roll made a number of times. The
+ * totals are stored in columns, one array per count type indexed by trial. The arrays are returned
+ * without copying and must not be modified.
+ */
+public class GenesysDiceBatchResult {
+
+  /** The String that describes the dice that were rolled. */
+  private final String rollString;
+  /** The number of times the dice were rolled. */
+  private final int trialCount;
+  /** The number of success rolled in each trial, includes triumph. */
+  private final int[] successCounts;
+  /** The number of failures rolled in each trial, includes dispair. */
+  private final int[] failureCounts;
+  /** The number of advantages rolled in each trial. */
+  private final int[] advantageCounts;
+  /** The number of threats rolled in each trial. */
+  private final int[] threatCounts;
+  /** The number of triumphs rolled in each trial. */
+  private final int[] triumphCounts;
+  /** The number of despairs rolled in each trial. */
+  private final int[] despairCounts;
+  /** The number of light force points rolled in each trial. */
+  private final int[] lightCounts;
+  /** The number of dark force points rolled in each trial. */
+  private final int[] darkCounts;
+
+  /** The errors that occurred during the roll. */
+  private final List<DiceExpressionError> errors;
+
+  /**
+   * Constructor.
+   *
+   * @param rollString The string representing the roll.
+   * @param trialCount the number of times the dice were rolled.
+   * @param errors The errors that occurred.
+   */
+  GenesysDiceBatchResult(String rollString, int trialCount, List<DiceExpressionError> errors) {
+    this.rollString = rollString;
+    this.trialCount = trialCount;
+    this.successCounts = new int[trialCount];
+    this.failureCounts = new int[trialCount];
+    this.advantageCounts = new int[trialCount];
+    this.threatCounts = new int[trialCount];
+    this.triumphCounts = new int[trialCount];
+    this.despairCounts = new int[trialCount];
+    this.lightCounts = new int[trialCount];
+    this.darkCounts = new int[trialCount];
+    this.errors = List.copyOf(errors);
+  }
+
+  /**
+   * Stores the totals of a trial.
+   *
+   * @param trial the trial.
+   * @param counts the totals of the trial.
+   */
+  void set(int trial, GenesysDiceCountsBuilder counts) {
+    successCounts[trial] = counts.getSuccessCount();
+    failureCounts[trial] = counts.getFailureCount();
+    advantageCounts[trial] = counts.getAdvantageCount();
+    threatCounts[trial] = counts.getThreatCount();
+    triumphCounts[trial] = counts.getTriumphCount();
+    despairCounts[trial] = counts.getDespairCount();
+    lightCounts[trial] = counts.getLightCount();
+    darkCounts[trial] = counts.getDarkCount();
+  }
+
+  /**
+   * Returns the string representing the roll.
+   *
+   * @return the string representing the roll.
+   */
+  public String getRollString() {
+    return rollString;
+  }
+
+  /**
+   * Returns the number of times the dice were rolled.
+   *
+   * @return the number of times the dice were rolled.
+   */
+  public int getTrialCount() {
+    return trialCount;
+  }
+
+  /**
+   * Returns the totals of a single trial.
+   *
+   * @param trial the trial.
+   * @return the totals of the trial.
+   */
+  public GenesysDiceCounts getCounts(int trial) {
+    return new GenesysDiceCounts(
+        rollString,
+        successCounts[trial],
+        failureCounts[trial],
+        advantageCounts[trial],
+        threatCounts[trial],
+        triumphCounts[trial],
+        despairCounts[trial],
+        lightCounts[trial],
+        darkCounts[trial],
+        errors);
+  }
+
+  /**
+   * Returns the number of successes rolled in each trial.
+   *
+   * @return the number of successes rolled in each trial.
+   */
+  public int[] getSuccessCounts() {
+    return successCounts;
+  }
+
+  /**
+   * Returns the number of failures rolled in each trial.
+   *
+   * @return the number of failures rolled in each trial.
+   */
+  public int[] getFailureCounts() {
+    return failureCounts;
+  }
+
+  /**
+   * Returns the number of advantages rolled in each trial.
+   *
+   * @return the number of advantages rolled in each trial.
+   */
+  public int[] getAdvantageCounts() {
+    return advantageCounts;
+  }
+
+  /**
+   * Returns the number of threats rolled in each trial.
+   *
+   * @return the number of threats rolled in each trial.
+   */
+  public int[] getThreatCounts() {
+    return threatCounts;
+  }
+
+  /**
+   * Returns the number of triumphs rolled in each trial.
+   *
+   * @return the number of triumphs rolled in each trial.
+   */
+  public int[] getTriumphCounts() {
+    return triumphCounts;
+  }
+
+  /**
+   * Returns the number of despairs rolled in each trial.
+   *
+   * @return the number of despairs rolled in each trial.
+   */
+  public int[] getDespairCounts() {
+    return despairCounts;
+  }
+
+  /**
+   * Returns the number of light force pips rolled in each trial.
+   *
+   * @return the number of light force pips rolled in each trial.
+   */
+  public int[] getLightCounts() {
+    return lightCounts;
+  }
+
+  /**
+   * Returns the number of dark force pips rolled in each trial.
+   *
+   * @return the number of dark force pips rolled in each trial.
+   */
+  public int[] getDarkCounts() {
+    return darkCounts;
+  }
+
+  /**
+   * Returns if any errors occurred during the roll.
+   *
+   * @return {@code true} if any errors occurred during the roll.
+   */
+  public boolean hasErrors() {
+    return !errors.isEmpty();
+  }
+
+  /**
+   * Returns the errors that occurred during the roll.
+   *
+   * @return the errors that occurred during the roll.
+   */
+  public List<DiceExpressionError> getErrors() {
+    return errors;
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+/**
+ * Thrown when bytes do not hold a valid {@link GenesysDiceResultCodec} encoding, whether they are
+ * truncated, corrupt or crafted. It is an {@link IllegalArgumentException} so callers that caught
+ * that before still catch it.
+ */
+public class GenesysDiceCodecException extends IllegalArgumentException {
+
+  /**
+   * Constructor.
+   *
+   * @param message the message describing what is invalid.
+   */
+  public GenesysDiceCodecException(String message) {
+    super(message);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param message the message describing what is invalid.
+   * @param cause the exception that found it.
+   */
+  public GenesysDiceCodecException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import java.util.List;
+import net.rptools.maptool.advanceddice.DiceExpressionError;
+
+/**
+ * Class that represents only the totals of a Genesys dice roll. Unlike {@link GenesysDiceResult}
+ * it does not keep the individual dice or capture groups that were rolled.
+ */
+public class GenesysDiceCounts {
+
+  /** The String that describes the dice that were rolled. */
+  private final String rollString;
+  /** The number of success rolled includes triumph. */
+  private final int successCount;
+  /** The number of failures rolled, includes dispair. */
+  private final int failureCount;
+  /** The number of advantages rolled. */
+  private final int advantageCount;
+  /** The number of threats rolled. */
+  private final int threatCount;
+  /** The number of triumphs rolled. */
+  private final int triumphCount;
+  /** The number of despairs rolled. */
+  private final int despairCount;
+  /** The number of light force points rolled. */
+  private final int lightCount;
+  /** The number of dark force points rolled. */
+  private final int darkCount;
+
+  /** The errors that occurred during the roll. */
+  private final List<DiceExpressionError> errors;
+
+  /**
+   * Constructor.
+   *
+   * @param rollString The string representing the roll.
+   * @param successCount the number of successes rolled.
+   * @param failureCount the number of failures rolled.
+   * @param advantageCount the number of advantages rolled.
+   * @param threatCount the number of threats rolled.
+   * @param triumphCount the number of triumphs rolled.
+   * @param despairCount the number of despairs rolled.
+   * @param lightCount the number of light force pips rolled.
+   * @param darkCount the number of dark force pips rolled.
+   * @param errors The errors that occurred.
+   */
+  GenesysDiceCounts(
+      String rollString,
+      int successCount,
+      int failureCount,
+      int advantageCount,
+      int threatCount,
+      int triumphCount,
+      int despairCount,
+      int lightCount,
+      int darkCount,
+      List<DiceExpressionError> errors) {
+    this.rollString = rollString;
+    this.successCount = successCount;
+    this.failureCount = failureCount;
+    this.advantageCount = advantageCount;
+    this.threatCount = threatCount;
+    this.triumphCount = triumphCount;
+    this.despairCount = despairCount;
+    this.lightCount = lightCount;
+    this.darkCount = darkCount;
+    this.errors = List.copyOf(errors);
+  }
+
+  /**
+   * Create a result with errors.
+   *
+   * @param rollString The string representing the roll.
+   * @param errors The errors that occurred.
+   * @return the result.
+   */
+  static GenesysDiceCounts error(String rollString, List<DiceExpressionError> errors) {
+    return new GenesysDiceCounts(rollString, 0, 0, 0, 0, 0, 0, 0, 0, errors);
+  }
+
+  /**
+   * Returns the string representing the roll.
+   *
+   * @return the string representing the roll.
+   */
+  public String getRollString() {
+    return rollString;
+  }
+
+  /**
+   * Returns the number of successes rolled.
+   *
+   * @return the number of successes rolled.
+   */
+  public int getSuccessCount() {
+    return successCount;
+  }
+
+  /**
+   * Returns the number of failures rolled.
+   *
+   * @return the number of failures rolled.
+   */
+  public int getFailureCount() {
+    return failureCount;
+  }
+
+  /**
+   * Returns the number of advantages rolled.
+   *
+   * @return the number of advantages rolled.
+   */
+  public int getAdvantageCount() {
+    return advantageCount;
+  }
+
+  /**
+   * Returns the number of threats rolled.
+   *
+   * @return the number of threats rolled.
+   */
+  public int getThreatCount() {
+    return threatCount;
+  }
+
+  /**
+   * Returns the number of triumphs rolled.
+   *
+   * @return the number of triumphs rolled.
+   */
+  public int getTriumphCount() {
+    return triumphCount;
+  }
+
+  /**
+   * Returns the number of despairs rolled.
+   *
+   * @return the number of despairs rolled.
+   */
+  public int getDespairCount() {
+    return despairCount;
+  }
+
+  /**
+   * Returns the number of light force pips rolled.
+   *
+   * @return the number of light force pips rolled.
+   */
+  public int getLightCount() {
+    return lightCount;
+  }
+
+  /**
+   * Returns the number of dark force pips rolled.
+   *
+   * @return the number of dark force pips rolled.
+   */
+  public int getDarkCount() {
+    return darkCount;
+  }
+
+  /**
+   * Returns if any errors occurred during the roll.
+   *
+   * @return {@code true} if any errors occurred during the roll.
+   */
+  public boolean hasErrors() {
+    return !errors.isEmpty();
+  }
+
+  /**
+   * Returns the errors that occurred during the roll.
+   *
+   * @return the errors that occurred during the roll.
+   */
+  public List<DiceExpressionError> getErrors() {
+    return errors;
+  }
+}
@@ -0,0 +1,232 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import java.util.List;
+
+/**
+ * Builder class for creating {@link GenesysDiceCounts} objects. The totals are kept as primitive
+ * counters so adding a result never allocates.
+ */
+public class GenesysDiceCountsBuilder {
+
+  /** The string that represents the roll. */
+  private String rollString = "";
+  /** The number of success rolled includes triumph. */
+  private int successCount;
+  /** The number of failures rolled, includes dispair. */
+  private int failureCount;
+  /** The number of advantages rolled. */
+  private int advantageCount;
+  /** The number of threats rolled. */
+  private int threatCount;
+  /** The number of triumphs rolled. */
+  private int triumphCount;
+  /** The number of despairs rolled. */
+  private int despairCount;
+  /** The number of light force points rolled. */
+  private int lightCount;
+  /** The number of dark force points rolled. */
+  private int darkCount;
+
+  /**
+   * Sets the roll string.
+   *
+   * @param rollString the roll string.
+   * @return this builder.
+   */
+  public GenesysDiceCountsBuilder setRollString(String rollString) {
+    this.rollString = rollString;
+    return this;
+  }
+
+  /**
+   * Adds a result to the totals.
+   *
+   * @param result the result to add.
+   * @return this builder.
+   */
+  public GenesysDiceCountsBuilder add(GenesysResultType result) {
+    successCount += result.getSuccess();
+    failureCount += result.getFailure();
+    advantageCount += result.getAdvantage();
+    threatCount += result.getThreat();
+    triumphCount += result.getTriumph();
+    despairCount += result.getDespair();
+    lightCount += result.getLight();
+    darkCount += result.getDark();
+    return this;
+  }
+
+  /**
+   * Adds a result to the totals a number of times.
+   *
+   * @param result the result to add.
+   * @param times the number of times to add the result.
+   * @return this builder.
+   * @throws ArithmeticException if a total would be more than {@link Integer#MAX_VALUE}.
+   */
+  public GenesysDiceCountsBuilder add(GenesysResultType result, int times) {
+    successCount = addTimes(successCount, result.getSuccess(), times);
+    failureCount = addTimes(failureCount, result.getFailure(), times);
+    advantageCount = addTimes(advantageCount, result.getAdvantage(), times);
+    threatCount = addTimes(threatCount, result.getThreat(), times);
+    triumphCount = addTimes(triumphCount, result.getTriumph(), times);
+    despairCount = addTimes(despairCount, result.getDespair(), times);
+    lightCount = addTimes(lightCount, result.getLight(), times);
+    darkCount = addTimes(darkCount, result.getDark(), times);
+    return this;
+  }
+
+  /**
+   * Returns a total with a value added a number of times, as a large pool rolled in bulk can have
+   * more symbols than an {@code int} holds.
+   *
+   * @param total the total.
+   * @param value the value to add.
+   * @param times the number of times to add it.
+   * @return the new total.
+   * @throws ArithmeticException if the new total does not fit in an {@code int}.
+   */
+  private static int addTimes(int total, int value, int times) {
+    return Math.addExact(total, Math.multiplyExact(value, times));
+  }
+
+  /**
+   * Adds the totals of another builder to the totals.
+   *
+   * @param counts the builder holding the totals to add.
+   * @return this builder.
+   */
+  public GenesysDiceCountsBuilder add(GenesysDiceCountsBuilder counts) {
+    successCount += counts.successCount;
+    failureCount += counts.failureCount;
+    advantageCount += counts.advantageCount;
+    threatCount += counts.threatCount;
+    triumphCount += counts.triumphCount;
+    despairCount += counts.despairCount;
+    lightCount += counts.lightCount;
+    darkCount += counts.darkCount;
+    return this;
+  }
+
+  /**
+   * Resets all the totals to zero so the builder can be reused.
+   *
+   * @return this builder.
+   */
+  public GenesysDiceCountsBuilder reset() {
+    successCount = 0;
+    failureCount = 0;
+    advantageCount = 0;
+    threatCount = 0;
+    triumphCount = 0;
+    despairCount = 0;
+    lightCount = 0;
+    darkCount = 0;
+    return this;
+  }
+
+  /**
+   * Returns the number of successes added so far.
+   *
+   * @return the number of successes added so far.
+   */
+  public int getSuccessCount() {
+    return successCount;
+  }
+
+  /**
+   * Returns the number of failures added so far.
+   *
+   * @return the number of failures added so far.
+   */
+  public int getFailureCount() {
+    return failureCount;
+  }
+
+  /**
+   * Returns the number of advantages added so far.
+   *
+   * @return the number of advantages added so far.
+   */
+  public int getAdvantageCount() {
+    return advantageCount;
+  }
+
+  /**
+   * Returns the number of threats added so far.
+   *
+   * @return the number of threats added so far.
+   */
+  public int getThreatCount() {
+    return threatCount;
+  }
+
+  /**
+   * Returns the number of triumphs added so far.
+   *
+   * @return the number of triumphs added so far.
+   */
+  public int getTriumphCount() {
+    return triumphCount;
+  }
+
+  /**
+   * Returns the number of despairs added so far.
+   *
+   * @return the number of despairs added so far.
+   */
+  public int getDespairCount() {
+    return despairCount;
+  }
+
+  /**
+   * Returns the number of light force pips added so far.
+   *
+   * @return the number of light force pips added so far.
+   */
+  public int getLightCount() {
+    return lightCount;
+  }
+
+  /**
+   * Returns the number of dark force pips added so far.
+   *
+   * @return the number of dark force pips added so far.
+   */
+  public int getDarkCount() {
+    return darkCount;
+  }
+
+  /**
+   * Builds a {@link GenesysDiceCounts} from this builder.
+   *
+   * @return the result
+   */
+  public GenesysDiceCounts build() {
+    return new GenesysDiceCounts(
+        rollString,
+        successCount,
+        failureCount,
+        advantageCount,
+        threatCount,
+        triumphCount,
+        despairCount,
+        lightCount,
+        darkCount,
+        List.of());
+  }
+}
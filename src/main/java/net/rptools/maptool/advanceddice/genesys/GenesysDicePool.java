@@ -0,0 +1,203 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import java.util.Arrays;
+
+/**
+ * The canonical form of a Genesys dice expression: the number of each type of dice it rolls and
+ * of each result it adds without rolling. Expressions that roll the same pool have equal pools
+ * however they are written, so {@code 2y1g}, {@code g2y}, {@code (1y)(1y)g} and {@code
+ * yellow,proficiency,green} all have the pool {@code 1g2y}. Pools are immutable and can be used as
+ * keys for anything that depends only on what is rolled, such as probability tables, while the
+ * dice string is still needed for anything that shows the capture groups or the order of the dice.
+ *
+ * <p>The pool of an expression that only uses literal counts is computed once, when it is parsed,
+ * see {@link GenesysRollPlan#getPool()}. Use {@link GenesysDiceRoller#getPool} to get the pool of
+ * any expression.
+ */
+public final class GenesysDicePool {
+
+  /** The number of dice types, the number of dice of each is at the start of the vector. */
+  static final int DICE_TYPES = GenesysDiceType.values().length;
+
+  /** The length of the vector, the dice types followed by the result types. */
+  static final int SIZE = DICE_TYPES + GenesysResultType.values().length;
+
+  /** The pool with no dice or results. */
+  public static final GenesysDicePool EMPTY = new GenesysDicePool(new int[SIZE]);
+
+  /** The dice names used by {@link #toString()}, indexed by {@link GenesysDiceType#ordinal()}. */
+  private static final String[] DICE_NAMES = new String[DICE_TYPES];
+
+  static {
+    for (var diceType : GenesysDiceType.values()) {
+      DICE_NAMES[diceType.ordinal()] =
+          switch (diceType) {
+            case BOOST -> "b";
+            case SETBACK -> "k";
+            case ABILITY -> "g";
+            case DIFFICULTY -> "p";
+            case PROFICIENCY -> "y";
+            case CHALLENGE -> "r";
+            case FORCE -> "w";
+            case NONE -> "";
+          };
+    }
+  }
+
+  /** The number of each dice type followed by the number of each fixed result. */
+  private final int[] counts;
+
+  /** The hash code, computed once as pools are mostly used as keys. */
+  private final int hashCode;
+
+  /**
+   * Constructor.
+   *
+   * @param counts the vector of counts, which is not copied.
+   */
+  private GenesysDicePool(int[] counts) {
+    this.counts = counts;
+    this.hashCode = Arrays.hashCode(counts);
+  }
+
+  /**
+   * Returns the pool of a plan, resolving its counts with a context.
+   *
+   * @param root the root of the plan.
+   * @param context the context to resolve counts with, no dice are rolled.
+   * @return the pool, {@code null} if it has more than {@link Integer#MAX_VALUE} dice and results.
+   */
+  static GenesysDicePool of(GenesysRollPlan.Sequence root, GenesysRollPlan.RollContext context) {
+    if (root.cost(context) > Integer.MAX_VALUE) {
+      return null;
+    }
+    var counts = new int[SIZE];
+    root.collect(context, counts);
+    return new GenesysDicePool(counts);
+  }
+
+  /**
+   * Returns the number of dice of a type in the pool.
+   *
+   * @param diceType the dice type.
+   * @return the number of dice.
+   */
+  public int getDiceCount(GenesysDiceType diceType) {
+    return counts[diceType.ordinal()];
+  }
+
+  /**
+   * Returns the number of a result added to the pool without rolling.
+   *
+   * @param resultType the result type.
+   * @return the number of results.
+   */
+  public int getFixedCount(GenesysResultType resultType) {
+    return counts[DICE_TYPES + resultType.ordinal()];
+  }
+
+  /**
+   * Returns the number of dice in the pool, of all types.
+   *
+   * @return the number of dice.
+   */
+  public int getDiceTotal() {
+    int total = 0;
+    for (int t = 0; t < DICE_TYPES; t++) {
+      total += counts[t];
+    }
+    return total;
+  }
+
+  /**
+   * Returns if the pool has no dice or results.
+   *
+   * @return {@code true} if the pool has no dice or results.
+   */
+  public boolean isEmpty() {
+    return equals(EMPTY);
+  }
+
+  /**
+   * Returns the pool as a vector of counts. The number of each dice type comes first, indexed by
+   * {@link GenesysDiceType#ordinal()}, followed by the number of each fixed result, indexed by
+   * {@link GenesysResultType#ordinal()}. So the vector always has the same length, the number of
+   * dice types plus the number of result types.
+   *
+   * @return a copy of the vector.
+   */
+  public int[] toArray() {
+    return counts.clone();
+  }
+
+  /**
+   * Returns the vector of counts without copying it, it must not be changed.
+   *
+   * @return the vector.
+   */
+  int[] counts() {
+    return counts;
+  }
+
+  /**
+   * Returns the totals of the fixed results.
+   *
+   * @return the totals.
+   */
+  GenesysDiceCounts getFixedResults() {
+    var fixedResults = new GenesysDiceCountsBuilder();
+    for (var resultType : GenesysResultType.values()) {
+      fixedResults.add(resultType, getFixedCount(resultType));
+    }
+    return fixedResults.build();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return this == o
+        || o instanceof GenesysDicePool pool
+            && hashCode == pool.hashCode
+            && Arrays.equals(counts, pool.counts);
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+  /**
+   * Returns the pool as a dice string that rolls it, the dice in {@link GenesysDiceType} order
+   * followed by the fixed results in {@link GenesysResultType} order, e.g. {@code 1g2y1success}.
+   *
+   * @return the dice string.
+   */
+  @Override
+  public String toString() {
+    var string = new StringBuilder();
+    for (int i = 0; i < SIZE; i++) {
+      if (counts[i] > 0) {
+        string.append(counts[i]);
+        if (i < DICE_TYPES) {
+          string.append(DICE_NAMES[i]);
+        } else {
+          string.append(GenesysResultType.values()[i - DICE_TYPES].name().toLowerCase());
+        }
+      }
+    }
+    return string.toString();
+  }
+}
@@ -14,16 +14,34 @@
  */
 package net.rptools.maptool.advanceddice.genesys;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
 import java.util.Set;
+import java.util.function.Supplier;
 import net.rptools.maptool.advanceddice.DiceExpressionError;
 
-/** Class the represents the result of a Genesys dice roll. */
+/**
+ * Class the represents the result of a Genesys dice roll.
+ *
+ * <p>The rolls are kept as one byte per die, shared with the results of the capture groups, and the
+ * number of each result type is counted when the result is created, so the totals and {@link
+ * #getNumberOfResult} do not look at the rolls. The totals, the results of each dice type and the
+ * results of the capture groups are only created when first requested, so a roll with many capture
+ * groups costs little more than one without unless they are looked at. Once created they are kept
+ * and are safe to read from any thread.
+ */
 public class GenesysDiceResult {
 
+  /** The result types, indexed by ordinal. */
+  private static final GenesysResultType[] RESULT_TYPES = GenesysResultType.values();
+
+  /** The number of dice types. */
+  private static final int DICE_TYPE_COUNT = GenesysDiceType.values().length;
+
   /**
    * Record to hold dice type and result.
    *
@@ -32,34 +50,78 @@ public class GenesysDiceResult {
    */
   public record Result(GenesysDiceType diceType, GenesysResultType resultType) {}
 
-  /** The String that describes the dice that were rolled. */
-  private final String rollString;
-  /** The number of success rolled includes triumph. */
-  private final int successCount;
-  /** The number of failures rolled, includes dispair. */
-  private final int failureCount;
-  /** The number of advantages rolled. */
-  private final int advantageCount;
-  /** The number of threats rolled. */
-  private final int threatCount;
-  /** The number of triumphs rolled. */
-  private final int triumphCount;
-  /** The number of despairs rolled. */
-  private final int despairCount;
-  /** The number of light force points rolled. */
-  private final int lightCount;
-  /** The number of dark force points rolled. */
-  private final int darkCount;
-  /** Results of capture groups in the roll. */
-  private final Map<String, GenesysDiceResult> groups;
+  /**
+   * Record to hold the number of dice of a type that rolled the same result, used for dice that
+   * were rolled in bulk rather than one at a time.
+   *
+   * @param diceType the type of dice.
+   * @param resultType the result of the dice.
+   * @param count the number of dice that rolled the result.
+   */
+  public record SummarizedResult(
+      GenesysDiceType diceType, GenesysResultType resultType, int count) {}
+
+  /**
+   * Record to hold what is needed to roll a result again, see {@link GenesysDiceRoller#replay}.
+   *
+   * @param seed the seed of the random numbers the dice were rolled with.
+   * @param summarizeThreshold the number of dice of a type above which they were rolled in bulk.
+   * @param values the values of the variables, properties and prompts, keyed as described in
+   *     {@link GenesysSymbolResolver#resolve}.
+   */
+  public record Seed(long seed, int summarizeThreshold, Map<String, Integer> values) {
+
+    /** Constructor, the values are copied. */
+    public Seed {
+      values = Map.copyOf(values);
+    }
+  }
+
+  /** The input the string that describes the dice that were rolled is taken from. */
+  private final String rollStringSource;
+  /** The index in the input where the roll string starts. */
+  private final int rollStringStart;
+  /** The index in the input after the end of the roll string. */
+  private final int rollStringEnd;
+  /** The String that describes the dice that were rolled, copied out of the input when needed. */
+  private String rollString;
+  /** The totals of the roll, created when first requested. */
+  private volatile GenesysDiceCountsBuilder totals;
+  /** Results of capture groups in the roll, created when first requested. */
+  private volatile Map<String, GenesysDiceResult> groups;
+  /** Creates the results of the capture groups, {@code null} once they have been created. */
+  private Supplier<Map<String, GenesysDiceResult>> groupFactory;
   /** The rolls that occurred. */
-  private final List<Result> rolls;
+  private final GenesysPackedRolls rolls;
+  /** The results of dice that were rolled in bulk and only counted. */
+  private final List<SummarizedResult> summarizedResults;
+
+  /** The number of each result type rolled, indexed by ordinal, including summarized results. */
+  private final int[] resultCounts;
+
+  /** The result type ordinals of the rolls ordered by dice type, created when first requested. */
+  private byte[] diceResults;
 
-  /** The results that were rolled for each dice type. */
-  private final Map<GenesysDiceType, List<GenesysResultType>> diceResults = new HashMap<>();
+  /** The index in {@link #diceResults} of the first result of each dice type, and the length. */
+  private int[] diceResultStarts;
 
   /** The errors that occurred during the roll. */
-  private final List<DiceExpressionError> errors = new ArrayList<>();
+  private final List<DiceExpressionError> errors;
+
+  /**
+   * The index of the first roll of this result in the rolls of the result it is a capture group
+   * of, {@code -1} if it is not known.
+   */
+  private final int rollOffset;
+
+  /**
+   * The index of the first summarized result of this result in the summarized results of the
+   * result it is a capture group of, {@code -1} if it is not known.
+   */
+  private final int summarizedOffset;
+
+  /** What is needed to roll this result again, {@code null} if it was not rolled with a seed. */
+  private final Seed seed;
 
   /**
    * Constructor.
@@ -85,43 +147,149 @@ public class GenesysDiceResult {
       List<Result> rolls,
       Map<String, GenesysDiceResult> groups,
       List<DiceExpressionError> errors) {
-    this.rollString = rollString;
+    this(
+        rollString,
+        0,
+        rollString.length(),
+        GenesysPackedRolls.of(rolls),
+        List.of(),
+        () -> groups,
+        countResults(rolls, List.of()),
+        errors,
+        null,
+        -1,
+        -1);
+  }
 
-    int successCount = 0;
-    int failureCount = 0;
-    int advantageCount = 0;
-    int threatCount = 0;
-    int triumphCount = 0;
-    int despairCount = 0;
-    int lightCount = 0;
-    int darkCount = 0;
+  /**
+   * Constructor used by {@link GenesysDiceResultBuilder}, the lists and counts are used without
+   * copying so must not be changed afterwards. The capture groups are only created when first
+   * requested.
+   *
+   * @param rollStringSource the input the roll string is taken from.
+   * @param rollStringStart the index in the input where the roll string starts.
+   * @param rollStringEnd the index in the input after the end of the roll string.
+   * @param rolls The rolls that occurred.
+   * @param summarizedResults The results of dice that were rolled in bulk.
+   * @param groupFactory creates the capture groups and their results, {@code null} if there are
+   *     none.
+   * @param resultCounts the number of each result type in the rolls and summarized results, see
+   *     {@link #countResults}.
+   * @param seed what is needed to roll the result again, {@code null} if it was not seeded.
+   * @param rollOffset the index of the first roll of this result in the rolls of the result it is
+   *     a capture group of, {@code -1} if it is not a capture group or it is not known.
+   * @param summarizedOffset the index of the first summarized result of this result in the
+   *     summarized results of the result it is a capture group of, {@code -1} if it is not a
+   *     capture group or it is not known.
+   */
+  GenesysDiceResult(
+      String rollStringSource,
+      int rollStringStart,
+      int rollStringEnd,
+      GenesysPackedRolls rolls,
+      List<SummarizedResult> summarizedResults,
+      Supplier<Map<String, GenesysDiceResult>> groupFactory,
+      int[] resultCounts,
+      Seed seed,
+      int rollOffset,
+      int summarizedOffset) {
+    this(
+        rollStringSource,
+        rollStringStart,
+        rollStringEnd,
+        rolls,
+        summarizedResults,
+        groupFactory,
+        resultCounts,
+        List.of(),
+        seed,
+        rollOffset,
+        summarizedOffset);
+  }
 
-    for (var roll : rolls) {
-      successCount += roll.resultType().getSuccess();
-      failureCount += roll.resultType().getFailure();
-      advantageCount += roll.resultType().getAdvantage();
-      threatCount += roll.resultType().getThreat();
-      triumphCount += roll.resultType().getTriumph();
-      despairCount += roll.resultType().getDespair();
-      lightCount += roll.resultType().getLight();
-      darkCount += roll.resultType().getDark();
-    }
+  /**
+   * Constructor.
+   *
+   * @param rollStringSource the input the roll string is taken from.
+   * @param rollStringStart the index in the input where the roll string starts.
+   * @param rollStringEnd the index in the input after the end of the roll string.
+   * @param rolls The rolls that occurred.
+   * @param summarizedResults The results of dice that were rolled in bulk.
+   * @param groupFactory creates the capture groups and their results, {@code null} if there are
+   *     none.
+   * @param resultCounts the number of each result type in the rolls and summarized results.
+   * @param errors The errors that occurred.
+   * @param seed what is needed to roll the result again, {@code null} if it was not seeded.
+   * @param rollOffset the index of the first roll of this result in the rolls of the result it is
+   *     a capture group of, {@code -1} if it is not known.
+   * @param summarizedOffset the index of the first summarized result of this result in the
+   *     summarized results of the result it is a capture group of, {@code -1} if it is not known.
+   */
+  private GenesysDiceResult(
+      String rollStringSource,
+      int rollStringStart,
+      int rollStringEnd,
+      GenesysPackedRolls rolls,
+      List<SummarizedResult> summarizedResults,
+      Supplier<Map<String, GenesysDiceResult>> groupFactory,
+      int[] resultCounts,
+      List<DiceExpressionError> errors,
+      Seed seed,
+      int rollOffset,
+      int summarizedOffset) {
+    this.rollStringSource = rollStringSource;
+    this.rollStringStart = rollStringStart;
+    this.rollStringEnd = rollStringEnd;
+    this.groupFactory = groupFactory;
+    this.groups = groupFactory == null ? Map.of() : null;
+    this.rolls = rolls;
+    this.summarizedResults = summarizedResults;
+    this.resultCounts = resultCounts;
+    this.errors = errors.isEmpty() ? List.of() : new ArrayList<>(errors);
+    this.seed = seed;
+    this.rollOffset = rollOffset;
+    this.summarizedOffset = summarizedOffset;
+  }
 
-    this.successCount = successCount;
-    this.failureCount = failureCount;
-    this.advantageCount = advantageCount;
-    this.threatCount = threatCount;
-    this.triumphCount = triumphCount;
-    this.despairCount = despairCount;
-    this.lightCount = lightCount;
-    this.darkCount = darkCount;
-    this.groups = Map.copyOf(groups);
-    this.rolls = List.copyOf(rolls);
+  /**
+   * Returns the index of the first roll of this result in the rolls of the result it is a capture
+   * group of. The rolls of a group built by {@link GenesysDiceResultBuilder} are always a range of
+   * the rolls of the result that contains it.
+   *
+   * @return the index, {@code -1} if it is not known.
+   */
+  int getRollOffset() {
+    return rollOffset;
+  }
 
+  /**
+   * Returns the index of the first summarized result of this result in the summarized results of
+   * the result it is a capture group of.
+   *
+   * @return the index, {@code -1} if it is not known.
+   */
+  int getSummarizedOffset() {
+    return summarizedOffset;
+  }
+
+  /**
+   * Returns the number of each result type in the specified rolls and summarized results.
+   *
+   * @param rolls the rolls to count.
+   * @param summarizedResults the summarized results to count.
+   * @return the number of each result type, indexed by ordinal.
+   * @throws ArithmeticException if there are more than {@link Integer#MAX_VALUE} of a result type.
+   */
+  static int[] countResults(List<Result> rolls, List<SummarizedResult> summarizedResults) {
+    var resultCounts = new int[RESULT_TYPES.length];
     for (var roll : rolls) {
-      diceResults.computeIfAbsent(roll.diceType(), k -> new ArrayList<>()).add(roll.resultType());
+      resultCounts[roll.resultType().ordinal()]++;
+    }
+    for (var summarized : summarizedResults) {
+      int ordinal = summarized.resultType().ordinal();
+      resultCounts[ordinal] = Math.addExact(resultCounts[ordinal], summarized.count());
     }
-    this.errors.addAll(errors);
+    return resultCounts;
   }
 
   /**
@@ -135,13 +303,58 @@ public class GenesysDiceResult {
     return new GenesysDiceResult(rollString, List.of(), Map.of(), errors);
   }
 
+  /**
+   * Returns the totals of the roll, creating them the first time.
+   *
+   * @return the totals.
+   * @throws ArithmeticException if a total is more than {@link Integer#MAX_VALUE}.
+   */
+  private GenesysDiceCountsBuilder totals() {
+    var counts = totals;
+    if (counts == null) {
+      counts = new GenesysDiceCountsBuilder();
+      for (int i = 0; i < resultCounts.length; i++) {
+        if (resultCounts[i] != 0) {
+          counts.add(RESULT_TYPES[i], resultCounts[i]);
+        }
+      }
+      totals = counts;
+    }
+    return counts;
+  }
+
+  /**
+   * Returns the results of the capture groups, creating them the first time.
+   *
+   * @return the results of the capture groups.
+   */
+  private Map<String, GenesysDiceResult> groups() {
+    var created = groups;
+    if (created == null) {
+      synchronized (this) {
+        created = groups;
+        if (created == null) {
+          created = Map.copyOf(groupFactory.get());
+          groups = created;
+          groupFactory = null;
+        }
+      }
+    }
+    return created;
+  }
+
   /**
    * Returns the string representing the roll.
    *
    * @return the string representing the roll.
    */
   public String getRollString() {
-    return rollString;
+    var string = rollString;
+    if (string == null) {
+      string = rollStringSource.substring(rollStringStart, rollStringEnd);
+      rollString = string;
+    }
+    return string;
   }
 
   /**
@@ -150,7 +363,7 @@ public class GenesysDiceResult {
    * @return the number of successes rolled.
    */
   public int getSuccessCount() {
-    return successCount;
+    return totals().getSuccessCount();
   }
 
   /**
@@ -159,7 +372,7 @@ public class GenesysDiceResult {
    * @return the number of failures rolled.
    */
   public int getFailureCount() {
-    return failureCount;
+    return totals().getFailureCount();
   }
 
   /**
@@ -168,7 +381,7 @@ public class GenesysDiceResult {
    * @return the number of advantages rolled.
    */
   public int getAdvantageCount() {
-    return advantageCount;
+    return totals().getAdvantageCount();
   }
 
   /**
@@ -177,7 +390,7 @@ public class GenesysDiceResult {
    * @return the number of threats rolled.
    */
   public int getThreatCount() {
-    return threatCount;
+    return totals().getThreatCount();
   }
 
   /**
@@ -186,7 +399,7 @@ public class GenesysDiceResult {
    * @return the number of triumphs rolled.
    */
   public int getTriumphCount() {
-    return triumphCount;
+    return totals().getTriumphCount();
   }
 
   /**
@@ -195,7 +408,7 @@ public class GenesysDiceResult {
    * @return the number of despairs rolled.
    */
   public int getDespairCount() {
-    return despairCount;
+    return totals().getDespairCount();
   }
 
   /**
@@ -204,7 +417,7 @@ public class GenesysDiceResult {
    * @return the number of light force pips rolled.
    */
   public int getLightCount() {
-    return lightCount;
+    return totals().getLightCount();
   }
 
   /**
@@ -213,7 +426,7 @@ public class GenesysDiceResult {
    * @return the number of dark force pips rolled.
    */
   public int getDarkCount() {
-    return darkCount;
+    return totals().getDarkCount();
   }
 
   /**
@@ -223,7 +436,7 @@ public class GenesysDiceResult {
    * @return the capture group names.
    */
   public Set<String> getGroupNames() {
-    return groups.keySet();
+    return groups().keySet();
   }
 
   /**
@@ -234,11 +447,12 @@ public class GenesysDiceResult {
    * @return the results of the capture group.
    */
   public GenesysDiceResult getGroup(String name) {
-    return groups.get(name);
+    return groups().get(name);
   }
 
   /**
-   * Returns all the roll results.
+   * Returns all the roll results. Dice that were rolled in bulk are not included, see {@link
+   * #getSummarizedResults()}.
    *
    * @return the roll results.
    */
@@ -247,13 +461,52 @@ public class GenesysDiceResult {
   }
 
   /**
-   * Returns the results rolled for the specified dice type.
+   * Returns the results of dice that were rolled in bulk, as the number of dice of each type that
+   * rolled each result. Large numbers of dice are rolled in bulk rather than one at a time.
+   *
+   * @return the summarized results.
+   */
+  public List<SummarizedResult> getSummarizedResults() {
+    return summarizedResults;
+  }
+
+  /**
+   * Returns the results rolled for the specified dice type. Dice that were rolled in bulk are not
+   * included, see {@link #getSummarizedResults()}.
    *
    * @param diceType the dice type to get the results of.
    * @return the results.
    */
-  public List<GenesysResultType> getDiceResults(GenesysDiceType diceType) {
-    return diceResults.getOrDefault(diceType, List.of());
+  public synchronized List<GenesysResultType> getDiceResults(GenesysDiceType diceType) {
+    if (diceResults == null) {
+      sortDiceResults();
+    }
+    int start = diceResultStarts[diceType.ordinal()];
+    int end = diceResultStarts[diceType.ordinal() + 1];
+    return start == end ? List.of() : new DiceResults(diceResults, start, end);
+  }
+
+  /**
+   * Orders the result types of the rolls by dice type, keeping the order they were rolled in for
+   * each dice type.
+   */
+  private void sortDiceResults() {
+    var starts = new int[DICE_TYPE_COUNT + 1];
+    for (int i = 0; i < rolls.size(); i++) {
+      starts[GenesysPackedRolls.diceTypeOrdinal(rolls.packed(i)) + 1]++;
+    }
+    for (int i = 0; i < DICE_TYPE_COUNT; i++) {
+      starts[i + 1] += starts[i];
+    }
+    var next = starts.clone();
+    var sorted = new byte[rolls.size()];
+    for (int i = 0; i < rolls.size(); i++) {
+      int packed = rolls.packed(i);
+      sorted[next[GenesysPackedRolls.diceTypeOrdinal(packed)]++] =
+          (byte) GenesysPackedRolls.resultTypeOrdinal(packed);
+    }
+    diceResultStarts = starts;
+    diceResults = sorted;
   }
 
   /**
@@ -263,7 +516,7 @@ public class GenesysDiceResult {
    * @return the number of times the result was rolled.
    */
   public long getNumberOfResult(GenesysResultType resultType) {
-    return rolls.stream().filter(r -> r.resultType == resultType).count();
+    return resultCounts[resultType.ordinal()];
   }
 
   /**
@@ -283,5 +536,52 @@ public class GenesysDiceResult {
   public List<DiceExpressionError> getErrors() {
     return errors;
   }
+
+  /**
+   * Returns what is needed to roll this result again with {@link GenesysDiceRoller#replay}. Only
+   * results rolled with a seed have one, the results of capture groups never do.
+   *
+   * @return the seed, {@code null} if the result was not rolled with a seed.
+   */
+  public Seed getSeed() {
+    return seed;
+  }
   ;
+
+  /** Unmodifiable view of a range of result type ordinals, the results of one dice type. */
+  private static final class DiceResults extends AbstractList<GenesysResultType>
+      implements RandomAccess {
+
+    /** The result type ordinals. */
+    private final byte[] results;
+
+    /** The index of the first result of the view. */
+    private final int start;
+
+    /** The index after the last result of the view. */
+    private final int end;
+
+    /**
+     * Constructor.
+     *
+     * @param results the result type ordinals.
+     * @param start the index of the first result of the view.
+     * @param end the index after the last result of the view.
+     */
+    private DiceResults(byte[] results, int start, int end) {
+      this.results = results;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public GenesysResultType get(int index) {
+      return RESULT_TYPES[results[start + Objects.checkIndex(index, end - start)]];
+    }
+
+    @Override
+    public int size() {
+      return end - start;
+    }
+  }
 }
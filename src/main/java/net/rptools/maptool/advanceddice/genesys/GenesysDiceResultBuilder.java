@@ -15,20 +15,96 @@
 package net.rptools.maptool.advanceddice.genesys;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import net.rptools.maptool.advanceddice.genesys.GenesysDiceResult.Result;
+import net.rptools.maptool.advanceddice.RandomSource;
+import net.rptools.maptool.advanceddice.genesys.GenesysDiceResult.SummarizedResult;
 
-/** Builder class for creating {@link GenesysDiceResult} objects. */
+/**
+ * Builder class for creating {@link GenesysDiceResult} objects.
+ *
+ * <p>Capture groups and merged results are referenced rather than copied, and the roll string is
+ * kept as a range of the input it was taken from. The rolls are kept packed one byte per die and
+ * are only flattened into a single array when the result is built, and each capture group's result
+ * is a view of a range of that array, so building is linear in the number of dice however deeply
+ * the groups are nested. The results of the capture groups are only built when first requested
+ * from the result, from a snapshot of where their rolls ended up that is taken when the result is
+ * built, so the result does not keep the builders alive and a builder can be changed after it has
+ * been built.
+ */
 public class GenesysDiceResultBuilder {
 
-  /** The string that represents the roll. */
-  private String rollString = "";
+  /**
+   * Record to hold a builder whose results are included in this one.
+   *
+   * @param rollPosition the number of this builder's own rolls that come before the segment.
+   * @param summarizedPosition the number of this builder's own summarized results that come before
+   *     the segment.
+   * @param builder the builder whose results are included.
+   */
+  private record Segment(
+      int rollPosition, int summarizedPosition, GenesysDiceResultBuilder builder) {}
+
+  /**
+   * Record to hold where the results of a builder ended up once flattened.
+   *
+   * @param rollStart the index of the builder's first roll.
+   * @param rollEnd the index after the builder's last roll.
+   * @param summarizedStart the index of the builder's first summarized result.
+   * @param summarizedEnd the index after the builder's last summarized result.
+   * @param resultCounts the number of each result type in the builder's results.
+   */
+  private record Flattened(
+      int rollStart, int rollEnd, int summarizedStart, int summarizedEnd, int[] resultCounts) {}
+
+  /**
+   * Record to hold what is needed to build the result of a builder once it has been flattened.
+   *
+   * @param rollStringSource the input the roll string is taken from.
+   * @param rollStringStart the index in the input where the roll string starts.
+   * @param rollStringEnd the index in the input after the end of the roll string.
+   * @param range where the results of the builder ended up.
+   * @param seed what is needed to roll the result again, {@code null} if it was not seeded.
+   * @param groupNames the names of the capture groups.
+   * @param groups the snapshots of the capture groups, in the same order as their names.
+   */
+  private record Snapshot(
+      String rollStringSource,
+      int rollStringStart,
+      int rollStringEnd,
+      Flattened range,
+      GenesysDiceResult.Seed seed,
+      String[] groupNames,
+      Snapshot[] groups) {}
+
+  /** The initial size of the array of packed rolls. */
+  private static final int INITIAL_ROLLS_SIZE = 8;
+
+  /** The number of result types. */
+  private static final int RESULT_TYPE_COUNT = GenesysResultType.values().length;
+
+  /** The input the roll string is taken from. */
+  private String rollStringSource = "";
+  /** The index in the input where the roll string starts. */
+  private int rollStringStart;
+  /** The index in the input after the end of the roll string. */
+  private int rollStringEnd;
   /** The capture groups in the roll. */
   private final Map<String, GenesysDiceResultBuilder> groups = new HashMap<>();
-  /** The rolls that occurred. */
-  private final List<GenesysDiceResult.Result> rolls = new ArrayList<>();
+  /** The rolls added directly to this builder, packed as in {@link GenesysPackedRolls}. */
+  private byte[] rolls = new byte[INITIAL_ROLLS_SIZE];
+  /** The number of rolls added directly to this builder. */
+  private int rollCount;
+  /** The results of dice rolled in bulk that were added directly to this builder. */
+  private final List<SummarizedResult> summarizedResults = new ArrayList<>();
+  /** The builders whose results are included in this one, in the order they were added. */
+  private final List<Segment> segments = new ArrayList<>();
+  /** What is needed to roll the result again, {@code null} if it was not rolled with a seed. */
+  private GenesysDiceResult.Seed seed;
 
   /**
    * Sets the roll string.
@@ -37,7 +113,33 @@ public class GenesysDiceResultBuilder {
    * @return this builder.
    */
   public GenesysDiceResultBuilder setRollString(String rollString) {
-    this.rollString = rollString;
+    return setRollString(rollString, 0, rollString.length());
+  }
+
+  /**
+   * Sets the roll string to a range of an input string, the range is only copied out of the input
+   * if the roll string is requested from the result.
+   *
+   * @param source the input the roll string is taken from.
+   * @param start the index in the input where the roll string starts.
+   * @param end the index in the input after the end of the roll string.
+   * @return this builder.
+   */
+  public GenesysDiceResultBuilder setRollString(String source, int start, int end) {
+    this.rollStringSource = source;
+    this.rollStringStart = start;
+    this.rollStringEnd = end;
+    return this;
+  }
+
+  /**
+   * Sets what is needed to roll the result again, see {@link GenesysDiceResult#getSeed()}.
+   *
+   * @param seed the seed, {@code null} if the result was not rolled with a seed.
+   * @return this builder.
+   */
+  public GenesysDiceResultBuilder setSeed(GenesysDiceResult.Seed seed) {
+    this.seed = seed;
     return this;
   }
 
@@ -51,7 +153,7 @@ public class GenesysDiceResultBuilder {
   public GenesysDiceResultBuilder addGroup(String name, GenesysDiceResultBuilder result) {
     // We want to add the group AND add the rolls to the main list
     groups.put(name, result);
-    rolls.addAll(result.rolls);
+    addSegment(result);
     return this;
   }
 
@@ -62,7 +164,7 @@ public class GenesysDiceResultBuilder {
    * @return this builder.
    */
   public GenesysDiceResultBuilder addResult(GenesysResultType result) {
-    rolls.add(new Result(GenesysDiceType.NONE, result));
+    addRoll(GenesysDiceType.NONE, result);
     return this;
   }
 
@@ -74,7 +176,7 @@ public class GenesysDiceResultBuilder {
    * @return this builder.
    */
   public GenesysDiceResultBuilder addResult(GenesysDiceType diceType, GenesysResultType result) {
-    rolls.add(new Result(diceType, result));
+    addRoll(diceType, result);
     return this;
   }
 
@@ -85,12 +187,43 @@ public class GenesysDiceResultBuilder {
    * @return this builder.
    */
   public GenesysDiceResultBuilder addResult(GenesysDiceType diceType) {
-    rolls.add(new Result(diceType, diceType.roll()));
+    addRoll(diceType, diceType.roll());
+    return this;
+  }
+
+  /**
+   * "Rolls" the specified dice type using the random source and adds the result to the roll.
+   *
+   * @param diceType the dice type.
+   * @param randomSource the source of random numbers.
+   * @return this builder.
+   */
+  public GenesysDiceResultBuilder addResult(GenesysDiceType diceType, RandomSource randomSource) {
+    addRoll(diceType, diceType.roll(randomSource));
+    return this;
+  }
+
+  /**
+   * Adds a number of identical results rolled in bulk for the specified dice type. These are kept
+   * as a single count rather than as individual rolls.
+   *
+   * @param diceType the dice type.
+   * @param result the result that was rolled.
+   * @param count the number of dice that rolled the result.
+   * @return this builder.
+   */
+  public GenesysDiceResultBuilder addResults(
+      GenesysDiceType diceType, GenesysResultType result, int count) {
+    if (count > 0) {
+      summarizedResults.add(new SummarizedResult(diceType, result, count));
+    }
     return this;
   }
 
   /**
-   * Merges the specified result into this one.
+   * Merges the specified result into this one. The result is referenced rather than copied, so it
+   * should not be changed afterwards. Roll strings that are ranges of the same input are joined by
+   * spanning the input that covers both, otherwise they are concatenated.
    *
    * @param result the result to merge into this one.
    * @return this builder.
@@ -100,9 +233,9 @@ public class GenesysDiceResultBuilder {
       return this;
     }
 
-    rollString += result.rollString;
+    mergeRollString(result);
     groups.putAll(result.groups);
-    rolls.addAll(result.rolls);
+    addSegment(result);
 
     return this;
   }
@@ -129,12 +262,231 @@ public class GenesysDiceResultBuilder {
    * Builds a {@link GenesysDiceResult} from this builder.
    *
    * @return the result
+   * @throws ArithmeticException if there are more than {@link Integer#MAX_VALUE} of a result type.
    */
   public GenesysDiceResult build() {
-    var builtGroups = new HashMap<String, GenesysDiceResult>();
+    var allRolls = new byte[totalRollCount()];
+    var allSummarized = new ArrayList<SummarizedResult>();
+    var flattened = new IdentityHashMap<GenesysDiceResultBuilder, Flattened>();
+    flatten(allRolls, 0, allSummarized, new int[RESULT_TYPE_COUNT], flattened);
+    return build(
+        snapshot(flattened),
+        new GenesysPackedRolls(allRolls, 0, allRolls.length),
+        Collections.unmodifiableList(allSummarized),
+        null);
+  }
+
+  /**
+   * Takes a snapshot of this builder and its capture groups once they have been flattened.
+   *
+   * @param flattened where the rolls of each builder ended up.
+   * @return the snapshot.
+   */
+  private Snapshot snapshot(Map<GenesysDiceResultBuilder, Flattened> flattened) {
+    var groupNames = new String[groups.size()];
+    var groupSnapshots = new Snapshot[groups.size()];
+    int i = 0;
     for (var group : groups.entrySet()) {
-      builtGroups.put(group.getKey(), group.getValue().build());
+      groupNames[i] = group.getKey();
+      groupSnapshots[i++] = group.getValue().snapshot(flattened);
+    }
+    return new Snapshot(
+        rollStringSource,
+        rollStringStart,
+        rollStringEnd,
+        flattened.get(this),
+        seed,
+        groupNames,
+        groupSnapshots);
+  }
+
+  /**
+   * Returns the number of rolls of this builder and the builders it includes.
+   *
+   * @return the number of rolls.
+   */
+  private int totalRollCount() {
+    int count = rollCount;
+    for (var segment : segments) {
+      count += segment.builder().totalRollCount();
+    }
+    return count;
+  }
+
+  /**
+   * Adds the rolls of this builder and the builders it includes, in order, to the flattened rolls,
+   * recording where the rolls of each builder ended up.
+   *
+   * @param allRolls the flattened packed rolls.
+   * @param position the index in the flattened rolls to add the first roll at.
+   * @param allSummarized the flattened summarized results.
+   * @param resultCounts the number of each result type, added to for the results of this builder.
+   * @param flattened where the rolls of each builder ended up.
+   * @return the index in the flattened rolls after the last roll added.
+   */
+  private int flatten(
+      byte[] allRolls,
+      int position,
+      List<SummarizedResult> allSummarized,
+      int[] resultCounts,
+      Map<GenesysDiceResultBuilder, Flattened> flattened) {
+    int rollStart = position;
+    int summarizedStart = allSummarized.size();
+    int rollPosition = 0;
+    int summarizedPosition = 0;
+    for (var segment : segments) {
+      position =
+          addOwnRolls(allRolls, position, resultCounts, rollPosition, segment.rollPosition());
+      addOwnSummarized(
+          allSummarized, resultCounts, summarizedPosition, segment.summarizedPosition());
+      rollPosition = segment.rollPosition();
+      summarizedPosition = segment.summarizedPosition();
+      var segmentCounts = new int[RESULT_TYPE_COUNT];
+      position =
+          segment.builder().flatten(allRolls, position, allSummarized, segmentCounts, flattened);
+      for (int i = 0; i < RESULT_TYPE_COUNT; i++) {
+        resultCounts[i] = Math.addExact(resultCounts[i], segmentCounts[i]);
+      }
+    }
+    position = addOwnRolls(allRolls, position, resultCounts, rollPosition, rollCount);
+    addOwnSummarized(allSummarized, resultCounts, summarizedPosition, summarizedResults.size());
+    flattened.put(
+        this,
+        new Flattened(rollStart, position, summarizedStart, allSummarized.size(), resultCounts));
+    return position;
+  }
+
+  /**
+   * Adds a range of the rolls added directly to this builder to the flattened rolls.
+   *
+   * @param allRolls the flattened packed rolls.
+   * @param position the index in the flattened rolls to add the first roll at.
+   * @param resultCounts the number of each result type, added to for the rolls.
+   * @param from the index of the first roll to add.
+   * @param to the index after the last roll to add.
+   * @return the index in the flattened rolls after the last roll added.
+   */
+  private int addOwnRolls(byte[] allRolls, int position, int[] resultCounts, int from, int to) {
+    for (int i = from; i < to; i++) {
+      resultCounts[GenesysPackedRolls.resultTypeOrdinal(rolls[i])]++;
+    }
+    System.arraycopy(rolls, from, allRolls, position, to - from);
+    return position + to - from;
+  }
+
+  /**
+   * Adds a range of the summarized results added directly to this builder to the flattened list.
+   *
+   * @param allSummarized the flattened summarized results.
+   * @param resultCounts the number of each result type, added to for the summarized results.
+   * @param from the index of the first summarized result to add.
+   * @param to the index after the last summarized result to add.
+   */
+  private void addOwnSummarized(
+      List<SummarizedResult> allSummarized, int[] resultCounts, int from, int to) {
+    for (int i = from; i < to; i++) {
+      var summarized = summarizedResults.get(i);
+      allSummarized.add(summarized);
+      int ordinal = summarized.resultType().ordinal();
+      resultCounts[ordinal] = Math.addExact(resultCounts[ordinal], summarized.count());
+    }
+  }
+
+  /**
+   * Builds a result from a snapshot and the flattened rolls.
+   *
+   * @param snapshot the snapshot of the builder.
+   * @param allRolls the flattened rolls.
+   * @param allSummarized the flattened summarized results.
+   * @param parent where the rolls of the builder this is a capture group of ended up, {@code null}
+   *     if it is not a capture group.
+   * @return the result.
+   */
+  private static GenesysDiceResult build(
+      Snapshot snapshot,
+      GenesysPackedRolls allRolls,
+      List<SummarizedResult> allSummarized,
+      Flattened parent) {
+    var range = snapshot.range();
+    return new GenesysDiceResult(
+        snapshot.rollStringSource(),
+        snapshot.rollStringStart(),
+        snapshot.rollStringEnd(),
+        allRolls.subList(range.rollStart(), range.rollEnd()),
+        allSummarized.subList(range.summarizedStart(), range.summarizedEnd()),
+        snapshot.groups().length == 0 ? null : () -> buildGroups(snapshot, allRolls, allSummarized),
+        range.resultCounts(),
+        snapshot.seed(),
+        parent == null ? -1 : range.rollStart() - parent.rollStart(),
+        parent == null ? -1 : range.summarizedStart() - parent.summarizedStart());
+  }
+
+  /**
+   * Builds the results of the capture groups of a snapshot from the flattened rolls.
+   *
+   * @param snapshot the snapshot of the builder the groups are in.
+   * @param allRolls the flattened rolls.
+   * @param allSummarized the flattened summarized results.
+   * @return the results of the capture groups.
+   */
+  private static Map<String, GenesysDiceResult> buildGroups(
+      Snapshot snapshot, GenesysPackedRolls allRolls, List<SummarizedResult> allSummarized) {
+    var builtGroups = new HashMap<String, GenesysDiceResult>();
+    for (int i = 0; i < snapshot.groups().length; i++) {
+      builtGroups.put(
+          snapshot.groupNames()[i],
+          build(snapshot.groups()[i], allRolls, allSummarized, snapshot.range()));
+    }
+    return builtGroups;
+  }
+
+  /**
+   * Adds a roll directly to this builder.
+   *
+   * @param diceType the dice type.
+   * @param result the result that was rolled.
+   */
+  private void addRoll(GenesysDiceType diceType, GenesysResultType result) {
+    if (rollCount == rolls.length) {
+      rolls = Arrays.copyOf(rolls, rollCount * 2);
+    }
+    rolls[rollCount++] = (byte) GenesysPackedRolls.pack(diceType, result);
+  }
+
+  /**
+   * Includes the results of another builder in this one at the current position.
+   *
+   * @param result the builder whose results are included.
+   */
+  private void addSegment(GenesysDiceResultBuilder result) {
+    segments.add(new Segment(rollCount, summarizedResults.size(), result));
+  }
+
+  /**
+   * Appends the roll string of another builder to this one.
+   *
+   * @param result the builder whose roll string is appended.
+   */
+  private void mergeRollString(GenesysDiceResultBuilder result) {
+    if (result.rollStringStart == result.rollStringEnd) {
+      return;
+    }
+    if (rollStringStart == rollStringEnd) {
+      setRollString(result.rollStringSource, result.rollStringStart, result.rollStringEnd);
+    } else if (rollStringSource == result.rollStringSource) {
+      rollStringStart = Math.min(rollStringStart, result.rollStringStart);
+      rollStringEnd = Math.max(rollStringEnd, result.rollStringEnd);
+    } else {
+      setRollString(getRollString() + result.getRollString());
     }
-    return new GenesysDiceResult(rollString, rolls, builtGroups);
+  }
+
+  /**
+   * Returns the roll string.
+   *
+   * @return the roll string.
+   */
+  private String getRollString() {
+    return rollStringSource.substring(rollStringStart, rollStringEnd);
   }
 }
@@ -0,0 +1,600 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.rptools.maptool.advanceddice.DiceExpressionError;
+import net.rptools.maptool.advanceddice.genesys.GenesysDiceResult.Result;
+import net.rptools.maptool.advanceddice.genesys.GenesysDiceResult.SummarizedResult;
+
+/**
+ * Compact binary format for {@link GenesysDiceResult}s, used to send results between clients. Each
+ * die takes a single byte holding its type and face, numbers are written as variable length
+ * integers, and the rolls of a capture group are written as a range of the rolls of the result
+ * that contains it so no die is written twice.
+ *
+ * <p>The format is a version byte followed by the result:
+ *
+ * <pre>
+ * result     := string rolls summarized errors groups
+ * rolls      := varint(n) die{n}
+ * summarized := varint(n) (die varint(count)){n}
+ * errors     := varint(n) (zigzag(line) zigzag(position) string){n}
+ * groups     := varint(n) (string(name) group){n}
+ * group      := 0 result
+ *             | 1 varint(rollStart) varint(rollCount) varint(summarizedStart)
+ *                 varint(summarizedCount) string groups
+ * die        := byte(diceType &lt;&lt; 5 | resultType)
+ * string     := varint(length) utf8
+ * </pre>
+ *
+ * <p>The totals are not written as they are the sum of the rolls. A result with errors is decoded
+ * without any rolls, as results with errors never have any. The {@link GenesysDiceResult#getSeed()
+ * seed} is not written, a seeded result can be sent as its roll string and seed instead.
+ *
+ * <p>Decoding never trusts the input: every length is checked against the bytes that remain and
+ * groups may be nested at most {@link #MAX_GROUP_DEPTH} deep, the default limit of rollers.
+ */
+public final class GenesysDiceResultCodec {
+
+  /** The version of the format written by this codec. */
+  public static final int VERSION = 1;
+
+  /** The most deeply capture groups may be nested in a result that is decoded. */
+  public static final int MAX_GROUP_DEPTH = GenesysRollLimitsBuilder.DEFAULT_MAX_GROUP_DEPTH;
+
+  /** The group kind for a group whose rolls are written in full. */
+  private static final int GROUP_INLINE = 0;
+
+  /** The group kind for a group whose rolls are a range of the rolls of the containing result. */
+  private static final int GROUP_RANGE = 1;
+
+  /** Private constructor as this class only has static methods. */
+  private GenesysDiceResultCodec() {}
+
+  /**
+   * Returns the number of bytes needed to encode a result.
+   *
+   * @param result the result.
+   * @return the number of bytes.
+   */
+  public static int encodedSize(GenesysDiceResult result) {
+    var writer = new Writer(null);
+    writer.writeByte(VERSION);
+    writer.writeResult(result);
+    return writer.size;
+  }
+
+  /**
+   * Encodes a result into a new buffer that is ready to be read.
+   *
+   * @param result the result.
+   * @return the buffer.
+   */
+  public static ByteBuffer encode(GenesysDiceResult result) {
+    var buffer = ByteBuffer.allocate(encodedSize(result));
+    encode(result, buffer);
+    return buffer.flip();
+  }
+
+  /**
+   * Encodes a result, writing it at the current position of the buffer.
+   *
+   * @param result the result.
+   * @param buffer the buffer to write to.
+   * @throws java.nio.BufferOverflowException if there is not enough space left in the buffer, see
+   *     {@link #encodedSize(GenesysDiceResult)}.
+   */
+  public static void encode(GenesysDiceResult result, ByteBuffer buffer) {
+    var writer = new Writer(buffer);
+    writer.writeByte(VERSION);
+    writer.writeResult(result);
+  }
+
+  /**
+   * Decodes a result, reading it from the current position of the buffer.
+   *
+   * @param buffer the buffer to read from.
+   * @return the result.
+   * @throws GenesysDiceCodecException if the buffer does not hold a valid result.
+   */
+  public static GenesysDiceResult decode(ByteBuffer buffer) {
+    try {
+      int version = buffer.get();
+      if (version != VERSION) {
+        throw new GenesysDiceCodecException("Unsupported dice result version: " + version);
+      }
+      return readResult(buffer, 0);
+    } catch (BufferUnderflowException e) {
+      throw new GenesysDiceCodecException("Truncated dice result", e);
+    }
+  }
+
+  /**
+   * Returns the packed form of a die.
+   *
+   * @param diceType the type of dice.
+   * @param resultType the result of the dice.
+   * @return the packed die.
+   */
+  static int pack(GenesysDiceType diceType, GenesysResultType resultType) {
+    return GenesysPackedRolls.pack(diceType, resultType);
+  }
+
+  /**
+   * Reads a result.
+   *
+   * @param buffer the buffer to read from.
+   * @param depth how deeply the result is nested in capture groups.
+   * @return the result.
+   */
+  private static GenesysDiceResult readResult(ByteBuffer buffer, int depth) {
+    var rollString = readString(buffer);
+    var rolls = readRolls(buffer);
+    var summarized = readSummarized(buffer);
+    var errors = readErrors(buffer);
+    var groups = readGroups(buffer, rolls, summarized, depth);
+    if (!errors.isEmpty()) {
+      return GenesysDiceResult.error(rollString, errors);
+    }
+    return createResult(rollString, rolls, summarized, groups, -1, -1);
+  }
+
+  /**
+   * Reads the rolls of a result.
+   *
+   * @param buffer the buffer to read from.
+   * @return the rolls.
+   */
+  private static GenesysPackedRolls readRolls(ByteBuffer buffer) {
+    var rolls = new byte[readCount(buffer)];
+    buffer.get(rolls);
+    for (var die : rolls) {
+      if (GenesysPackedRolls.unpack(die) == null) {
+        throw new GenesysDiceCodecException("Invalid die");
+      }
+    }
+    return new GenesysPackedRolls(rolls, 0, rolls.length);
+  }
+
+  /**
+   * Reads the summarized results of a result.
+   *
+   * @param buffer the buffer to read from.
+   * @return the summarized results.
+   */
+  static List<SummarizedResult> readSummarized(ByteBuffer buffer) {
+    var summarized = new SummarizedResult[readCount(buffer)];
+    for (int i = 0; i < summarized.length; i++) {
+      var die = readDie(buffer);
+      summarized[i] = new SummarizedResult(die.diceType(), die.resultType(), readLength(buffer));
+    }
+    return Collections.unmodifiableList(Arrays.asList(summarized));
+  }
+
+  /**
+   * Reads the errors of a result.
+   *
+   * @param buffer the buffer to read from.
+   * @return the errors.
+   */
+  private static List<DiceExpressionError> readErrors(ByteBuffer buffer) {
+    var errors = new DiceExpressionError[readCount(buffer)];
+    for (int i = 0; i < errors.length; i++) {
+      int line = readZigzag(buffer);
+      int position = readZigzag(buffer);
+      errors[i] = new DiceExpressionError(line, position, readString(buffer));
+    }
+    return List.of(errors);
+  }
+
+  /**
+   * Reads the capture groups of a result.
+   *
+   * @param buffer the buffer to read from.
+   * @param rolls the rolls of the result.
+   * @param summarized the summarized results of the result.
+   * @param depth how deeply the result is nested in capture groups.
+   * @return the capture groups.
+   */
+  private static Map<String, GenesysDiceResult> readGroups(
+      ByteBuffer buffer, List<Result> rolls, List<SummarizedResult> summarized, int depth) {
+    int count = readCount(buffer);
+    if (count == 0) {
+      return Map.of();
+    }
+    if (depth >= MAX_GROUP_DEPTH) {
+      throw new GenesysDiceCodecException(
+          "Groups nested too deeply, the limit is " + MAX_GROUP_DEPTH + " levels");
+    }
+    var groups = new HashMap<String, GenesysDiceResult>();
+    for (int i = 0; i < count; i++) {
+      var name = readString(buffer);
+      int kind = buffer.get();
+      if (kind == GROUP_INLINE) {
+        groups.put(name, readResult(buffer, depth + 1));
+      } else if (kind == GROUP_RANGE) {
+        int rollStart = readLength(buffer);
+        var groupRolls = range(rolls, rollStart, readLength(buffer));
+        int summarizedStart = readLength(buffer);
+        var groupSummarized = range(summarized, summarizedStart, readLength(buffer));
+        var groupRollString = readString(buffer);
+        var groupGroups = readGroups(buffer, groupRolls, groupSummarized, depth + 1);
+        groups.put(
+            name,
+            createResult(
+                groupRollString,
+                groupRolls,
+                groupSummarized,
+                groupGroups,
+                rollStart,
+                summarizedStart));
+      } else {
+        throw new GenesysDiceCodecException("Invalid group kind: " + kind);
+      }
+    }
+    return groups;
+  }
+
+  /**
+   * Returns a view of a range of a list that was read.
+   *
+   * @param list the list.
+   * @param start the index of the start of the range.
+   * @param length the length of the range.
+   * @param <T> the type of the list elements.
+   * @return the view of the range.
+   * @throws GenesysDiceCodecException if the range is not in the list.
+   */
+  private static <T> List<T> range(List<T> list, int start, int length) {
+    if (!isRange(start, length, list.size())) {
+      throw new GenesysDiceCodecException("Invalid group range: " + start + "+" + length);
+    }
+    return list.subList(start, start + length);
+  }
+
+  /**
+   * Returns if a range is within a list.
+   *
+   * @param start the index of the start of the range, negative if it is not known.
+   * @param length the length of the range.
+   * @param size the size of the list.
+   * @return {@code true} if the range is within the list.
+   */
+  private static boolean isRange(int start, int length, int size) {
+    return start >= 0 && start <= size && length <= size - start;
+  }
+
+  /**
+   * Creates a result, totalling its rolls.
+   *
+   * @param rollString the string representing the roll.
+   * @param rolls the rolls that occurred.
+   * @param summarized the results of dice that were rolled in bulk.
+   * @param groups the capture groups and their results.
+   * @param rollOffset the index of the first roll in the rolls of the containing result, {@code
+   *     -1} if it is not a range of them.
+   * @param summarizedOffset the index of the first summarized result in the summarized results of
+   *     the containing result, {@code -1} if it is not a range of them.
+   * @return the result.
+   * @throws GenesysDiceCodecException if there are more than {@link Integer#MAX_VALUE} of a result
+   *     type.
+   */
+  private static GenesysDiceResult createResult(
+      String rollString,
+      List<Result> rolls,
+      List<SummarizedResult> summarized,
+      Map<String, GenesysDiceResult> groups,
+      int rollOffset,
+      int summarizedOffset) {
+    int[] resultCounts;
+    try {
+      resultCounts = GenesysDiceResult.countResults(rolls, summarized);
+    } catch (ArithmeticException e) {
+      throw new GenesysDiceCodecException("Too many results", e);
+    }
+    return new GenesysDiceResult(
+        rollString,
+        0,
+        rollString.length(),
+        GenesysPackedRolls.of(rolls),
+        summarized,
+        groups.isEmpty() ? null : () -> groups,
+        resultCounts,
+        null,
+        rollOffset,
+        summarizedOffset);
+  }
+
+  /**
+   * Reads a packed die.
+   *
+   * @param buffer the buffer to read from.
+   * @return the die.
+   */
+  static Result readDie(ByteBuffer buffer) {
+    var die = GenesysPackedRolls.unpack(buffer.get());
+    if (die == null) {
+      throw new GenesysDiceCodecException("Invalid die");
+    }
+    return die;
+  }
+
+  /**
+   * Reads a string.
+   *
+   * @param buffer the buffer to read from.
+   * @return the string.
+   */
+  static String readString(ByteBuffer buffer) {
+    int length = readLength(buffer);
+    if (length > buffer.remaining()) {
+      throw new GenesysDiceCodecException(
+          "String of " + length + " bytes with only " + buffer.remaining() + " left");
+    }
+    int position = buffer.position();
+    String string;
+    if (buffer.hasArray()) {
+      string =
+          new String(
+              buffer.array(), buffer.arrayOffset() + position, length, StandardCharsets.UTF_8);
+    } else {
+      string = StandardCharsets.UTF_8.decode(buffer.slice(position, length)).toString();
+    }
+    buffer.position(position + length);
+    return string;
+  }
+
+  /**
+   * Reads the number of items that follow, each of which takes at least one byte.
+   *
+   * @param buffer the buffer to read from.
+   * @return the number of items.
+   */
+  static int readCount(ByteBuffer buffer) {
+    int count = readLength(buffer);
+    if (count > buffer.remaining()) {
+      throw new GenesysDiceCodecException(
+          count + " items with only " + buffer.remaining() + " bytes left");
+    }
+    return count;
+  }
+
+  /**
+   * Reads a variable length integer that can not be negative.
+   *
+   * @param buffer the buffer to read from.
+   * @return the value.
+   */
+  static int readLength(ByteBuffer buffer) {
+    int value = readVarint(buffer);
+    if (value < 0) {
+      throw new GenesysDiceCodecException("Invalid length: " + Integer.toUnsignedString(value));
+    }
+    return value;
+  }
+
+  /**
+   * Reads a zigzag encoded variable length integer.
+   *
+   * @param buffer the buffer to read from.
+   * @return the value.
+   */
+  private static int readZigzag(ByteBuffer buffer) {
+    int value = readVarint(buffer);
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Reads a variable length integer, seven bits per byte with the high bit set on all but the
+   * last.
+   *
+   * @param buffer the buffer to read from.
+   * @return the value.
+   */
+  private static int readVarint(ByteBuffer buffer) {
+    int value = 0;
+    for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+      byte b = buffer.get();
+      value |= (b & 0x7f) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new GenesysDiceCodecException("Invalid variable length integer");
+  }
+
+  /** Writes results and their parts, or only counts the bytes needed if it has no buffer. */
+  static final class Writer {
+
+    /** The buffer to write to, {@code null} to only count the bytes. */
+    private final ByteBuffer buffer;
+
+    /** The number of bytes written. */
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param buffer the buffer to write to, {@code null} to only count the bytes.
+     */
+    Writer(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    /**
+     * Returns the number of bytes written.
+     *
+     * @return the number of bytes written.
+     */
+    int getSize() {
+      return size;
+    }
+
+    /**
+     * Writes a result.
+     *
+     * @param result the result.
+     */
+    void writeResult(GenesysDiceResult result) {
+      writeString(result.getRollString());
+      var rolls = GenesysPackedRolls.of(result.getRolls());
+      writeVarint(rolls.size());
+      for (int i = 0; i < rolls.size(); i++) {
+        writeByte(rolls.packed(i));
+      }
+      var summarized = result.getSummarizedResults();
+      writeVarint(summarized.size());
+      for (var summarizedResult : summarized) {
+        writeByte(pack(summarizedResult.diceType(), summarizedResult.resultType()));
+        writeVarint(summarizedResult.count());
+      }
+      var errors = result.getErrors();
+      writeVarint(errors.size());
+      for (var error : errors) {
+        writeZigzag(error.line());
+        writeZigzag(error.charPositionInLine());
+        writeString(error.msg());
+      }
+      writeGroups(result);
+    }
+
+    /**
+     * Writes the capture groups of a result. A group that records where its rolls are in the rolls
+     * of the result, as every group built by {@link GenesysDiceResultBuilder} or decoded from a
+     * range does, is written as that range, any other group is written in full.
+     *
+     * @param result the result.
+     */
+    void writeGroups(GenesysDiceResult result) {
+      var names = result.getGroupNames();
+      writeVarint(names.size());
+      for (var name : names) {
+        writeString(name);
+        var group = result.getGroup(name);
+        int rollStart = group.getRollOffset();
+        int summarizedStart = group.getSummarizedOffset();
+        if (group.hasErrors()
+            || !isRange(rollStart, group.getRolls().size(), result.getRolls().size())
+            || !isRange(
+                summarizedStart,
+                group.getSummarizedResults().size(),
+                result.getSummarizedResults().size())) {
+          writeByte(GROUP_INLINE);
+          writeResult(group);
+          continue;
+        }
+        writeByte(GROUP_RANGE);
+        writeVarint(rollStart);
+        writeVarint(group.getRolls().size());
+        writeVarint(summarizedStart);
+        writeVarint(group.getSummarizedResults().size());
+        writeString(group.getRollString());
+        writeGroups(group);
+      }
+    }
+
+    /**
+     * Writes a string as its length in bytes followed by its UTF-8 encoding.
+     *
+     * @param string the string.
+     */
+    void writeString(String string) {
+      int length = utf8Length(string);
+      writeVarint(length);
+      if (buffer != null) {
+        if (length == string.length()) {
+          for (int i = 0; i < length; i++) {
+            buffer.put((byte) string.charAt(i));
+          }
+        } else {
+          buffer.put(string.getBytes(StandardCharsets.UTF_8));
+        }
+      }
+      size += length;
+    }
+
+    /**
+     * Writes a zigzag encoded variable length integer, so small negative values are short too.
+     *
+     * @param value the value.
+     */
+    void writeZigzag(int value) {
+      writeVarint((value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * Writes a variable length integer, seven bits per byte with the high bit set on all but the
+     * last.
+     *
+     * @param value the value.
+     */
+    void writeVarint(int value) {
+      while ((value & ~0x7f) != 0) {
+        writeByte((value & 0x7f) | 0x80);
+        value >>>= 7;
+      }
+      writeByte(value);
+    }
+
+    /**
+     * Writes a byte.
+     *
+     * @param value the byte.
+     */
+    void writeByte(int value) {
+      if (buffer != null) {
+        buffer.put((byte) value);
+      }
+      size++;
+    }
+
+    /**
+     * Returns the length of the UTF-8 encoding of a string, as written by {@link
+     * String#getBytes(java.nio.charset.Charset)}.
+     *
+     * @param string the string.
+     * @return the length in bytes.
+     */
+    private static int utf8Length(String string) {
+      int length = 0;
+      for (int i = 0; i < string.length(); i++) {
+        char c = string.charAt(i);
+        if (c < 0x80) {
+          length++;
+        } else if (c < 0x800) {
+          length += 2;
+        } else if (Character.isHighSurrogate(c)
+            && i + 1 < string.length()
+            && Character.isLowSurrogate(string.charAt(i + 1))) {
+          length += 4;
+          i++;
+        } else if (Character.isSurrogate(c)) {
+          length++;
+        } else {
+          length += 3;
+        }
+      }
+      return length;
+    }
+  }
+}
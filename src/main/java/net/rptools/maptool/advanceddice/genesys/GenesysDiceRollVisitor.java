@@ -16,6 +16,7 @@ package net.rptools.maptool.advanceddice.genesys;
 
 import java.util.ArrayList;
 import java.util.function.ToIntFunction;
+import net.rptools.maptool.advanceddice.RandomSource;
 import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.AbilityDiceContext;
 import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.AdvantageContext;
 import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.BoostDiceContext;
@@ -61,6 +62,15 @@ public class GenesysDiceRollVisitor
   /** Function used to resolve prompts. */
   private final ToIntFunction<String> promptResolver;
 
+  /** The source of random numbers used to roll the dice. */
+  private final RandomSource randomSource;
+
+  /** The input being visited, read from the token stream when first needed. */
+  private String input;
+
+  /** If every character of the input is a single code point, so token indexes are offsets. */
+  private boolean singleCharCodePoints;
+
   /**
    * Constructor.
    *
@@ -72,9 +82,26 @@ public class GenesysDiceRollVisitor
       ToIntFunction<String> variableResolver,
       ToIntFunction<String> propertyResolver,
       ToIntFunction<String> promptResolver) {
-    this.variableResolver = variableResolver;
-    this.propertyResolver = propertyResolver;
-    this.promptResolver = promptResolver;
+    this(variableResolver, propertyResolver, promptResolver, RandomSource.secure());
+  }
+
+  /**
+   * Constructor. Each resolver is called only once for each name, however many times it is used.
+   *
+   * @param variableResolver the function used to resolve variables.
+   * @param propertyResolver the function used to resolve properties.
+   * @param promptResolver the function used to resolve prompts.
+   * @param randomSource the source of random numbers used to roll the dice.
+   */
+  public GenesysDiceRollVisitor(
+      ToIntFunction<String> variableResolver,
+      ToIntFunction<String> propertyResolver,
+      ToIntFunction<String> promptResolver,
+      RandomSource randomSource) {
+    this.variableResolver = GenesysRollPlan.memoize(variableResolver);
+    this.propertyResolver = GenesysRollPlan.memoize(propertyResolver);
+    this.promptResolver = GenesysRollPlan.memoize(promptResolver);
+    this.randomSource = randomSource;
   }
 
   @Override
@@ -107,148 +134,125 @@ public class GenesysDiceRollVisitor
       res.add(visit(roll));
     }
 
-    return new GenesysDiceResultBuilder().merge(res).setRollString(getRollString(ctx));
+    return setRollString(new GenesysDiceResultBuilder().merge(res), ctx);
   }
 
   @Override
   public GenesysDiceResultBuilder visitGenesysMultipleRoll(GenesysMultipleRollContext ctx) {
     var res = new ArrayList<GenesysDiceResultBuilder>();
-    int count = getNumber(ctx.num);
+    int count = ctx.num == null ? 1 : getNumber(ctx.num);
     for (int i = 0; i < count; i++) {
       res.add(visit(ctx.genesysDiceType()));
     }
-    return new GenesysDiceResultBuilder().merge(res).setRollString(getRollString(ctx));
+    return setRollString(new GenesysDiceResultBuilder().merge(res), ctx);
   }
 
   @Override
   public GenesysDiceResultBuilder visitGenesysMultipleDiceResults(
       GenesysMultipleDiceResultsContext ctx) {
     var res = new ArrayList<GenesysDiceResultBuilder>();
-    int count = getNumber(ctx.num);
+    int count = ctx.num == null ? 1 : getNumber(ctx.num);
     for (int i = 0; i < count; i++) {
       res.add(visit(ctx.genesysDiceResults()));
     }
-    return new GenesysDiceResultBuilder().merge(res).setRollString(getRollString(ctx));
+    return setRollString(new GenesysDiceResultBuilder().merge(res), ctx);
   }
 
   @Override
   public GenesysDiceResultBuilder visitGroupedGenesysRoll(GroupedGenesysRollContext ctx) {
     var groupRes = new GenesysDiceResultBuilder();
     var res = visit(ctx.genesysRolls());
-    return groupRes
-        .addGroup(ctx.groupName().getText().replaceAll(":$", ""), res)
-        .setRollString(getRollString(ctx));
+    return setRollString(
+        groupRes.addGroup(ctx.groupName().getText().replaceAll(":$", ""), res), ctx);
   }
 
   @Override
   public GenesysDiceResultBuilder visitProficiencyDice(ProficiencyDiceContext ctx) {
-    return new GenesysDiceResultBuilder()
-        .setRollString(ctx.getText())
-        .addResult(GenesysDiceType.PROFICIENCY);
+    return newBuilder(ctx).addResult(GenesysDiceType.PROFICIENCY, randomSource);
   }
 
   @Override
   public GenesysDiceResultBuilder visitChallengeDice(ChallengeDiceContext ctx) {
-    return new GenesysDiceResultBuilder()
-        .setRollString(ctx.getText())
-        .addResult(GenesysDiceType.CHALLENGE);
+    return newBuilder(ctx).addResult(GenesysDiceType.CHALLENGE, randomSource);
   }
 
   @Override
   public GenesysDiceResultBuilder visitBoostDice(BoostDiceContext ctx) {
-    return new GenesysDiceResultBuilder()
-        .setRollString(ctx.getText())
-        .addResult(GenesysDiceType.BOOST);
+    return newBuilder(ctx).addResult(GenesysDiceType.BOOST, randomSource);
   }
 
   @Override
   public GenesysDiceResultBuilder visitSetbackDice(SetbackDiceContext ctx) {
-    return new GenesysDiceResultBuilder()
-        .setRollString(ctx.getText())
-        .addResult(GenesysDiceType.SETBACK);
+    return newBuilder(ctx).addResult(GenesysDiceType.SETBACK, randomSource);
   }
 
   @Override
   public GenesysDiceResultBuilder visitAbilityDice(AbilityDiceContext ctx) {
-    return new GenesysDiceResultBuilder()
-        .setRollString(ctx.getText())
-        .addResult(GenesysDiceType.ABILITY);
+    return newBuilder(ctx).addResult(GenesysDiceType.ABILITY, randomSource);
   }
 
   @Override
   public GenesysDiceResultBuilder visitDifficultyDice(DifficultyDiceContext ctx) {
-    return new GenesysDiceResultBuilder()
-        .setRollString(ctx.getText())
-        .addResult(GenesysDiceType.DIFFICULTY);
+    return newBuilder(ctx).addResult(GenesysDiceType.DIFFICULTY, randomSource);
   }
 
   @Override
   public GenesysDiceResultBuilder visitForceDice(ForceDiceContext ctx) {
-    return new GenesysDiceResultBuilder()
-        .setRollString(ctx.getText())
-        .addResult(GenesysDiceType.FORCE);
+    return newBuilder(ctx).addResult(GenesysDiceType.FORCE, randomSource);
   }
 
   @Override
   public GenesysDiceResultBuilder visitSuccess(SuccessContext ctx) {
-    var res = new GenesysDiceResultBuilder();
-    res.setRollString(ctx.getText());
+    var res = newBuilder(ctx);
     res.addResult(GenesysResultType.SUCCESS);
     return res;
   }
 
   @Override
   public GenesysDiceResultBuilder visitFailure(FailureContext ctx) {
-    var res = new GenesysDiceResultBuilder();
-    res.setRollString(ctx.getText());
+    var res = newBuilder(ctx);
     res.addResult(GenesysResultType.FAILURE);
     return res;
   }
 
   @Override
   public GenesysDiceResultBuilder visitTriumph(TriumphContext ctx) {
-    var res = new GenesysDiceResultBuilder();
-    res.setRollString(ctx.getText());
+    var res = newBuilder(ctx);
     res.addResult(GenesysResultType.TRIUMPH);
     return res;
   }
 
   @Override
   public GenesysDiceResultBuilder visitDespair(DespairContext ctx) {
-    var res = new GenesysDiceResultBuilder();
-    res.setRollString(ctx.getText());
+    var res = newBuilder(ctx);
     res.addResult(GenesysResultType.DESPAIR);
     return res;
   }
 
   @Override
   public GenesysDiceResultBuilder visitAdvantage(AdvantageContext ctx) {
-    var res = new GenesysDiceResultBuilder();
-    res.setRollString(ctx.getText());
+    var res = newBuilder(ctx);
     res.addResult(GenesysResultType.ADVANTAGE);
     return res;
   }
 
   @Override
   public GenesysDiceResultBuilder visitThreat(ThreatContext ctx) {
-    var res = new GenesysDiceResultBuilder();
-    res.setRollString(ctx.getText());
+    var res = newBuilder(ctx);
     res.addResult(GenesysResultType.THREAT);
     return res;
   }
 
   @Override
   public GenesysDiceResultBuilder visitLight(LightContext ctx) {
-    var res = new GenesysDiceResultBuilder();
-    res.setRollString(ctx.getText());
+    var res = newBuilder(ctx);
     res.addResult(GenesysResultType.LIGHT);
     return res;
   }
 
   @Override
   public GenesysDiceResultBuilder visitDark(DarkContext ctx) {
-    var res = new GenesysDiceResultBuilder();
-    res.setRollString(ctx.getText());
+    var res = newBuilder(ctx);
     res.addResult(GenesysResultType.DARK);
     return res;
   }
@@ -308,14 +312,42 @@ public class GenesysDiceRollVisitor
   }
 
   /**
-   * Returns the roll string for the specified context.
+   * Creates a builder whose roll string is the text of the specified context.
+   *
+   * @param ctx the context the builder is for.
+   * @return the builder.
+   */
+  private GenesysDiceResultBuilder newBuilder(ParserRuleContext ctx) {
+    return setRollString(new GenesysDiceResultBuilder(), ctx);
+  }
+
+  /**
+   * Sets the roll string of a builder to the range of the input covered by the specified context,
+   * so the text is not copied out of the input.
    *
+   * @param builder the builder to set the roll string of.
    * @param ctx the context to get the roll string for.
-   * @return the roll string for the specified context.
+   * @return the builder.
+   */
+  private GenesysDiceResultBuilder setRollString(
+      GenesysDiceResultBuilder builder, ParserRuleContext ctx) {
+    if (input == null) {
+      var stream = ctx.start.getInputStream();
+      input = stream.getText(Interval.of(0, stream.size() - 1));
+      singleCharCodePoints = input.length() == stream.size();
+    }
+    int start = toOffset(ctx.start.getStartIndex());
+    int end = ctx.stop == null ? start : Math.max(start, toOffset(ctx.stop.getStopIndex() + 1));
+    return builder.setRollString(input, start, end);
+  }
+
+  /**
+   * Converts an index in the token stream, which counts code points, to an offset in the input.
+   *
+   * @param index the index in the token stream.
+   * @return the offset in the input.
    */
-  private String getRollString(ParserRuleContext ctx) {
-    int start = ctx.start.getStartIndex();
-    int end = ctx.stop.getStopIndex();
-    return ctx.start.getInputStream().getText(new Interval(start, end));
+  private int toOffset(int index) {
+    return singleCharCodePoints ? index : input.offsetByCodePoints(0, index);
   }
 }
@@ -14,18 +14,199 @@
  */
 package net.rptools.maptool.advanceddice.genesys;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.function.ToIntFunction;
 import net.rptools.maptool.advanceddice.DiceErrorListener;
-import net.rptools.maptool.advanceddice.parser.GenesysDiceLexer;
+import net.rptools.maptool.advanceddice.RandomSource;
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.CountType;
 import net.rptools.maptool.advanceddice.parser.GenesysDiceParser;
-import org.antlr.v4.runtime.CharStreams;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.StartGenesysContext;
+import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 
 /** Class to roll Genesys dice. */
 public class GenesysDiceRoller {
 
+  /** The plan cache shared by all rollers that are not given their own. */
+  private static final GenesysRollPlanCache DEFAULT_PLAN_CACHE = new GenesysRollPlanCache();
+
+  /** The parser cache shared by all rollers that are not given their own. */
+  private static final GenesysParserCache DEFAULT_PARSER_CACHE = new GenesysParserCache();
+
+  /** The default number of dice of a type above which they are rolled in bulk. */
+  public static final int DEFAULT_SUMMARIZE_THRESHOLD = 1000;
+
+  /** The default number of times the totals of a prepared roll are rolled before compiling them. */
+  public static final int DEFAULT_COMPILE_THRESHOLD = 1000;
+
+  /**
+   * Expressions that between them use every token and rule of the grammar, parsed by {@link
+   * #warmUp()} to fill the parser's prediction cache, and by {@link GenesysParserCache#reset()} to
+   * refill it. The last one is invalid so the error path is loaded too.
+   */
+  static final List<String> WARM_UP_CORPUS =
+      List.of(
+          "3g2y1p1r2b1k1w",
+          "proficiency ability boost setback challenge difficulty force",
+          "yellow,green,blue,black,red,purple,white",
+          "success advantage triumph failure threat despair light dark",
+          "* v ! - t $ l n 2suc 3thr",
+          "{var}y{@prop}g{?prompt}p",
+          "(a:2y(b:3g(c:p)))(2b)",
+          "#fn(1, 'a', \"b\", #g(2)) 2y",
+          "(a:2y");
+
+  /** If {@link #warmUp()} has been called. */
+  private static final AtomicBoolean WARMED_UP = new AtomicBoolean();
+
+  /** The cache of pre-parsed roll plans. */
+  private final GenesysRollPlanCache planCache;
+
+  /** The cache of the lexer and parser DFA states. */
+  private final GenesysParserCache parserCache;
+
+  /** The source of random numbers used to roll the dice. */
+  private final RandomSource randomSource;
+
+  /** The number of dice of a type above which they are rolled in bulk rather than one at a time. */
+  private final int summarizeThreshold;
+
+  /** The number of times the totals of a prepared roll are rolled before they are compiled. */
+  private final int compileThreshold;
+
+  /** The limits on how much work a roll may do. */
+  private final GenesysRollLimits limits;
+
+  /** The sink for the measurements of each roll. */
+  private final GenesysRollMetrics metrics;
+
+  /** If rolls are measured, {@code false} when the sink is {@link GenesysRollMetrics#NONE}. */
+  private final boolean instrumented;
+
+  /** Creates a roller that uses the shared default plan cache and secure random source. */
+  public GenesysDiceRoller() {
+    this(DEFAULT_PLAN_CACHE, RandomSource.secure());
+  }
+
   /**
-   * Roll the given dice string using genesys/starwars dice roll parser.
+   * Creates a roller that uses the shared default plan cache.
+   *
+   * @param randomSource the source of random numbers used to roll the dice.
+   */
+  public GenesysDiceRoller(RandomSource randomSource) {
+    this(DEFAULT_PLAN_CACHE, randomSource);
+  }
+
+  /**
+   * Creates a roller that uses the secure random source.
+   *
+   * @param planCache the cache of pre-parsed roll plans to use.
+   */
+  public GenesysDiceRoller(GenesysRollPlanCache planCache) {
+    this(planCache, RandomSource.secure());
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param planCache the cache of pre-parsed roll plans to use.
+   * @param randomSource the source of random numbers used to roll the dice.
+   */
+  public GenesysDiceRoller(GenesysRollPlanCache planCache, RandomSource randomSource) {
+    this(
+        planCache,
+        DEFAULT_PARSER_CACHE,
+        randomSource,
+        DEFAULT_SUMMARIZE_THRESHOLD,
+        DEFAULT_COMPILE_THRESHOLD,
+        GenesysRollLimits.DEFAULT,
+        GenesysRollMetrics.NONE);
+  }
+
+  /**
+   * Constructor, use {@link GenesysDiceRollerBuilder} to create rollers with other settings.
+   *
+   * @param planCache the cache of pre-parsed roll plans to use.
+   * @param parserCache the cache of the lexer and parser DFA states to use.
+   * @param randomSource the source of random numbers used to roll the dice.
+   * @param summarizeThreshold the number of dice of a type above which they are rolled in bulk.
+   * @param compileThreshold the number of times the totals of a prepared roll are rolled before
+   *     they are compiled.
+   * @param limits the limits on how much work a roll may do.
+   * @param metrics the sink for the measurements of each roll.
+   */
+  GenesysDiceRoller(
+      GenesysRollPlanCache planCache,
+      GenesysParserCache parserCache,
+      RandomSource randomSource,
+      int summarizeThreshold,
+      int compileThreshold,
+      GenesysRollLimits limits,
+      GenesysRollMetrics metrics) {
+    this.planCache = planCache;
+    this.parserCache = parserCache;
+    this.randomSource = randomSource;
+    this.summarizeThreshold = summarizeThreshold;
+    this.compileThreshold = compileThreshold;
+    this.limits = limits;
+    this.metrics = metrics;
+    this.instrumented = metrics != GenesysRollMetrics.NONE;
+  }
+
+  /**
+   * Prepares the parser so the first rolls are not slow. The lexer and parser build their state
+   * machines and prediction caches the first time they are used, and the roller classes are loaded
+   * on the first roll, which can make the first rolls after startup far slower than later ones.
+   * This parses and rolls a set of expressions covering the whole grammar so that work is done up
+   * front in the shared default parser cache, it is intended to be called once at startup, possibly
+   * on a background thread. Calls after the first do nothing.
+   */
+  public static void warmUp() {
+    if (!WARMED_UP.compareAndSet(false, true)) {
+      return;
+    }
+    var roller = new GenesysDiceRoller(new GenesysRollPlanCache(0), RandomSource.threadLocal());
+    ToIntFunction<String> resolver = name -> 1;
+    for (var expression : WARM_UP_CORPUS) {
+      GenesysFastPathParser.parse(expression);
+      var plan = compileWithAntlr(expression);
+      plan.roll(roller.createContext(resolver, resolver, resolver)).getRollString();
+      plan.rollCounts(roller.createContext(resolver, resolver, resolver));
+    }
+  }
+
+  /**
+   * Returns the plan cache shared by all rollers that are not given their own.
+   *
+   * @return the shared plan cache.
+   */
+  public static GenesysRollPlanCache getDefaultPlanCache() {
+    return DEFAULT_PLAN_CACHE;
+  }
+
+  /**
+   * Returns the parser cache shared by all rollers that are not given their own.
+   *
+   * @return the shared parser cache.
+   */
+  public static GenesysParserCache getDefaultParserCache() {
+    return DEFAULT_PARSER_CACHE;
+  }
+
+  /**
+   * Roll the given dice string using genesys/starwars dice roll parser. Each supplier is called
+   * once for each distinct name, however many times it is used in the string.
    *
    * @param rollString the string to roll.
    * @param variableSupplier the supplier to use for variable values.
@@ -38,20 +219,759 @@ public class GenesysDiceRoller {
       ToIntFunction<String> variableSupplier,
       ToIntFunction<String> propertySupplier,
       ToIntFunction<String> promptSupplier) {
+    if (instrumented) {
+      return rollRecorded(
+          rollString,
+          plan -> resolveContext(plan, variableSupplier, propertySupplier, promptSupplier));
+    }
+    var plan = getCheckedPlan(rollString);
+    return rollChecked(
+        plan, resolveContext(plan, variableSupplier, propertySupplier, promptSupplier));
+  }
+
+  /**
+   * Roll the given dice string, resolving all of its variables, properties and prompts with a
+   * single call to the resolver.
+   *
+   * @param rollString the string to roll.
+   * @param resolver the resolver to use for variable, property and prompt values.
+   * @return the result of the roll.
+   * @throws IllegalArgumentException if the resolver does not return a value that is used.
+   */
+  public GenesysDiceResult roll(String rollString, GenesysSymbolResolver resolver) {
+    if (instrumented) {
+      return rollRecorded(rollString, plan -> resolveContext(plan, resolver));
+    }
+    var plan = getCheckedPlan(rollString);
+    return rollChecked(plan, resolveContext(plan, resolver));
+  }
+
+  /**
+   * Roll the given dice string with a new seed, recording the seed and the values of the
+   * variables, properties and prompts in the result so the roll can be repeated exactly with
+   * {@link #replay}, on this or any other JVM. The seed is drawn from this roller's random source.
+   *
+   * @param rollString the string to roll.
+   * @param variableSupplier the supplier to use for variable values.
+   * @param propertySupplier the supplier to use for property values.
+   * @param promptSupplier the supplier to use for prompt values.
+   * @return the result of the roll.
+   */
+  public GenesysDiceResult rollSeeded(
+      String rollString,
+      ToIntFunction<String> variableSupplier,
+      ToIntFunction<String> propertySupplier,
+      ToIntFunction<String> promptSupplier) {
+    long seed = 0;
+    for (int i = 0; i < 4; i++) {
+      seed = seed << 16 | randomSource.nextInt(1 << 16);
+    }
+    return rollSeeded(rollString, seed, variableSupplier, propertySupplier, promptSupplier);
+  }
+
+  /**
+   * Roll the given dice string with the specified seed, recording the seed and the values of the
+   * variables, properties and prompts in the result so the roll can be repeated exactly with
+   * {@link #replay}, on this or any other JVM.
+   *
+   * @param rollString the string to roll.
+   * @param seed the seed of the random numbers to roll the dice with.
+   * @param variableSupplier the supplier to use for variable values.
+   * @param propertySupplier the supplier to use for property values.
+   * @param promptSupplier the supplier to use for prompt values.
+   * @return the result of the roll.
+   */
+  public GenesysDiceResult rollSeeded(
+      String rollString,
+      long seed,
+      ToIntFunction<String> variableSupplier,
+      ToIntFunction<String> propertySupplier,
+      ToIntFunction<String> promptSupplier) {
+    var plan = getCheckedPlan(rollString);
+    var values = new HashMap<String, Integer>();
+    resolveInto(values, plan, CountType.VARIABLE, variableSupplier);
+    resolveInto(values, plan, CountType.PROPERTY, propertySupplier);
+    resolveInto(values, plan, CountType.PROMPT, promptSupplier);
+    return roll(plan, new GenesysDiceResult.Seed(seed, summarizeThreshold, values), limits);
+  }
+
+  /**
+   * Rolls the given dice string again exactly as it was rolled for a result, using the seed and
+   * values recorded in {@link GenesysDiceResult#getSeed()}. No suppliers are called, so prompts are
+   * not asked again. The dice string must be the one the result was rolled from.
+   *
+   * <p>This roller's limits are not applied, as the roll was checked against the limits of the
+   * roller that made it, and the seed records if those limits made it keep only counts. So a roll
+   * replays the same way whatever the limits of the roller that replays it, though rolls of more
+   * than {@link GenesysRollLimits#MAX_COUNTED_DICE} are still rejected.
+   *
+   * @param rollString the string that was rolled.
+   * @param seed the seed recorded in the result.
+   * @return the same result.
+   * @throws IllegalArgumentException if the seed does not hold a value that is used.
+   */
+  public GenesysDiceResult replay(String rollString, GenesysDiceResult.Seed seed) {
+    return roll(getPlan(rollString), seed, GenesysRollLimits.NONE);
+  }
+
+  /**
+   * Prepares the given dice string to be rolled many times with different values for its
+   * variables, properties and prompts, see {@link GenesysPreparedRoll}. The prepared roll uses this
+   * roller's random source and settings.
+   *
+   * @param rollString the string to prepare.
+   * @return the prepared roll.
+   */
+  public GenesysPreparedRoll prepare(String rollString) {
+    return new GenesysPreparedRoll(
+        getCheckedPlan(rollString), randomSource, summarizeThreshold, compileThreshold, limits);
+  }
+
+  /**
+   * Returns the canonical pool of the given dice string, the dice it rolls and results it adds
+   * whatever order and form they are written in, see {@link GenesysDicePool}. Nothing is rolled.
+   * The pool of a string with only literal counts is computed when it is parsed, so this is a plan
+   * cache lookup. Otherwise each supplier is called once for each distinct name in the string.
+   *
+   * @param rollString the string to get the pool of.
+   * @param variableSupplier the supplier to use for variable values.
+   * @param propertySupplier the supplier to use for property values.
+   * @param promptSupplier the supplier to use for prompt values.
+   * @return the pool.
+   * @throws IllegalArgumentException if the string can not be parsed, is over this roller's
+   *     limits or has more than {@link Integer#MAX_VALUE} dice and results.
+   */
+  public GenesysDicePool getPool(
+      String rollString,
+      ToIntFunction<String> variableSupplier,
+      ToIntFunction<String> propertySupplier,
+      ToIntFunction<String> promptSupplier) {
+    var plan = getCheckedPlan(rollString);
+    if (plan.hasErrors()) {
+      throw new IllegalArgumentException("Invalid roll: " + rollString + " " + plan.getErrors());
+    }
+    var pool = plan.getPool();
+    if (pool == null) {
+      pool =
+          GenesysDicePool.of(
+              plan.getRoot(),
+              resolveContext(plan, variableSupplier, propertySupplier, promptSupplier));
+    }
+    if (pool == null) {
+      throw new IllegalArgumentException("Too many dice for a pool: " + rollString);
+    }
+    return pool;
+  }
+
+  /**
+   * Roll the given dice string, resolving its variables, properties and prompts asynchronously.
+   * Every distinct name in the string is passed to its resolver once, up front, so all the values
+   * are waited for at the same time rather than one after another, and the dice are rolled once the
+   * last of them is available. No thread is blocked while waiting, the roll runs on the thread that
+   * completes the last value, or the calling thread if they are all already complete.
+   *
+   * @param rollString the string to roll.
+   * @param variableResolver the resolver to use for variable values.
+   * @param propertyResolver the resolver to use for property values.
+   * @param promptResolver the resolver to use for prompt values.
+   * @return the result of the roll, completed exceptionally if any resolver fails or gives no
+   *     value.
+   */
+  public CompletableFuture<GenesysDiceResult> rollAsync(
+      String rollString,
+      Function<String, CompletableFuture<Integer>> variableResolver,
+      Function<String, CompletableFuture<Integer>> propertyResolver,
+      Function<String, CompletableFuture<Integer>> promptResolver) {
+    var plan = getCheckedPlan(rollString);
+    if (plan.hasErrors()) {
+      return CompletableFuture.completedFuture(plan.roll(createContext(null, null, null)));
+    }
+    var variables = resolveAll(plan, CountType.VARIABLE, variableResolver);
+    var properties = resolveAll(plan, CountType.PROPERTY, propertyResolver);
+    var prompts = resolveAll(plan, CountType.PROMPT, promptResolver);
+    return CompletableFuture.allOf(variables, properties, prompts)
+        .thenApply(
+            ignored ->
+                rollChecked(
+                    plan,
+                    createContext(
+                        resolved(variables.join()),
+                        resolved(properties.join()),
+                        resolved(prompts.join()))));
+  }
+
+  /**
+   * Roll the given dice string, calling blocking resolvers for its variables, properties and
+   * prompts concurrently on an executor. This is {@link #rollAsync(String, Function, Function,
+   * Function)} for resolvers that block, such as a prompt that waits for a player. An executor that
+   * starts a virtual thread per task is a good fit where it is available.
+   *
+   * @param rollString the string to roll.
+   * @param variableSupplier the supplier to use for variable values.
+   * @param propertySupplier the supplier to use for property values.
+   * @param promptSupplier the supplier to use for prompt values.
+   * @param executor the executor the suppliers are called on.
+   * @return the result of the roll, completed exceptionally if any supplier fails.
+   */
+  public CompletableFuture<GenesysDiceResult> rollAsync(
+      String rollString,
+      ToIntFunction<String> variableSupplier,
+      ToIntFunction<String> propertySupplier,
+      ToIntFunction<String> promptSupplier,
+      Executor executor) {
+    return rollAsync(
+        rollString,
+        onExecutor(variableSupplier, executor),
+        onExecutor(propertySupplier, executor),
+        onExecutor(promptSupplier, executor));
+  }
+
+  /**
+   * Roll the given dice string keeping only the totals of the results. This is cheaper than {@link
+   * #roll} as no record of the individual dice or capture groups is kept.
+   *
+   * @param rollString the string to roll.
+   * @param variableSupplier the supplier to use for variable values.
+   * @param propertySupplier the supplier to use for property values.
+   * @param promptSupplier the supplier to use for prompt values.
+   * @return the totals of the roll.
+   */
+  public GenesysDiceCounts rollCounts(
+      String rollString,
+      ToIntFunction<String> variableSupplier,
+      ToIntFunction<String> propertySupplier,
+      ToIntFunction<String> promptSupplier) {
+    if (instrumented) {
+      return rollCountsRecorded(
+          rollString,
+          plan -> resolveContext(plan, variableSupplier, propertySupplier, promptSupplier));
+    }
+    var plan = getCheckedPlan(rollString);
+    return rollCountsChecked(
+        plan, resolveContext(plan, variableSupplier, propertySupplier, promptSupplier));
+  }
+
+  /**
+   * Roll the given dice string keeping only the totals of the results, resolving all of its
+   * variables, properties and prompts with a single call to the resolver.
+   *
+   * @param rollString the string to roll.
+   * @param resolver the resolver to use for variable, property and prompt values.
+   * @return the totals of the roll.
+   * @throws IllegalArgumentException if the resolver does not return a value that is used.
+   */
+  public GenesysDiceCounts rollCounts(String rollString, GenesysSymbolResolver resolver) {
+    if (instrumented) {
+      return rollCountsRecorded(rollString, plan -> resolveContext(plan, resolver));
+    }
+    var plan = getCheckedPlan(rollString);
+    return rollCountsChecked(plan, resolveContext(plan, resolver));
+  }
+
+  /**
+   * Roll the given dice string a number of times keeping only the totals of each roll. The string
+   * is parsed once, and each variable, property and prompt is resolved once and used for every
+   * roll. The whole batch counts against this roller's dice limit, see {@link
+   * GenesysRollLimits#getMaxDice()}, and is rejected with an error before anything is rolled if it
+   * is over it.
+   *
+   * @param rollString the string to roll.
+   * @param trialCount the number of times to roll.
+   * @param variableSupplier the supplier to use for variable values.
+   * @param propertySupplier the supplier to use for property values.
+   * @param promptSupplier the supplier to use for prompt values.
+   * @return the totals of each roll.
+   */
+  public GenesysDiceBatchResult rollBatch(
+      String rollString,
+      int trialCount,
+      ToIntFunction<String> variableSupplier,
+      ToIntFunction<String> propertySupplier,
+      ToIntFunction<String> promptSupplier) {
+    var context =
+        createContext(
+            GenesysRollPlan.memoize(variableSupplier),
+            GenesysRollPlan.memoize(propertySupplier),
+            GenesysRollPlan.memoize(promptSupplier));
+    var checked = limits.checkBatch(getCheckedPlan(rollString), context, trialCount);
+    return checked.plan().rollBatch(trialCount, checked.context());
+  }
+
+  /**
+   * Returns the number of dice of a type above which they are rolled in bulk. Dice rolled in bulk
+   * are reported as {@link GenesysDiceResult#getSummarizedResults()} rather than individual rolls.
+   *
+   * @return the number of dice above which they are rolled in bulk.
+   */
+  public int getSummarizeThreshold() {
+    return summarizeThreshold;
+  }
+
+  /**
+   * Returns the limits on how much work a roll may do.
+   *
+   * @return the limits.
+   */
+  public GenesysRollLimits getLimits() {
+    return limits;
+  }
+
+  /**
+   * Returns a roller with the same caches, random source and settings as this one but different
+   * limits, so callers that are trusted to a different degree can share the caches.
+   *
+   * @param limits the limits on how much work a roll may do.
+   * @return the roller.
+   */
+  public GenesysDiceRoller withLimits(GenesysRollLimits limits) {
+    return new GenesysDiceRoller(
+        planCache,
+        parserCache,
+        randomSource,
+        summarizeThreshold,
+        compileThreshold,
+        limits,
+        metrics);
+  }
+
+  /**
+   * Returns the cache of the lexer and parser DFA states used by this roller.
+   *
+   * @return the parser cache.
+   */
+  public GenesysParserCache getParserCache() {
+    return parserCache;
+  }
+
+  /**
+   * Creates the context used to evaluate a plan with this roller's settings.
+   *
+   * @param variableSupplier the supplier to use for variable values.
+   * @param propertySupplier the supplier to use for property values.
+   * @param promptSupplier the supplier to use for prompt values.
+   * @return the context.
+   */
+  GenesysRollPlan.RollContext createContext(
+      ToIntFunction<String> variableSupplier,
+      ToIntFunction<String> propertySupplier,
+      ToIntFunction<String> promptSupplier) {
+    return new GenesysRollPlan.RollContext(
+        variableSupplier, propertySupplier, promptSupplier, randomSource, summarizeThreshold);
+  }
+
+  /**
+   * Rolls a dice string, measuring each phase of the roll and passing the measurements to the sink.
+   *
+   * @param rollString the string to roll.
+   * @param resolve creates the context to roll the plan with, resolving the values it uses.
+   * @return the result of the roll.
+   */
+  private GenesysDiceResult rollRecorded(
+      String rollString, Function<GenesysRollPlan, GenesysRollPlan.RollContext> resolve) {
+    var recorder = new GenesysRollRecorder();
+    var plan = getPlan(rollString, recorder);
+    var checked = limits.checkDice(plan, resolve(plan, resolve, recorder));
+    plan = checked.plan();
+    var result = plan.roll(checked.context(), recorder);
+    metrics.record(recorder.finish(rollString, plan, checked.dice()));
+    return result;
+  }
+
+  /**
+   * Rolls a dice string keeping only the totals, measuring each phase of the roll and passing the
+   * measurements to the sink.
+   *
+   * @param rollString the string to roll.
+   * @param resolve creates the context to roll the plan with, resolving the values it uses.
+   * @return the totals of the roll.
+   */
+  private GenesysDiceCounts rollCountsRecorded(
+      String rollString, Function<GenesysRollPlan, GenesysRollPlan.RollContext> resolve) {
+    var recorder = new GenesysRollRecorder();
+    var plan = getPlan(rollString, recorder);
+    var checked = limits.checkDice(plan, resolve(plan, resolve, recorder));
+    plan = checked.plan();
+    var counts = plan.rollCounts(checked.context(), recorder);
+    metrics.record(recorder.finish(rollString, plan, checked.dice()));
+    return counts;
+  }
+
+  /**
+   * Rolls a plan once the limits on its dice have been checked.
+   *
+   * @param plan the plan to roll, already checked with {@link #getCheckedPlan}.
+   * @param context the context holding the resolved values.
+   * @return the result of the roll.
+   */
+  private GenesysDiceResult rollChecked(
+      GenesysRollPlan plan, GenesysRollPlan.RollContext context) {
+    var checked = limits.checkDice(plan, context);
+    return checked.plan().roll(checked.context());
+  }
+
+  /**
+   * Rolls a plan keeping only the totals once the limits on its dice have been checked.
+   *
+   * @param plan the plan to roll, already checked with {@link #getCheckedPlan}.
+   * @param context the context holding the resolved values.
+   * @return the totals of the roll.
+   */
+  private GenesysDiceCounts rollCountsChecked(
+      GenesysRollPlan plan, GenesysRollPlan.RollContext context) {
+    var checked = limits.checkDice(plan, context);
+    return checked.plan().rollCounts(checked.context());
+  }
+
+  /**
+   * Returns the plan for the given dice string checked against this roller's limits. Parentheses
+   * nested too deeply are found before the string is parsed, so they are never parsed.
+   *
+   * @param rollString the string to get the plan for.
+   * @return the plan for the string, an error plan if it is over a limit.
+   */
+  private GenesysRollPlan getCheckedPlan(String rollString) {
+    var nested = limits.checkNesting(rollString);
+    return nested != null ? nested : limits.checkPlan(getPlan(rollString));
+  }
+
+  /**
+   * Returns the plan for the given dice string checked against this roller's limits, measuring the
+   * time taken to get it.
+   *
+   * @param rollString the string to get the plan for.
+   * @param recorder the recorder the measurements are added to.
+   * @return the plan for the string, an error plan if it is over a limit.
+   */
+  private GenesysRollPlan getPlan(String rollString, GenesysRollRecorder recorder) {
+    long start = System.nanoTime();
+    var nested = limits.checkNesting(rollString);
+    if (nested != null) {
+      recorder.parseNanos = System.nanoTime() - start;
+      return nested;
+    }
+    var plan =
+        planCache.get(
+            rollString,
+            key -> {
+              recorder.cached = false;
+              return compile(key, recorder);
+            });
+    recorder.parseNanos = System.nanoTime() - start;
+    return limits.checkPlan(plan);
+  }
+
+  /**
+   * Creates the context to roll a plan with, measuring the time taken to resolve its values.
+   *
+   * @param plan the plan to roll.
+   * @param resolve creates the context, resolving the values the plan uses.
+   * @param recorder the recorder the measurements are added to.
+   * @return the context.
+   */
+  private static GenesysRollPlan.RollContext resolve(
+      GenesysRollPlan plan,
+      Function<GenesysRollPlan, GenesysRollPlan.RollContext> resolve,
+      GenesysRollRecorder recorder) {
+    long start = System.nanoTime();
+    var context = resolve.apply(plan);
+    recorder.resolveNanos = System.nanoTime() - start;
+    return context;
+  }
+
+  /**
+   * Creates the context used to roll a plan, calling each supplier once for each distinct name
+   * used by the plan.
+   *
+   * @param plan the plan to roll.
+   * @param variableSupplier the supplier to use for variable values.
+   * @param propertySupplier the supplier to use for property values.
+   * @param promptSupplier the supplier to use for prompt values.
+   * @return the context.
+   */
+  private GenesysRollPlan.RollContext resolveContext(
+      GenesysRollPlan plan,
+      ToIntFunction<String> variableSupplier,
+      ToIntFunction<String> propertySupplier,
+      ToIntFunction<String> promptSupplier) {
+    return createContext(
+        resolveOnce(plan.getNames(CountType.VARIABLE), variableSupplier),
+        resolveOnce(plan.getNames(CountType.PROPERTY), propertySupplier),
+        resolveOnce(plan.getNames(CountType.PROMPT), promptSupplier));
+  }
+
+  /**
+   * Creates the context used to roll a plan, calling the resolver once for all the names used by
+   * the plan.
+   *
+   * @param plan the plan to roll.
+   * @param resolver the resolver to use for variable, property and prompt values.
+   * @return the context.
+   */
+  private GenesysRollPlan.RollContext resolveContext(
+      GenesysRollPlan plan, GenesysSymbolResolver resolver) {
+    var variables = plan.getNames(CountType.VARIABLE);
+    var properties = plan.getNames(CountType.PROPERTY);
+    var prompts = plan.getNames(CountType.PROMPT);
+    if (variables.isEmpty() && properties.isEmpty() && prompts.isEmpty()) {
+      return createContext(null, null, null);
+    }
+    var values = resolver.resolve(variables, properties, prompts);
+    return createContext(
+        lookup(values, CountType.VARIABLE),
+        lookup(values, CountType.PROPERTY),
+        lookup(values, CountType.PROMPT));
+  }
+
+  /**
+   * Rolls a plan with a seed and the values recorded with it. If the limits make the roll keep
+   * only counts, the seed recorded in the result has a summarize threshold of {@code 0} so it
+   * replays the same way anywhere.
+   *
+   * @param plan the plan to roll, already checked against the limits if it is a new roll.
+   * @param seed the seed and values.
+   * @param limits the limits to check the dice of the roll against.
+   * @return the result of the roll.
+   */
+  private static GenesysDiceResult roll(
+      GenesysRollPlan plan, GenesysDiceResult.Seed seed, GenesysRollLimits limits) {
+    var values = seed.values();
+    var context =
+        new GenesysRollPlan.RollContext(
+            lookup(values, CountType.VARIABLE),
+            lookup(values, CountType.PROPERTY),
+            lookup(values, CountType.PROMPT),
+            RandomSource.seeded(seed.seed()),
+            seed.summarizeThreshold());
+    var checked = limits.checkDice(plan, context);
+    context = checked.context();
+    if (context.summarizeThreshold() != seed.summarizeThreshold()) {
+      seed = new GenesysDiceResult.Seed(seed.seed(), context.summarizeThreshold(), values);
+    }
+    return checked.plan().rollWithSeed(context, seed);
+  }
+
+  /**
+   * Calls a supplier for each of the names of a type used by a plan, adding the values keyed as
+   * described in {@link GenesysSymbolResolver#resolve}.
+   *
+   * @param values the values to add to.
+   * @param plan the plan.
+   * @param type the type of count.
+   * @param supplier the supplier to call.
+   */
+  private static void resolveInto(
+      Map<String, Integer> values,
+      GenesysRollPlan plan,
+      CountType type,
+      ToIntFunction<String> supplier) {
+    for (var name : plan.getNames(type)) {
+      values.put(GenesysSymbolResolver.key(type, name), supplier.applyAsInt(name));
+    }
+  }
+
+  /**
+   * Calls a supplier for each of the names and returns a resolver that looks up the values.
+   *
+   * @param names the names to resolve.
+   * @param supplier the supplier to call.
+   * @return the resolver, the supplier itself if there are no names.
+   */
+  private static ToIntFunction<String> resolveOnce(
+      Set<String> names, ToIntFunction<String> supplier) {
+    if (names.isEmpty()) {
+      return supplier;
+    }
+    var values = new HashMap<String, Integer>();
+    for (var name : names) {
+      values.put(name, supplier.applyAsInt(name));
+    }
+    return resolved(values);
+  }
+
+  /**
+   * Returns a resolver that looks up the values of one type of count returned by a {@link
+   * GenesysSymbolResolver}.
+   *
+   * @param values the values returned by the resolver.
+   * @param type the type of count.
+   * @return the resolver.
+   */
+  private static ToIntFunction<String> lookup(Map<String, Integer> values, CountType type) {
+    return name -> {
+      var value = values.get(GenesysSymbolResolver.key(type, name));
+      if (value == null) {
+        throw new IllegalArgumentException(
+            "No value resolved for {" + GenesysSymbolResolver.key(type, name) + "}");
+      }
+      return value;
+    };
+  }
+
+  /**
+   * Starts resolving each of the names of a type used by a plan and returns a future of all their
+   * values. A resolver that throws, returns a {@code null} future or completes a future with {@code
+   * null} fails the returned future, naming the value that was not resolved.
+   *
+   * @param plan the plan.
+   * @param type the type of count.
+   * @param resolver the resolver to use.
+   * @return the values of the names.
+   */
+  private static CompletableFuture<Map<String, Integer>> resolveAll(
+      GenesysRollPlan plan, CountType type, Function<String, CompletableFuture<Integer>> resolver) {
+    var names = plan.getNames(type);
+    if (names.isEmpty()) {
+      return CompletableFuture.completedFuture(Map.of());
+    }
+    var futures = new HashMap<String, CompletableFuture<Integer>>();
+    for (var name : names) {
+      try {
+        futures.put(
+            name,
+            Objects.requireNonNull(
+                resolver.apply(name),
+                () -> "No future returned for {" + GenesysSymbolResolver.key(type, name) + "}"));
+      } catch (RuntimeException e) {
+        return CompletableFuture.failedFuture(e);
+      }
+    }
+    return CompletableFuture.allOf(futures.values().toArray(CompletableFuture<?>[]::new))
+        .thenApply(
+            ignored -> {
+              var values = new HashMap<String, Integer>();
+              futures.forEach(
+                  (name, future) -> {
+                    var value = future.join();
+                    if (value == null) {
+                      throw new IllegalArgumentException(
+                          "No value resolved for {" + GenesysSymbolResolver.key(type, name) + "}");
+                    }
+                    values.put(name, value);
+                  });
+              return values;
+            });
+  }
+
+  /**
+   * Returns a resolver that looks up already resolved values.
+   *
+   * @param values the resolved values.
+   * @return the resolver.
+   */
+  private static ToIntFunction<String> resolved(Map<String, Integer> values) {
+    return values::get;
+  }
+
+  /**
+   * Returns an asynchronous resolver that calls a blocking supplier on an executor.
+   *
+   * @param supplier the supplier to call.
+   * @param executor the executor to call it on.
+   * @return the asynchronous resolver.
+   */
+  private static Function<String, CompletableFuture<Integer>> onExecutor(
+      ToIntFunction<String> supplier, Executor executor) {
+    return name -> CompletableFuture.supplyAsync(() -> supplier.applyAsInt(name), executor);
+  }
+
+  /**
+   * Returns the plan for the given dice string, parsing it only if it is not already cached.
+   *
+   * @param rollString the string to get the plan for.
+   * @return the plan for the string.
+   */
+  public GenesysRollPlan getPlan(String rollString) {
+    return planCache.get(rollString, this::compile);
+  }
+
+  /**
+   * Parses the given dice string into a plan. Flat dice pools are recognized directly, anything
+   * else is parsed by the ANTLR parser.
+   *
+   * @param rollString the string to parse.
+   * @return the plan for the string.
+   */
+  GenesysRollPlan compile(String rollString) {
+    return compile(rollString, new GenesysRollRecorder());
+  }
+
+  /**
+   * Parses the given dice string into a plan, recording whether it was recognized without the
+   * ANTLR parser.
+   *
+   * @param rollString the string to parse.
+   * @param recorder the recorder to record the parser used in.
+   * @return the plan for the string.
+   */
+  private GenesysRollPlan compile(String rollString, GenesysRollRecorder recorder) {
+    var plan = GenesysFastPathParser.parse(rollString);
+    recorder.fastPath = plan != null;
+    return plan != null ? plan : compileWithAntlr(rollString, parserCache);
+  }
+
+  /**
+   * Parses the given dice string into a plan using the ANTLR parser and the shared default parser
+   * cache.
+   *
+   * @param rollString the string to parse.
+   * @return the plan for the string.
+   */
+  static GenesysRollPlan compileWithAntlr(String rollString) {
+    return compileWithAntlr(rollString, DEFAULT_PARSER_CACHE);
+  }
+
+  /**
+   * Parses the given dice string into a plan using the ANTLR parser.
+   *
+   * @param rollString the string to parse.
+   * @param parserCache the cache of the lexer and parser DFA states to use.
+   * @return the plan for the string.
+   */
+  static GenesysRollPlan compileWithAntlr(String rollString, GenesysParserCache parserCache) {
     var errorListener = new DiceErrorListener();
-    var lexer = new GenesysDiceLexer(CharStreams.fromString(rollString));
-    lexer.removeErrorListeners();
-    lexer.addErrorListener(errorListener);
-    var tokens = new CommonTokenStream(lexer);
-    var parser = new GenesysDiceParser(tokens);
-    parser.removeErrorListeners();
-    parser.addErrorListener(errorListener);
-    var tree = parser.startGenesys();
+    var tree = parserCache.parse(rollString, errorListener);
     if (!errorListener.getErrors().isEmpty()) {
-      return GenesysDiceResult.error(rollString, errorListener.getErrors());
+      return GenesysRollPlan.error(rollString, errorListener.getErrors());
+    }
+    var root = (GenesysRollPlan.Sequence) new GenesysRollPlanVisitor(rollString).visit(tree);
+    return GenesysRollPlan.of(rollString, root);
+  }
+
+  /**
+   * Parses the tokens of a dice string. The parser first runs with SLL prediction and gives up at
+   * the first syntax error, which is enough for any valid input as every decision in the grammar
+   * needs only one token. Only if that fails are the tokens parsed again with full LL prediction
+   * and error recovery, so the errors reported are the same as a single LL parse. The parser uses
+   * the static DFA states of the generated parser.
+   *
+   * @param tokens the tokens to parse.
+   * @param errorListener the listener the syntax errors are reported to.
+   * @return the syntax tree.
+   */
+  static StartGenesysContext parse(CommonTokenStream tokens, DiceErrorListener errorListener) {
+    return parse(new GenesysDiceParser(tokens), errorListener);
+  }
+
+  /**
+   * Parses the tokens of a dice string with the given parser, SLL first then LL as described in
+   * {@link #parse(CommonTokenStream, DiceErrorListener)}.
+   *
+   * @param parser the parser, with its token stream and interpreter already set.
+   * @param errorListener the listener the syntax errors are reported to.
+   * @return the syntax tree.
+   */
+  static StartGenesysContext parse(GenesysDiceParser parser, DiceErrorListener errorListener) {
+    parser.removeErrorListeners();
+    parser.setErrorHandler(new BailErrorStrategy());
+    parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+    try {
+      return parser.startGenesys();
+    } catch (ParseCancellationException e) {
+      parser.reset();
+      parser.addErrorListener(errorListener);
+      parser.setErrorHandler(new DefaultErrorStrategy());
+      parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+      return parser.startGenesys();
     }
-    var visitor = new GenesysDiceRollVisitor(variableSupplier, propertySupplier, promptSupplier);
-    var result = visitor.visit(tree);
-    return result.build();
   }
 }
@@ -0,0 +1,146 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import net.rptools.maptool.advanceddice.RandomSource;
+
+/** Builder class for creating {@link GenesysDiceRoller} objects. */
+public class GenesysDiceRollerBuilder {
+
+  /** The cache of pre-parsed roll plans. */
+  private GenesysRollPlanCache planCache = GenesysDiceRoller.getDefaultPlanCache();
+  /** The cache of the lexer and parser DFA states. */
+  private GenesysParserCache parserCache = GenesysDiceRoller.getDefaultParserCache();
+  /** The source of random numbers used to roll the dice. */
+  private RandomSource randomSource = RandomSource.secure();
+  /** The number of dice of a type above which they are rolled in bulk. */
+  private int summarizeThreshold = GenesysDiceRoller.DEFAULT_SUMMARIZE_THRESHOLD;
+  /** The number of times the totals of a prepared roll are rolled before they are compiled. */
+  private int compileThreshold = GenesysDiceRoller.DEFAULT_COMPILE_THRESHOLD;
+  /** The limits on how much work a roll may do. */
+  private GenesysRollLimits limits = GenesysRollLimits.DEFAULT;
+  /** The sink for the measurements of each roll. */
+  private GenesysRollMetrics metrics = GenesysRollMetrics.NONE;
+
+  /**
+   * Sets the cache of pre-parsed roll plans, defaults to the shared plan cache.
+   *
+   * @param planCache the cache of pre-parsed roll plans.
+   * @return this builder.
+   */
+  public GenesysDiceRollerBuilder setPlanCache(GenesysRollPlanCache planCache) {
+    this.planCache = planCache;
+    return this;
+  }
+
+  /**
+   * Sets the cache of the lexer and parser DFA states, defaults to the shared parser cache. Rollers
+   * fed untrusted input can be given their own so it can be bounded and reset separately.
+   *
+   * @param parserCache the cache of the lexer and parser DFA states.
+   * @return this builder.
+   */
+  public GenesysDiceRollerBuilder setParserCache(GenesysParserCache parserCache) {
+    this.parserCache = parserCache;
+    return this;
+  }
+
+  /**
+   * Sets the source of random numbers, defaults to {@link RandomSource#secure()}.
+   *
+   * @param randomSource the source of random numbers used to roll the dice.
+   * @return this builder.
+   */
+  public GenesysDiceRollerBuilder setRandomSource(RandomSource randomSource) {
+    this.randomSource = randomSource;
+    return this;
+  }
+
+  /**
+   * Sets the number of dice of a type above which they are rolled in bulk rather than one at a
+   * time, defaults to {@link GenesysDiceRoller#DEFAULT_SUMMARIZE_THRESHOLD}. Use {@link
+   * Integer#MAX_VALUE} to always roll dice one at a time.
+   *
+   * @param summarizeThreshold the number of dice above which they are rolled in bulk.
+   * @return this builder.
+   * @throws IllegalArgumentException if the threshold is negative.
+   */
+  public GenesysDiceRollerBuilder setSummarizeThreshold(int summarizeThreshold) {
+    if (summarizeThreshold < 0) {
+      throw new IllegalArgumentException(
+          "Summarize threshold can not be negative: " + summarizeThreshold);
+    }
+    this.summarizeThreshold = summarizeThreshold;
+    return this;
+  }
+
+  /**
+   * Sets the number of times the totals of a {@link GenesysPreparedRoll} are rolled before they are
+   * compiled into method handles, defaults to {@link
+   * GenesysDiceRoller#DEFAULT_COMPILE_THRESHOLD}. Use {@code 0} to compile them when the roll is
+   * prepared, or {@link Integer#MAX_VALUE} to never compile them.
+   *
+   * @param compileThreshold the number of times the totals are rolled before they are compiled.
+   * @return this builder.
+   * @throws IllegalArgumentException if the threshold is negative.
+   */
+  public GenesysDiceRollerBuilder setCompileThreshold(int compileThreshold) {
+    if (compileThreshold < 0) {
+      throw new IllegalArgumentException(
+          "Compile threshold can not be negative: " + compileThreshold);
+    }
+    this.compileThreshold = compileThreshold;
+    return this;
+  }
+
+  /**
+   * Sets the limits on how much work a roll may do, defaults to {@link GenesysRollLimits#DEFAULT}.
+   *
+   * @param limits the limits on how much work a roll may do.
+   * @return this builder.
+   */
+  public GenesysDiceRollerBuilder setLimits(GenesysRollLimits limits) {
+    this.limits = limits;
+    return this;
+  }
+
+  /**
+   * Sets the sink for the measurements of each roll, defaults to {@link GenesysRollMetrics#NONE}
+   * which measures nothing. Only {@code roll} and {@code rollCounts} are measured.
+   *
+   * @param metrics the sink for the measurements of each roll.
+   * @return this builder.
+   */
+  public GenesysDiceRollerBuilder setMetrics(GenesysRollMetrics metrics) {
+    this.metrics = metrics;
+    return this;
+  }
+
+  /**
+   * Builds a {@link GenesysDiceRoller} from this builder.
+   *
+   * @return the roller.
+   */
+  public GenesysDiceRoller build() {
+    return new GenesysDiceRoller(
+        planCache,
+        parserCache,
+        randomSource,
+        summarizeThreshold,
+        compileThreshold,
+        limits,
+        metrics);
+  }
+}
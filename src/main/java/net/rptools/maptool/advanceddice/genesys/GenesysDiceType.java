@@ -16,6 +16,7 @@ package net.rptools.maptool.advanceddice.genesys;
 
 import java.util.List;
 import net.rptools.maptool.advanceddice.DiceRoller;
+import net.rptools.maptool.advanceddice.RandomSource;
 
 /** Enumeration of the possible dice types. */
 public enum GenesysDiceType {
@@ -147,7 +148,30 @@ public enum GenesysDiceType {
    * @return the result of the roll.
    */
   public GenesysResultType roll() {
-    return getSide(new DiceRoller().rollDice(sides.size()) - 1);
+    return roll(RandomSource.secure());
+  }
+
+  /**
+   * Roll the die using the specified random source.
+   *
+   * @param randomSource the source of random numbers.
+   * @return the result of the roll.
+   */
+  public GenesysResultType roll(RandomSource randomSource) {
+    return getSide(randomSource.nextInt(sides.size()));
+  }
+
+  /**
+   * Rolls a number of these dice at once using the specified random source, returning only how
+   * many landed on each side. The cost depends on the number of sides rather than the number of
+   * dice.
+   *
+   * @param count the number of dice to roll.
+   * @param randomSource the source of random numbers.
+   * @return the number of dice that landed on each side, indexed as for {@link #getSide(int)}.
+   */
+  public int[] rollSides(int count, RandomSource randomSource) {
+    return new DiceRoller(randomSource).rollDiceCounts(count, sides.size());
   }
 
   /**
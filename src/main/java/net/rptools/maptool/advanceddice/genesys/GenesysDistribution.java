@@ -0,0 +1,209 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+/**
+ * The exact probability distribution of the outcome of a Genesys dice roll. Each outcome is the
+ * net success (successes minus failures), net advantage (advantages minus threats), triumphs,
+ * despairs, light and dark side points. Distributions are immutable and safe to share between
+ * threads.
+ */
+public class GenesysDistribution {
+
+  /** Predicate used to select outcomes of a roll. */
+  @FunctionalInterface
+  public interface OutcomePredicate {
+
+    /**
+     * Returns if the outcome should be selected.
+     *
+     * @param netSuccess the successes minus the failures.
+     * @param netAdvantage the advantages minus the threats.
+     * @param triumph the number of triumphs.
+     * @param despair the number of despairs.
+     * @param light the number of light side points.
+     * @param dark the number of dark side points.
+     * @return {@code true} if the outcome should be selected.
+     */
+    boolean test(
+        int netSuccess, int netAdvantage, int triumph, int despair, int light, int dark);
+  }
+
+  /*
+   * Outcomes are packed into a long so that rolling another die is just adding the packed value
+   * of its face. From the most significant bits: net success (12 bits), net advantage (12 bits),
+   * triumph, despair, light and dark (10 bits each). The net values are stored with an offset so
+   * they are never negative.
+   */
+
+  /** The bit position of the net success. */
+  private static final int NET_SUCCESS_SHIFT = 52;
+  /** The bit position of the net advantage. */
+  private static final int NET_ADVANTAGE_SHIFT = 40;
+  /** The bit position of the triumphs. */
+  private static final int TRIUMPH_SHIFT = 30;
+  /** The bit position of the despairs. */
+  private static final int DESPAIR_SHIFT = 20;
+  /** The bit position of the light side points. */
+  private static final int LIGHT_SHIFT = 10;
+  /** The bit position of the dark side points. */
+  private static final int DARK_SHIFT = 0;
+  /** The mask for the 12 bit net values. */
+  private static final int NET_MASK = 0xfff;
+  /** The mask for the 10 bit values. */
+  private static final int COUNT_MASK = 0x3ff;
+  /** The offset added to the net values. */
+  private static final int NET_OFFSET = 2048;
+
+  /** The packed outcome of rolling no dice at all. */
+  static final long EMPTY =
+      ((long) NET_OFFSET << NET_SUCCESS_SHIFT) | ((long) NET_OFFSET << NET_ADVANTAGE_SHIFT);
+
+  /** The packed outcomes. */
+  private final long[] outcomes;
+  /** The probability of each outcome. */
+  private final double[] probabilities;
+  /** The fixed results added to every outcome. */
+  private final GenesysDiceCounts fixedResults;
+
+  /**
+   * Constructor.
+   *
+   * @param outcomes the packed outcomes.
+   * @param probabilities the probability of each outcome.
+   * @param fixedResults the fixed results added to every outcome.
+   */
+  GenesysDistribution(long[] outcomes, double[] probabilities, GenesysDiceCounts fixedResults) {
+    this.outcomes = outcomes;
+    this.probabilities = probabilities;
+    this.fixedResults = fixedResults;
+  }
+
+  /**
+   * Returns the packed value of a single result, which can be added to a packed outcome.
+   *
+   * @param result the result.
+   * @return the packed value of the result.
+   */
+  static long pack(GenesysResultType result) {
+    return ((long) (result.getSuccess() - result.getFailure()) << NET_SUCCESS_SHIFT)
+        + ((long) (result.getAdvantage() - result.getThreat()) << NET_ADVANTAGE_SHIFT)
+        + ((long) result.getTriumph() << TRIUMPH_SHIFT)
+        + ((long) result.getDespair() << DESPAIR_SHIFT)
+        + ((long) result.getLight() << LIGHT_SHIFT)
+        + ((long) result.getDark() << DARK_SHIFT);
+  }
+
+  /**
+   * Returns the same distribution with fixed results added to every outcome.
+   *
+   * @param fixedResults the fixed results.
+   * @return the distribution.
+   */
+  GenesysDistribution withFixedResults(GenesysDiceCounts fixedResults) {
+    return new GenesysDistribution(outcomes, probabilities, fixedResults);
+  }
+
+  /**
+   * Returns the packed outcomes.
+   *
+   * @return the packed outcomes.
+   */
+  long[] getPackedOutcomes() {
+    return outcomes;
+  }
+
+  /**
+   * Returns the probability of each packed outcome.
+   *
+   * @return the probability of each packed outcome.
+   */
+  double[] getPackedProbabilities() {
+    return probabilities;
+  }
+
+  /**
+   * Returns the number of distinct outcomes.
+   *
+   * @return the number of distinct outcomes.
+   */
+  public int getOutcomeCount() {
+    return outcomes.length;
+  }
+
+  /**
+   * Returns the probability of rolling an outcome matching the predicate.
+   *
+   * @param predicate the predicate to select outcomes.
+   * @return the probability.
+   */
+  public double probability(OutcomePredicate predicate) {
+    int successOffset = fixedResults.getSuccessCount() - fixedResults.getFailureCount();
+    int advantageOffset = fixedResults.getAdvantageCount() - fixedResults.getThreatCount();
+    double total = 0;
+    for (int i = 0; i < outcomes.length; i++) {
+      long o = outcomes[i];
+      boolean matches =
+          predicate.test(
+              (int) ((o >>> NET_SUCCESS_SHIFT) & NET_MASK) - NET_OFFSET + successOffset,
+              (int) ((o >>> NET_ADVANTAGE_SHIFT) & NET_MASK) - NET_OFFSET + advantageOffset,
+              (int) ((o >>> TRIUMPH_SHIFT) & COUNT_MASK) + fixedResults.getTriumphCount(),
+              (int) ((o >>> DESPAIR_SHIFT) & COUNT_MASK) + fixedResults.getDespairCount(),
+              (int) ((o >>> LIGHT_SHIFT) & COUNT_MASK) + fixedResults.getLightCount(),
+              (int) ((o >>> DARK_SHIFT) & COUNT_MASK) + fixedResults.getDarkCount());
+      if (matches) {
+        total += probabilities[i];
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Returns the probability of the roll succeeding, that is more successes than failures.
+   *
+   * @return the probability of success.
+   */
+  public double getSuccessProbability() {
+    return probability((s, a, t, d, l, n) -> s > 0);
+  }
+
+  /**
+   * Returns the probability of the roll succeeding with at least the specified net advantage.
+   *
+   * @param minNetAdvantage the minimum number of advantages after cancelling threats.
+   * @return the probability.
+   */
+  public double getSuccessProbability(int minNetAdvantage) {
+    return probability((s, a, t, d, l, n) -> s > 0 && a >= minNetAdvantage);
+  }
+
+  /**
+   * Returns the probability of rolling at least one triumph.
+   *
+   * @return the probability of rolling at least one triumph.
+   */
+  public double getTriumphProbability() {
+    return probability((s, a, t, d, l, n) -> t > 0);
+  }
+
+  /**
+   * Returns the probability of rolling at least one despair.
+   *
+   * @return the probability of rolling at least one despair.
+   */
+  public double getDespairProbability() {
+    return probability((s, a, t, d, l, n) -> d > 0);
+  }
+}
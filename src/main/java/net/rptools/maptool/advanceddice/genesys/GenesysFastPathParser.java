@@ -0,0 +1,254 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.Count;
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.CountType;
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.DiceRoll;
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.FixedResult;
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.Node;
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.Sequence;
+
+/**
+ * Single pass recognizer for flat dice pools such as {@code 3g2y1p1r}, which compiles them into a
+ * roll plan without the ANTLR lexer and parser. It handles counts, dice names and colors, result
+ * symbols, variables, properties, prompts, commas and whitespace, and gives up on anything else
+ * (groups, functions, strings or invalid input) so the ANTLR parser can handle it and report any
+ * errors. The plans it produces are equal to those built from the ANTLR parse tree.
+ */
+final class GenesysFastPathParser {
+
+  /**
+   * Record to hold a word of the lexer grammar and what it adds to the roll.
+   *
+   * @param text the text of the word.
+   * @param diceType the dice type rolled, {@code null} if the word is a result.
+   * @param resultType the result added, {@code null} if the word is a dice type.
+   */
+  private record Keyword(String text, GenesysDiceType diceType, GenesysResultType resultType) {
+
+    /**
+     * Returns the plan node for this word.
+     *
+     * @param count the count that precedes the word.
+     * @return the plan node.
+     */
+    Node toNode(Count count) {
+      return diceType != null ? new DiceRoll(count, diceType) : new FixedResult(count, resultType);
+    }
+  }
+
+  /** The words that start with each ASCII character, longest first. */
+  private static final Keyword[][] KEYWORDS = new Keyword[128][];
+
+  /** The largest number of digits that always fits in an {@code int}. */
+  private static final int MAX_SAFE_DIGITS = 9;
+
+  static {
+    var keywords = new ArrayList<Keyword>();
+    addDice(keywords, GenesysDiceType.PROFICIENCY, "pro", "prof", "proficiency", "y", "yellow");
+    addDice(keywords, GenesysDiceType.ABILITY, "a", "ab", "abil", "ability", "g", "green");
+    addDice(keywords, GenesysDiceType.BOOST, "boo", "bst", "boost", "b", "blue");
+    addDice(keywords, GenesysDiceType.SETBACK, "set", "s", "sb", "setback", "blk", "k", "black");
+    addDice(keywords, GenesysDiceType.CHALLENGE, "c", "ch", "challenge", "r", "red");
+    addDice(keywords, GenesysDiceType.DIFFICULTY, "d", "diff", "difficulty", "p", "purple");
+    addDice(keywords, GenesysDiceType.FORCE, "f", "force", "w", "white");
+    addResult(keywords, GenesysResultType.SUCCESS, "suc", "success", "*");
+    addResult(keywords, GenesysResultType.ADVANTAGE, "adv", "advantage", "v");
+    addResult(keywords, GenesysResultType.TRIUMPH, "tri", "triumph", "!");
+    addResult(keywords, GenesysResultType.FAILURE, "fail", "failure", "-");
+    addResult(keywords, GenesysResultType.THREAT, "thr", "thrt", "threat", "t");
+    addResult(keywords, GenesysResultType.DESPAIR, "des", "despair", "$");
+    addResult(
+        keywords, GenesysResultType.LIGHT, "light", "l", "lightforce", "lf", "lightpip", "ls");
+    addResult(keywords, GenesysResultType.DARK, "dark", "n", "darkforce", "df", "darkpip", "ds");
+
+    keywords.sort(Comparator.comparingInt((Keyword k) -> k.text().length()).reversed());
+    for (var keyword : keywords) {
+      int first = keyword.text().charAt(0);
+      var existing = KEYWORDS[first] == null ? new Keyword[0] : KEYWORDS[first];
+      var added = Arrays.copyOf(existing, existing.length + 1);
+      added[existing.length] = keyword;
+      KEYWORDS[first] = added;
+    }
+  }
+
+  /** Private constructor as this class only has static methods. */
+  private GenesysFastPathParser() {}
+
+  /**
+   * Adds the names of a dice type to the list of words.
+   *
+   * @param keywords the list of words.
+   * @param diceType the dice type.
+   * @param names the names of the dice type.
+   */
+  private static void addDice(List<Keyword> keywords, GenesysDiceType diceType, String... names) {
+    for (var name : names) {
+      keywords.add(new Keyword(name, diceType, null));
+    }
+  }
+
+  /**
+   * Adds the names of a result to the list of words.
+   *
+   * @param keywords the list of words.
+   * @param resultType the result.
+   * @param names the names of the result.
+   */
+  private static void addResult(
+      List<Keyword> keywords, GenesysResultType resultType, String... names) {
+    for (var name : names) {
+      keywords.add(new Keyword(name, null, resultType));
+    }
+  }
+
+  /**
+   * Compiles the given dice string into a plan if it is a flat dice pool.
+   *
+   * @param rollString the string to compile.
+   * @return the plan, or {@code null} if the string must be parsed by the ANTLR parser.
+   */
+  static GenesysRollPlan parse(String rollString) {
+    var children = new ArrayList<Node>();
+    Count count = null;
+    boolean commaAllowed = false;
+    int length = rollString.length();
+    int start = -1;
+    int end = 0;
+    int pos = 0;
+    while (true) {
+      while (pos < length && isWhitespace(rollString.charAt(pos))) {
+        pos++;
+      }
+      if (pos == length) {
+        break;
+      }
+      int tokenStart = pos;
+      char c = rollString.charAt(pos);
+      if (c >= '0' && c <= '9') {
+        if (count != null) {
+          return null;
+        }
+        while (pos < length && rollString.charAt(pos) >= '0' && rollString.charAt(pos) <= '9') {
+          pos++;
+        }
+        if (pos - tokenStart > MAX_SAFE_DIGITS) {
+          return null; // Let the slow path decide what to do with numbers this large
+        }
+        int value = Integer.parseInt(rollString, tokenStart, pos, 10);
+        count = new Count(CountType.LITERAL, null, value);
+        commaAllowed = false;
+      } else if (c == '{') {
+        if (count != null) {
+          return null;
+        }
+        int close = rollString.indexOf('}', pos + 1);
+        if (close < 0) {
+          return null;
+        }
+        count = symbolCount(rollString, pos, close);
+        if (count == null) {
+          return null;
+        }
+        pos = close + 1;
+        commaAllowed = false;
+      } else if (c == ',') {
+        if (!commaAllowed) {
+          return null;
+        }
+        pos++;
+        commaAllowed = false;
+      } else {
+        var keyword = matchKeyword(rollString, pos);
+        if (keyword == null) {
+          return null;
+        }
+        pos += keyword.text().length();
+        children.add(keyword.toNode(count == null ? Count.ONE : count));
+        count = null;
+        commaAllowed = true;
+      }
+      if (start < 0) {
+        start = tokenStart;
+      }
+      end = pos;
+    }
+    if (count != null) {
+      return null;
+    }
+    if (start < 0) {
+      start = 0; // Empty list of rolls
+    }
+    return GenesysRollPlan.of(rollString, new Sequence(rollString, start, end, children));
+  }
+
+  /**
+   * Returns the count for a variable, property or prompt.
+   *
+   * @param rollString the string being compiled.
+   * @param open the index of the opening brace.
+   * @param close the index of the closing brace.
+   * @return the count, or {@code null} if the symbol is not valid.
+   */
+  private static Count symbolCount(String rollString, int open, int close) {
+    if (close == open + 1) {
+      return null;
+    }
+    char marker = rollString.charAt(open + 1);
+    if (marker == '@' || marker == '?') {
+      if (close == open + 2) {
+        return null;
+      }
+      var type = marker == '@' ? CountType.PROPERTY : CountType.PROMPT;
+      return new Count(type, rollString.substring(open + 2, close), 0);
+    }
+    return new Count(CountType.VARIABLE, rollString.substring(open + 1, close), 0);
+  }
+
+  /**
+   * Returns the longest word that starts at the specified position.
+   *
+   * @param rollString the string being compiled.
+   * @param pos the position of the word.
+   * @return the word, or {@code null} if no word starts at the position.
+   */
+  private static Keyword matchKeyword(String rollString, int pos) {
+    char c = rollString.charAt(pos);
+    if (c >= KEYWORDS.length || KEYWORDS[c] == null) {
+      return null;
+    }
+    for (var keyword : KEYWORDS[c]) {
+      if (rollString.startsWith(keyword.text(), pos)) {
+        return keyword;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns if the character is skipped by the lexer.
+   *
+   * @param c the character.
+   * @return {@code true} if the character is whitespace.
+   */
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '\f';
+  }
+}
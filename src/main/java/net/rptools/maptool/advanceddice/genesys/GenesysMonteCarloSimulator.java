@@ -0,0 +1,239 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.ToIntFunction;
+import net.rptools.maptool.advanceddice.RandomSource;
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.RollContext;
+
+/**
+ * Estimates the distribution of the totals of a Genesys dice roll by rolling it many times in
+ * parallel. The trials are split into fixed size chunks, each with its own random stream split from
+ * the seed in order, so the result for a seed is the same no matter how many threads run it.
+ */
+public class GenesysMonteCarloSimulator {
+
+  /** The number of trials in each chunk. */
+  static final int CHUNK_SIZE = 1 << 16;
+
+  /** The count types, kept as {@link GenesysCountType#values()} copies the array on every call. */
+  private static final GenesysCountType[] COUNT_TYPES = GenesysCountType.values();
+
+  /** The roller used to parse expressions. */
+  private final GenesysDiceRoller roller;
+
+  /** The pool that runs the trials. */
+  private final ForkJoinPool pool;
+
+  /** Creates a simulator that parses with a default roller and runs in the common pool. */
+  public GenesysMonteCarloSimulator() {
+    this(new GenesysDiceRoller(), ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param roller the roller used to parse expressions.
+   * @param pool the pool that runs the trials.
+   */
+  public GenesysMonteCarloSimulator(GenesysDiceRoller roller, ForkJoinPool pool) {
+    this.roller = roller;
+    this.pool = pool;
+  }
+
+  /**
+   * Simulates rolling the given dice string. Each variable, property and prompt is resolved once,
+   * on the calling thread, and the value used for every trial.
+   *
+   * @param rollString the string to roll.
+   * @param trialCount the number of trials.
+   * @param seed the seed for the random streams.
+   * @param variableSupplier the supplier to use for variable values.
+   * @param propertySupplier the supplier to use for property values.
+   * @param promptSupplier the supplier to use for prompt values.
+   * @return the result of the simulation.
+   * @throws IllegalArgumentException if the string can not be parsed.
+   */
+  public GenesysSimulationResult simulate(
+      String rollString,
+      long trialCount,
+      long seed,
+      ToIntFunction<String> variableSupplier,
+      ToIntFunction<String> propertySupplier,
+      ToIntFunction<String> promptSupplier) {
+    var plan = roller.getPlan(rollString);
+    if (plan.hasErrors()) {
+      throw new IllegalArgumentException("Invalid roll: " + rollString);
+    }
+    if (trialCount <= 0) {
+      throw new IllegalArgumentException("Number of trials must be positive: " + trialCount);
+    }
+
+    // Resolve everything up front so the workers never call the suppliers
+    var context =
+        roller.createContext(
+            GenesysRollPlan.memoize(variableSupplier),
+            GenesysRollPlan.memoize(propertySupplier),
+            GenesysRollPlan.memoize(promptSupplier));
+    plan.getRoot().collect(context, new int[GenesysDicePool.SIZE]);
+
+    int chunkCount = Math.toIntExact((trialCount + CHUNK_SIZE - 1) / CHUNK_SIZE);
+    var streams = new SplittableRandom[chunkCount];
+    var random = new SplittableRandom(seed);
+    for (int i = 0; i < chunkCount; i++) {
+      streams[i] = random.split();
+    }
+
+    var task = new SimulationTask(plan.getRoot(), context, streams, trialCount, 0, chunkCount);
+    var histograms = pool.invoke(task);
+    return new GenesysSimulationResult(
+        plan.getRoot().rollString(), trialCount, histograms.histograms);
+  }
+
+  /** Task that runs a range of chunks, splitting it until there is a single chunk. */
+  private static final class SimulationTask extends RecursiveTask<Histograms> {
+
+    /** The root of the plan to roll. */
+    private final GenesysRollPlan.Sequence root;
+    /** The context holding the resolved values, its random source is replaced per chunk. */
+    private final RollContext context;
+    /** The random stream for each chunk. */
+    private final SplittableRandom[] streams;
+    /** The total number of trials. */
+    private final long trialCount;
+    /** The first chunk to run. */
+    private final int fromChunk;
+    /** The chunk after the last one to run. */
+    private final int toChunk;
+
+    /**
+     * Constructor.
+     *
+     * @param root the root of the plan to roll.
+     * @param context the context holding the resolved values.
+     * @param streams the random stream for each chunk.
+     * @param trialCount the total number of trials.
+     * @param fromChunk the first chunk to run.
+     * @param toChunk the chunk after the last one to run.
+     */
+    SimulationTask(
+        GenesysRollPlan.Sequence root,
+        RollContext context,
+        SplittableRandom[] streams,
+        long trialCount,
+        int fromChunk,
+        int toChunk) {
+      this.root = root;
+      this.context = context;
+      this.streams = streams;
+      this.trialCount = trialCount;
+      this.fromChunk = fromChunk;
+      this.toChunk = toChunk;
+    }
+
+    @Override
+    protected Histograms compute() {
+      if (toChunk - fromChunk == 1) {
+        return runChunk(fromChunk);
+      }
+      int mid = (fromChunk + toChunk) >>> 1;
+      var left = new SimulationTask(root, context, streams, trialCount, fromChunk, mid);
+      var right = new SimulationTask(root, context, streams, trialCount, mid, toChunk);
+      left.fork();
+      var rightHistograms = right.compute();
+      return left.join().merge(rightHistograms);
+    }
+
+    /**
+     * Runs the trials of a single chunk.
+     *
+     * @param chunk the chunk.
+     * @return the histograms of the chunk.
+     */
+    private Histograms runChunk(int chunk) {
+      var random = streams[chunk];
+      var chunkContext =
+          context.withRandomSource(
+              new RandomSource() {
+                @Override
+                public int nextInt(int bound) {
+                  return random.nextInt(bound);
+                }
+
+                @Override
+                public double nextDouble() {
+                  return random.nextDouble();
+                }
+              });
+      long trials = Math.min(CHUNK_SIZE, trialCount - (long) chunk * CHUNK_SIZE);
+      var histograms = new Histograms();
+      var counts = new GenesysDiceCountsBuilder();
+      for (long i = 0; i < trials; i++) {
+        root.count(chunkContext, counts.reset());
+        histograms.add(counts);
+      }
+      return histograms;
+    }
+  }
+
+  /** The histograms of each count type, grown as larger totals are rolled. */
+  private static final class Histograms {
+
+    /** The histograms, indexed by count type ordinal then total. */
+    private final long[][] histograms = new long[COUNT_TYPES.length][1];
+
+    /**
+     * Records the totals of a trial.
+     *
+     * @param counts the totals of the trial.
+     */
+    void add(GenesysDiceCountsBuilder counts) {
+      for (var countType : COUNT_TYPES) {
+        int total = countType.getCount(counts);
+        var histogram = histograms[countType.ordinal()];
+        if (total >= histogram.length) {
+          histogram = Arrays.copyOf(histogram, Math.max(total + 1, histogram.length * 2));
+          histograms[countType.ordinal()] = histogram;
+        }
+        histogram[total]++;
+      }
+    }
+
+    /**
+     * Adds the trials of another set of histograms to this one.
+     *
+     * @param other the other histograms.
+     * @return this histograms.
+     */
+    Histograms merge(Histograms other) {
+      for (int t = 0; t < COUNT_TYPES.length; t++) {
+        var histogram = histograms[t];
+        var otherHistogram = other.histograms[t];
+        if (otherHistogram.length > histogram.length) {
+          histogram = Arrays.copyOf(histogram, otherHistogram.length);
+          histograms[t] = histogram;
+        }
+        for (int total = 0; total < otherHistogram.length; total++) {
+          histogram[total] += otherHistogram[total];
+        }
+      }
+      return this;
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import net.rptools.maptool.advanceddice.genesys.GenesysDiceResult.Result;
+
+/**
+ * Unmodifiable list of rolls stored as one byte per die, the dice type ordinal in the high bits
+ * and the result type ordinal in the low bits. The {@link Result} objects returned are shared, one
+ * for each combination of dice type and result type, so the list holds no objects of its own.
+ * Sub lists are views of the same bytes.
+ */
+final class GenesysPackedRolls extends AbstractList<Result> implements RandomAccess {
+
+  /** The number of bits the dice type is shifted by in a packed die. */
+  private static final int DICE_TYPE_SHIFT = 5;
+
+  /** The result for each packed die, {@code null} for values that are not valid. */
+  private static final Result[] RESULTS = new Result[256];
+
+  static {
+    for (var diceType : GenesysDiceType.values()) {
+      for (var resultType : GenesysResultType.values()) {
+        RESULTS[pack(diceType, resultType)] = new Result(diceType, resultType);
+      }
+    }
+  }
+
+  /** The list with no rolls. */
+  static final GenesysPackedRolls EMPTY = new GenesysPackedRolls(new byte[0], 0, 0);
+
+  /** The packed dice, shared with any list this is a view of. */
+  private final byte[] dice;
+
+  /** The index of the first die of this list. */
+  private final int start;
+
+  /** The index after the last die of this list. */
+  private final int end;
+
+  /**
+   * Constructor, the array is used without copying so must not be changed afterwards.
+   *
+   * @param dice the packed dice.
+   * @param start the index of the first die of the list.
+   * @param end the index after the last die of the list.
+   */
+  GenesysPackedRolls(byte[] dice, int start, int end) {
+    this.dice = dice;
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * Returns the rolls as a packed list, the rolls themselves if they already are one.
+   *
+   * @param rolls the rolls.
+   * @return the packed rolls.
+   */
+  static GenesysPackedRolls of(List<Result> rolls) {
+    if (rolls instanceof GenesysPackedRolls packed) {
+      return packed;
+    }
+    var dice = new byte[rolls.size()];
+    for (int i = 0; i < dice.length; i++) {
+      var roll = rolls.get(i);
+      dice[i] = (byte) pack(roll.diceType(), roll.resultType());
+    }
+    return new GenesysPackedRolls(dice, 0, dice.length);
+  }
+
+  /**
+   * Returns the packed form of a die.
+   *
+   * @param diceType the type of dice.
+   * @param resultType the result of the dice.
+   * @return the packed die.
+   */
+  static int pack(GenesysDiceType diceType, GenesysResultType resultType) {
+    return diceType.ordinal() << DICE_TYPE_SHIFT | resultType.ordinal();
+  }
+
+  /**
+   * Returns the die for its packed form.
+   *
+   * @param packed the packed die.
+   * @return the die, {@code null} if the value is not a valid packed die.
+   */
+  static Result unpack(int packed) {
+    return RESULTS[packed & 0xff];
+  }
+
+  /**
+   * Returns the dice type ordinal of a packed die.
+   *
+   * @param packed the packed die.
+   * @return the dice type ordinal.
+   */
+  static int diceTypeOrdinal(int packed) {
+    return (packed & 0xff) >>> DICE_TYPE_SHIFT;
+  }
+
+  /**
+   * Returns the result type ordinal of a packed die.
+   *
+   * @param packed the packed die.
+   * @return the result type ordinal.
+   */
+  static int resultTypeOrdinal(int packed) {
+    return packed & ((1 << DICE_TYPE_SHIFT) - 1);
+  }
+
+  /**
+   * Returns the packed form of a die in the list.
+   *
+   * @param index the index of the die.
+   * @return the packed die.
+   */
+  int packed(int index) {
+    return dice[start + Objects.checkIndex(index, end - start)];
+  }
+
+  @Override
+  public Result get(int index) {
+    return RESULTS[packed(index) & 0xff];
+  }
+
+  @Override
+  public int size() {
+    return end - start;
+  }
+
+  @Override
+  public GenesysPackedRolls subList(int fromIndex, int toIndex) {
+    Objects.checkFromToIndex(fromIndex, toIndex, end - start);
+    return new GenesysPackedRolls(dice, start + fromIndex, start + toIndex);
+  }
+}
@@ -0,0 +1,314 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import net.rptools.maptool.advanceddice.DiceErrorListener;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceLexer;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.StartGenesysContext;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.LexerATNSimulator;
+import org.antlr.v4.runtime.atn.ParserATNSimulator;
+import org.antlr.v4.runtime.atn.PredictionContextCache;
+import org.antlr.v4.runtime.dfa.DFA;
+
+/**
+ * Bounded, thread safe cache of the DFA states and prediction contexts the lexer and parser build
+ * up as they see new input. ANTLR keeps these in static fields of the generated classes that only
+ * ever grow, so on a long running server fed arbitrary text they are never released. The parsers
+ * run by this cache use its own states instead, and once there are more than the maximum number of
+ * states they are dropped and the cache is primed again with the common expressions, so memory
+ * stays bounded and the usual rolls stay fast. The states are only counted every {@link
+ * #CHECK_INTERVAL} parses, so the cache can briefly hold the states of that many parses more than
+ * the maximum.
+ */
+public class GenesysParserCache {
+
+  /** The default maximum number of DFA states held by a cache. */
+  public static final int DEFAULT_MAX_STATES = 10_000;
+
+  /** The number of parses between checks of the number of states, a power of two. */
+  static final int CHECK_INTERVAL = 64;
+
+  /** Approximate size of a DFA state, its configuration set and map entry, in bytes. */
+  private static final int STATE_BYTES = 200;
+
+  /** Approximate size of each configuration in a DFA state, in bytes. */
+  private static final int CONFIG_BYTES = 40;
+
+  /** Size of each edge out of a DFA state, in bytes. */
+  private static final int EDGE_BYTES = 4;
+
+  /** Approximate size of a cached prediction context and its map entry, in bytes. */
+  private static final int CONTEXT_BYTES = 80;
+
+  /** The maximum number of DFA states held before the cache is reset. */
+  private final int maxStates;
+
+  /** The current states, replaced as a whole on reset so parsers already running are unaffected. */
+  private volatile States states = new States();
+
+  /** The number of times the cache has been reset. */
+  private final AtomicLong resetCount = new AtomicLong();
+
+  /** The number of parses, used to only count the states every {@link #CHECK_INTERVAL}. */
+  private final AtomicLong parseCount = new AtomicLong();
+
+  /** Set while a parse that found too many states primes new ones. */
+  private final AtomicBoolean resetting = new AtomicBoolean();
+
+  /**
+   * The DFA for each decision of the lexer and parser, and the prediction contexts they share.
+   *
+   * @param lexerDfa the DFA for each decision of the lexer.
+   * @param lexerContexts the prediction contexts of the lexer.
+   * @param parserDfa the DFA for each decision of the parser.
+   * @param parserContexts the prediction contexts of the parser.
+   */
+  private record States(
+      DFA[] lexerDfa,
+      PredictionContextCache lexerContexts,
+      DFA[] parserDfa,
+      PredictionContextCache parserContexts) {
+
+    /** Creates empty states. */
+    States() {
+      this(
+          createDfa(GenesysDiceLexer._ATN),
+          new PredictionContextCache(),
+          createDfa(GenesysDiceParser._ATN),
+          new PredictionContextCache());
+    }
+  }
+
+  /** Creates a cache holding up to {@link #DEFAULT_MAX_STATES} DFA states. */
+  public GenesysParserCache() {
+    this(DEFAULT_MAX_STATES);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param maxStates the maximum number of DFA states held before the cache is reset, use {@link
+   *     Integer#MAX_VALUE} to never reset it.
+   * @throws IllegalArgumentException if the maximum is not positive.
+   */
+  public GenesysParserCache(int maxStates) {
+    if (maxStates <= 0) {
+      throw new IllegalArgumentException("Maximum DFA states must be positive: " + maxStates);
+    }
+    this.maxStates = maxStates;
+  }
+
+  /**
+   * Lexes and parses a dice string using this cache's states, resetting the cache afterwards if it
+   * is time to count the states and there are too many.
+   *
+   * @param rollString the string to parse.
+   * @param errorListener the listener the syntax errors are reported to.
+   * @return the syntax tree.
+   */
+  StartGenesysContext parse(String rollString, DiceErrorListener errorListener) {
+    var current = states;
+    var tree = parse(current, rollString, errorListener);
+    if ((parseCount.incrementAndGet() & (CHECK_INTERVAL - 1)) == 0
+        && countStates(current) > maxStates) {
+      resetIfCurrent(current);
+    }
+    return tree;
+  }
+
+  /**
+   * Drops all the DFA states and prediction contexts, then primes the cache again by parsing the
+   * expressions used by {@link GenesysDiceRoller#warmUp()}. Parsers already running keep using the
+   * states they started with.
+   */
+  public void reset() {
+    states = primedStates();
+    resetCount.incrementAndGet();
+  }
+
+  /**
+   * Resets the cache if it still holds the states that were found to be too many. Only one thread
+   * primes new states at a time, the others carry on parsing with the current ones.
+   *
+   * @param current the states that were found to be too many.
+   */
+  private void resetIfCurrent(States current) {
+    if (!resetting.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      if (states == current) {
+        reset();
+      }
+    } finally {
+      resetting.set(false);
+    }
+  }
+
+  /**
+   * Creates new states primed with the expressions used by {@link GenesysDiceRoller#warmUp()}.
+   *
+   * @return the states.
+   */
+  private static States primedStates() {
+    var fresh = new States();
+    for (var expression : GenesysDiceRoller.WARM_UP_CORPUS) {
+      parse(fresh, expression, new DiceErrorListener());
+    }
+    return fresh;
+  }
+
+  /**
+   * Returns the maximum number of DFA states held before the cache is reset.
+   *
+   * @return the maximum number of DFA states.
+   */
+  public int getMaxStates() {
+    return maxStates;
+  }
+
+  /**
+   * Returns the number of DFA states currently held by the lexer and parser.
+   *
+   * @return the number of DFA states.
+   */
+  public int getStateCount() {
+    return countStates(states);
+  }
+
+  /**
+   * Returns the number of prediction contexts currently held by the lexer and parser.
+   *
+   * @return the number of prediction contexts.
+   */
+  public int getContextCount() {
+    var current = states;
+    return current.lexerContexts().size() + current.parserContexts().size();
+  }
+
+  /**
+   * Returns a rough estimate of the memory used by the DFA states and prediction contexts, based
+   * on the number of each and the size of the states' configuration sets.
+   *
+   * @return the approximate size of the cache in bytes.
+   */
+  public long getApproximateBytes() {
+    var current = states;
+    return approximateBytes(current.lexerDfa())
+        + approximateBytes(current.parserDfa())
+        + (long) getContextCount() * CONTEXT_BYTES;
+  }
+
+  /**
+   * Returns the number of times the cache has been reset.
+   *
+   * @return the number of times the cache has been reset.
+   */
+  public long getResetCount() {
+    return resetCount.get();
+  }
+
+  /**
+   * Lexes and parses a dice string using the given states.
+   *
+   * @param states the states to use.
+   * @param rollString the string to parse.
+   * @param errorListener the listener the syntax errors are reported to.
+   * @return the syntax tree.
+   */
+  private static StartGenesysContext parse(
+      States states, String rollString, DiceErrorListener errorListener) {
+    var lexer = new GenesysDiceLexer(CharStreams.fromString(rollString));
+    lexer.setInterpreter(
+        new LexerATNSimulator(
+            lexer, GenesysDiceLexer._ATN, states.lexerDfa(), states.lexerContexts()));
+    lexer.removeErrorListeners();
+    lexer.addErrorListener(errorListener);
+    var parser = new GenesysDiceParser(new CommonTokenStream(lexer));
+    parser.setInterpreter(
+        new ParserATNSimulator(
+            parser, GenesysDiceParser._ATN, states.parserDfa(), states.parserContexts()));
+    return GenesysDiceRoller.parse(parser, errorListener);
+  }
+
+  /**
+   * Creates an empty DFA for each decision of an ATN.
+   *
+   * @param atn the ATN.
+   * @return the DFA for each decision.
+   */
+  private static DFA[] createDfa(ATN atn) {
+    var dfa = new DFA[atn.getNumberOfDecisions()];
+    for (int i = 0; i < dfa.length; i++) {
+      dfa[i] = new DFA(atn.getDecisionState(i), i);
+    }
+    return dfa;
+  }
+
+  /**
+   * Returns the number of DFA states held by the lexer and parser. The maps are read without
+   * locking so the count may be slightly out of date.
+   *
+   * @param states the states to count.
+   * @return the number of DFA states.
+   */
+  private static int countStates(States states) {
+    return countStates(states.lexerDfa()) + countStates(states.parserDfa());
+  }
+
+  /**
+   * Returns the number of states held by a set of DFA.
+   *
+   * @param dfa the DFA.
+   * @return the number of states.
+   */
+  private static int countStates(DFA[] dfa) {
+    int count = 0;
+    for (var decision : dfa) {
+      count += decision.states.size();
+    }
+    return count;
+  }
+
+  /**
+   * Returns the approximate memory used by the states of a set of DFA.
+   *
+   * @param dfa the DFA.
+   * @return the approximate size in bytes.
+   */
+  private static long approximateBytes(DFA[] dfa) {
+    long bytes = 0;
+    for (var decision : dfa) {
+      synchronized (decision.states) {
+        for (var state : decision.states.keySet()) {
+          bytes += STATE_BYTES;
+          if (state.configs != null) {
+            bytes += (long) state.configs.size() * CONFIG_BYTES;
+          }
+          if (state.edges != null) {
+            bytes += (long) state.edges.length * EDGE_BYTES;
+          }
+        }
+      }
+    }
+    return bytes;
+  }
+}
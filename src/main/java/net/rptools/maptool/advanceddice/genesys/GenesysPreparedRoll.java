@@ -0,0 +1,215 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.rptools.maptool.advanceddice.DiceExpressionError;
+import net.rptools.maptool.advanceddice.RandomSource;
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.CountType;
+
+/**
+ * A dice expression prepared to be rolled many times with different values, created by {@link
+ * GenesysDiceRoller#prepare(String)}. Each distinct variable, property and prompt in the expression
+ * is a slot, numbered in the order they are first used, and the values are passed to {@link
+ * #execute(int...)} in slot order. So {@code {skill}g{rank}y{@diff}p} has the slots {@code skill},
+ * {@code rank} and {@code @diff}, and {@code execute(2, 1, 3)} rolls it as {@code 2g1y3p}. The
+ * expression is parsed once when it is prepared, and executing it does not look up any names.
+ * Prepared rolls are immutable and safe to share between threads if the random source is.
+ *
+ * <p>Once {@link #executeCounts(int...)} has been called more than the roller's compile threshold
+ * the totals are computed by a chain of method handles compiled from the expression rather than by
+ * walking the plan. Both give the same totals from the same random source.
+ *
+ * <p>The roller's {@link GenesysRollLimits} are checked when the roll is prepared and, for the
+ * number of dice, each time it is rolled.
+ */
+public final class GenesysPreparedRoll {
+
+  /**
+   * Record to hold a slot of a prepared roll.
+   *
+   * @param type the type of count the slot is used for.
+   * @param name the name of the variable, property or prompt.
+   */
+  public record Slot(CountType type, String name) {}
+
+  /** The plan with the values of its counts taken from the slots. */
+  private final GenesysRollPlan plan;
+
+  /** The slots, in the order they are first used. */
+  private final List<Slot> slots;
+
+  /** The source of random numbers used to roll the dice. */
+  private final RandomSource randomSource;
+
+  /** The number of dice of a type above which they are rolled in bulk. */
+  private final int summarizeThreshold;
+
+  /** The limits on how much work a roll may do. */
+  private final GenesysRollLimits limits;
+
+  /** The number of times the totals are rolled before they are compiled. */
+  private final int compileThreshold;
+
+  /** The number of times the totals have been rolled, only counted until they are compiled. */
+  private final AtomicInteger countExecutions = new AtomicInteger();
+
+  /** The compiled totals, {@code null} until the compile threshold is reached. */
+  private volatile GenesysCompiledRoll compiled;
+
+  /**
+   * Constructor.
+   *
+   * @param plan the plan for the expression.
+   * @param randomSource the source of random numbers used to roll the dice.
+   * @param summarizeThreshold the number of dice of a type above which they are rolled in bulk.
+   * @param compileThreshold the number of times the totals are rolled before they are compiled,
+   *     {@link Integer#MAX_VALUE} to never compile them.
+   * @param limits the limits on how much work a roll may do.
+   */
+  GenesysPreparedRoll(
+      GenesysRollPlan plan,
+      RandomSource randomSource,
+      int summarizeThreshold,
+      int compileThreshold,
+      GenesysRollLimits limits) {
+    var slotList = new ArrayList<Slot>();
+    this.plan =
+        plan.hasErrors()
+            ? plan
+            : GenesysRollPlan.of(plan.getRollString(), plan.getRoot().withSlots(slotList));
+    this.slots = List.copyOf(slotList);
+    this.randomSource = randomSource;
+    this.summarizeThreshold = summarizeThreshold;
+    this.compileThreshold = compileThreshold;
+    this.limits = limits;
+    if (compileThreshold == 0 && !this.plan.hasErrors()) {
+      this.compiled = GenesysCompiledRoll.compile(this.plan.getRoot(), summarizeThreshold);
+    }
+  }
+
+  /**
+   * Returns the string the roll was prepared from.
+   *
+   * @return the string the roll was prepared from.
+   */
+  public String getRollString() {
+    return plan.getRollString();
+  }
+
+  /**
+   * Returns the slots, in the order their values are passed to {@link #execute(int...)}. The index
+   * of a slot can be found with {@code getSlots().indexOf(new Slot(type, name))}.
+   *
+   * @return the slots.
+   */
+  public List<Slot> getSlots() {
+    return slots;
+  }
+
+  /**
+   * Returns if any errors occurred while parsing the expression.
+   *
+   * @return {@code true} if any errors occurred while parsing the expression.
+   */
+  public boolean hasErrors() {
+    return plan.hasErrors();
+  }
+
+  /**
+   * Returns the errors that occurred while parsing the expression.
+   *
+   * @return the errors that occurred while parsing the expression.
+   */
+  public List<DiceExpressionError> getErrors() {
+    return plan.getErrors();
+  }
+
+  /**
+   * Rolls the expression with the values of its slots. The array is only read during the call.
+   *
+   * @param values the values of the slots, in slot order.
+   * @return the result of the roll, a result with the parse errors if the expression is invalid.
+   * @throws IllegalArgumentException if the number of values is not the number of slots.
+   */
+  public GenesysDiceResult execute(int... values) {
+    var checked = limits.checkDice(plan, createContext(values));
+    return checked.plan().roll(checked.context());
+  }
+
+  /**
+   * Returns if the totals have been compiled.
+   *
+   * @return {@code true} if {@link #executeCounts(int...)} uses the compiled totals.
+   */
+  public boolean isCompiled() {
+    return compiled != null;
+  }
+
+  /**
+   * Rolls the expression with the values of its slots keeping only the totals of the results.
+   *
+   * @param values the values of the slots, in slot order.
+   * @return the totals of the roll, totals with the parse errors if the expression is invalid.
+   * @throws IllegalArgumentException if the number of values is not the number of slots.
+   */
+  public GenesysDiceCounts executeCounts(int... values) {
+    var checked = limits.checkDice(plan, createContext(values));
+    var context = checked.context();
+    var compiledRoll = compiled;
+    if (compiledRoll == null
+        || checked.plan() != plan
+        || context.summarizeThreshold() != summarizeThreshold) {
+      if (compiledRoll == null
+          && compileThreshold != Integer.MAX_VALUE
+          && !plan.hasErrors()
+          && countExecutions.incrementAndGet() == compileThreshold) {
+        compiled = GenesysCompiledRoll.compile(plan.getRoot(), summarizeThreshold);
+      }
+      return checked.plan().rollCounts(context);
+    }
+    return compiledRoll.rollCounts(values, randomSource);
+  }
+
+  /**
+   * Creates the context to roll the plan with.
+   *
+   * @param values the values of the slots.
+   * @return the context.
+   * @throws IllegalArgumentException if the number of values is not the number of slots.
+   */
+  private GenesysRollPlan.RollContext createContext(int[] values) {
+    if (!plan.hasErrors()) {
+      checkValues(values);
+    }
+    return new GenesysRollPlan.RollContext(
+        null, null, null, randomSource, summarizeThreshold, values);
+  }
+
+  /**
+   * Checks there is a value for each slot.
+   *
+   * @param values the values of the slots.
+   * @throws IllegalArgumentException if the number of values is not the number of slots.
+   */
+  private void checkValues(int[] values) {
+    if (values.length != slots.size()) {
+      throw new IllegalArgumentException(
+          "Expected " + slots.size() + " values for " + slots + " but got " + values.length);
+    }
+  }
+}
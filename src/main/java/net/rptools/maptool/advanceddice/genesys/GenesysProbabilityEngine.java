@@ -0,0 +1,417 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.function.ToIntFunction;
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.RollContext;
+
+/**
+ * Calculates the exact probability distribution of Genesys dice pools by convolving the face
+ * distributions of each die. The distributions of pools are cached, so a pool that is one die
+ * larger than a cached pool only costs a single convolution.
+ *
+ * <p>The number of distinct outcomes grows quickly with the size of the pool (around two million
+ * for 35 mixed dice), so the pool size is limited and the cache is bounded by the total number of
+ * outcomes it holds rather than the number of pools.
+ */
+public class GenesysProbabilityEngine {
+
+  /** The default maximum number of dice in a pool. */
+  public static final int DEFAULT_MAX_DICE = 30;
+
+  /** The largest maximum number of dice that the packed outcomes can hold. */
+  public static final int MAX_DICE_LIMIT = 500;
+
+  /** The default maximum number of outcomes, over all pools, held in the cache. */
+  public static final int DEFAULT_MAX_CACHED_OUTCOMES = 1 << 22;
+
+  /** The number of dice types that can be rolled, {@link GenesysDiceType#NONE} is not rolled. */
+  private static final int ROLLED_DICE_TYPES = GenesysDiceType.NONE.ordinal();
+
+  /** The number of bits used for the count of each dice type in a pool key. */
+  private static final int POOL_KEY_BITS = 9;
+
+  /** The packed face values of each dice type, indexed by ordinal. */
+  private static final long[][] FACE_VALUES = new long[ROLLED_DICE_TYPES][];
+
+  /** The probability of each face value of each dice type, indexed by ordinal. */
+  private static final double[][] FACE_PROBABILITIES = new double[ROLLED_DICE_TYPES][];
+
+  static {
+    for (int t = 0; t < ROLLED_DICE_TYPES; t++) {
+      var diceType = GenesysDiceType.values()[t];
+      // Faces are offset by the empty outcome while summing as a blank face packs to 0
+      var faces = new Accumulator(diceType.getSides());
+      for (int side = 0; side < diceType.getSides(); side++) {
+        long face = GenesysDistribution.pack(diceType.getSide(side));
+        faces.add(GenesysDistribution.EMPTY + face, 1.0 / diceType.getSides());
+      }
+      FACE_VALUES[t] = faces.getKeys();
+      for (int f = 0; f < FACE_VALUES[t].length; f++) {
+        FACE_VALUES[t][f] -= GenesysDistribution.EMPTY;
+      }
+      FACE_PROBABILITIES[t] = faces.getValues();
+    }
+  }
+
+  /** The roller used to parse expressions. */
+  private final GenesysDiceRoller roller;
+
+  /** The maximum number of dice in a pool. */
+  private final int maxDice;
+
+  /** The maximum number of outcomes, over all pools, held in the cache. */
+  private final long maxCachedOutcomes;
+
+  /** The cached distributions keyed by pool, in least to most recently used order. */
+  private final LinkedHashMap<Long, GenesysDistribution> distributions =
+      new LinkedHashMap<>(16, 0.75f, true);
+
+  /** The number of outcomes, over all pools, held in the cache. */
+  private long cachedOutcomes;
+
+  /** Creates an engine with the default limits that parses with a default roller. */
+  public GenesysProbabilityEngine() {
+    this(new GenesysDiceRoller(), DEFAULT_MAX_DICE, DEFAULT_MAX_CACHED_OUTCOMES);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param roller the roller used to parse expressions.
+   * @param maxDice the maximum number of dice in a pool, at most {@link #MAX_DICE_LIMIT}.
+   * @param maxCachedOutcomes the maximum number of outcomes, over all pools, held in the cache.
+   */
+  public GenesysProbabilityEngine(
+      GenesysDiceRoller roller, int maxDice, long maxCachedOutcomes) {
+    if (maxDice < 0 || maxDice > MAX_DICE_LIMIT) {
+      throw new IllegalArgumentException("Maximum dice must be between 0 and " + MAX_DICE_LIMIT);
+    }
+    this.roller = roller;
+    this.maxDice = maxDice;
+    this.maxCachedOutcomes = maxCachedOutcomes;
+  }
+
+  /**
+   * Returns the distribution of the outcomes of rolling the given dice string.
+   *
+   * @param rollString the string to roll.
+   * @param variableSupplier the supplier to use for variable values.
+   * @param propertySupplier the supplier to use for property values.
+   * @param promptSupplier the supplier to use for prompt values.
+   * @return the distribution of the outcomes.
+   * @throws IllegalArgumentException if the string can not be parsed or has too many dice.
+   */
+  public GenesysDistribution getDistribution(
+      String rollString,
+      ToIntFunction<String> variableSupplier,
+      ToIntFunction<String> propertySupplier,
+      ToIntFunction<String> promptSupplier) {
+    return getDistribution(
+        roller.getPlan(rollString), variableSupplier, propertySupplier, promptSupplier);
+  }
+
+  /**
+   * Returns the distribution of the outcomes of rolling the given plan.
+   *
+   * @param plan the plan to roll.
+   * @param variableSupplier the supplier to use for variable values.
+   * @param propertySupplier the supplier to use for property values.
+   * @param promptSupplier the supplier to use for prompt values.
+   * @return the distribution of the outcomes.
+   * @throws IllegalArgumentException if the plan has errors or too many dice.
+   */
+  public GenesysDistribution getDistribution(
+      GenesysRollPlan plan,
+      ToIntFunction<String> variableSupplier,
+      ToIntFunction<String> propertySupplier,
+      ToIntFunction<String> promptSupplier) {
+    if (plan.hasErrors()) {
+      throw new IllegalArgumentException("Invalid roll: " + plan.getRollString());
+    }
+    var pool = plan.getPool();
+    if (pool == null) {
+      // Nothing is rolled so there is no need for a random source
+      var context =
+          new RollContext(
+              variableSupplier, propertySupplier, promptSupplier, null, Integer.MAX_VALUE);
+      pool = GenesysDicePool.of(plan.getRoot(), context);
+      if (pool == null) {
+        throw new IllegalArgumentException("Too many dice to calculate exactly, max " + maxDice);
+      }
+    }
+    return getDistribution(pool);
+  }
+
+  /**
+   * Returns the distribution of the outcomes of rolling a pool, the same for every expression with
+   * that pool.
+   *
+   * @param pool the pool to roll.
+   * @return the distribution of the outcomes.
+   * @throws IllegalArgumentException if the pool has too many dice.
+   */
+  public GenesysDistribution getDistribution(GenesysDicePool pool) {
+    return getDistribution(pool.counts()).withFixedResults(pool.getFixedResults());
+  }
+
+  /**
+   * Returns the distribution of the outcomes of rolling a pool of dice.
+   *
+   * @param diceCounts the number of each type of dice, indexed by {@link
+   *     GenesysDiceType#ordinal()}.
+   * @return the distribution of the outcomes.
+   * @throws IllegalArgumentException if the pool has too many dice.
+   */
+  GenesysDistribution getDistribution(int[] diceCounts) {
+    int total = 0;
+    long key = 0;
+    for (int t = 0; t < ROLLED_DICE_TYPES; t++) {
+      if (diceCounts[t] < 0) {
+        throw new IllegalArgumentException("Number of dice can not be negative");
+      }
+      total += diceCounts[t];
+      if (total > maxDice) {
+        throw new IllegalArgumentException("Too many dice to calculate exactly, max " + maxDice);
+      }
+      key |= (long) diceCounts[t] << (t * POOL_KEY_BITS);
+    }
+    synchronized (distributions) {
+      return getDistribution(key, Arrays.copyOf(diceCounts, ROLLED_DICE_TYPES));
+    }
+  }
+
+  /**
+   * Returns the distribution of a pool, calculating it from a smaller pool if it is not cached.
+   *
+   * @param key the key of the pool.
+   * @param diceCounts the number of each type of dice in the pool.
+   * @return the distribution of the pool.
+   */
+  private GenesysDistribution getDistribution(long key, int[] diceCounts) {
+    var distribution = distributions.get(key);
+    if (distribution != null) {
+      return distribution;
+    }
+
+    if (key == 0) {
+      distribution =
+          new GenesysDistribution(
+              new long[] {GenesysDistribution.EMPTY},
+              new double[] {1.0},
+              new GenesysDiceCountsBuilder().build());
+      cache(key, distribution);
+      return distribution;
+    }
+
+    // Prefer any cached pool that is one die smaller
+    for (int t = 0; t < ROLLED_DICE_TYPES; t++) {
+      if (diceCounts[t] > 0) {
+        var smaller = distributions.get(key - (1L << (t * POOL_KEY_BITS)));
+        if (smaller != null) {
+          distribution = convolve(smaller, t);
+          cache(key, distribution);
+          return distribution;
+        }
+      }
+    }
+
+    // Otherwise build up from the pool without one of the last type of die
+    int t = ROLLED_DICE_TYPES - 1;
+    while (diceCounts[t] == 0) {
+      t--;
+    }
+    diceCounts[t]--;
+    var smaller = getDistribution(key - (1L << (t * POOL_KEY_BITS)), diceCounts);
+    diceCounts[t]++;
+    distribution = convolve(smaller, t);
+    cache(key, distribution);
+    return distribution;
+  }
+
+  /**
+   * Adds a distribution to the cache, removing the least recently used distributions if the cache
+   * holds too many outcomes.
+   *
+   * @param key the key of the pool.
+   * @param distribution the distribution of the pool.
+   */
+  private void cache(long key, GenesysDistribution distribution) {
+    distributions.put(key, distribution);
+    cachedOutcomes += distribution.getOutcomeCount();
+    var it = distributions.values().iterator();
+    while (cachedOutcomes > maxCachedOutcomes && distributions.size() > 1) {
+      cachedOutcomes -= it.next().getOutcomeCount();
+      it.remove();
+    }
+  }
+
+  /**
+   * Returns the distribution of rolling one more die with a pool.
+   *
+   * @param distribution the distribution of the pool.
+   * @param diceType the ordinal of the type of die to add.
+   * @return the distribution of the larger pool.
+   */
+  private static GenesysDistribution convolve(GenesysDistribution distribution, int diceType) {
+    long[] outcomes = distribution.getPackedOutcomes();
+    double[] probabilities = distribution.getPackedProbabilities();
+    long[] faces = FACE_VALUES[diceType];
+    double[] faceProbabilities = FACE_PROBABILITIES[diceType];
+    // Most faces land on outcomes another face already reached, so start small and grow
+    var result = new Accumulator((long) outcomes.length + faces.length);
+    for (int i = 0; i < outcomes.length; i++) {
+      for (int f = 0; f < faces.length; f++) {
+        result.add(outcomes[i] + faces[f], probabilities[i] * faceProbabilities[f]);
+      }
+    }
+    return new GenesysDistribution(
+        result.getKeys(), result.getValues(), new GenesysDiceCountsBuilder().build());
+  }
+
+  /**
+   * Open addressing hash map from packed outcome to probability, used to sum the probabilities of
+   * outcomes without boxing. Packed outcomes are never {@code 0} so it marks empty slots.
+   */
+  private static final class Accumulator {
+
+    /** The largest capacity, the largest power of two that an array can hold. */
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    /** The packed outcomes, {@code 0} for empty slots. */
+    private long[] keys;
+    /** The summed probabilities. */
+    private double[] values;
+    /** The mask used to wrap indexes. */
+    private int mask;
+    /** The shift that leaves the bits of a hash used as an index. */
+    private int shift;
+    /** The number of distinct outcomes. */
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param expectedSize the expected number of distinct outcomes, more can be added.
+     */
+    Accumulator(long expectedSize) {
+      // At most half full, so at least twice the expected size rounded up to a power of two
+      long wanted = Math.min(Math.max(expectedSize, 2), MAX_CAPACITY / 2);
+      allocate((int) Long.highestOneBit(wanted * 2 - 1) << 1);
+    }
+
+    /**
+     * Replaces the slots with empty ones.
+     *
+     * @param capacity the number of slots, a power of two.
+     */
+    private void allocate(int capacity) {
+      keys = new long[capacity];
+      values = new double[capacity];
+      mask = capacity - 1;
+      shift = Long.numberOfLeadingZeros(mask);
+    }
+
+    /**
+     * Adds a probability to an outcome.
+     *
+     * @param key the packed outcome.
+     * @param value the probability to add.
+     * @throws IllegalArgumentException if there are too many distinct outcomes to hold.
+     */
+    void add(long key, double value) {
+      int i = slot(key);
+      if (keys[i] == 0) {
+        if (size >= keys.length / 2) {
+          grow();
+          i = slot(key);
+        }
+        keys[i] = key;
+        size++;
+      }
+      values[i] += value;
+    }
+
+    /**
+     * Returns the slot that holds an outcome, or the empty slot where it would be added.
+     *
+     * @param key the packed outcome.
+     * @return the index of the slot.
+     */
+    private int slot(long key) {
+      // Outcomes differ in their high bits, which only reach the top bits of the product
+      int i = (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+      while (keys[i] != 0 && keys[i] != key) {
+        i = (i + 1) & mask;
+      }
+      return i;
+    }
+
+    /**
+     * Doubles the number of slots.
+     *
+     * @throws IllegalArgumentException if there are already as many slots as an array can hold.
+     */
+    private void grow() {
+      if (keys.length >= MAX_CAPACITY) {
+        throw new IllegalArgumentException("Too many outcomes to calculate exactly");
+      }
+      long[] oldKeys = keys;
+      double[] oldValues = values;
+      allocate(keys.length * 2);
+      for (int j = 0; j < oldKeys.length; j++) {
+        if (oldKeys[j] != 0) {
+          int i = slot(oldKeys[j]);
+          keys[i] = oldKeys[j];
+          values[i] = oldValues[j];
+        }
+      }
+    }
+
+    /**
+     * Returns the distinct outcomes.
+     *
+     * @return the distinct outcomes.
+     */
+    long[] getKeys() {
+      var result = new long[size];
+      int n = 0;
+      for (long key : keys) {
+        if (key != 0) {
+          result[n++] = key;
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Returns the probabilities of the distinct outcomes, in the same order as {@link #getKeys()}.
+     *
+     * @return the probabilities.
+     */
+    double[] getValues() {
+      var result = new double[size];
+      int n = 0;
+      for (int i = 0; i < keys.length; i++) {
+        if (keys[i] != 0) {
+          result[n++] = values[i];
+        }
+      }
+      return result;
+    }
+  }
+}
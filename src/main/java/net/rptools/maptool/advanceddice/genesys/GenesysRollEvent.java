@@ -0,0 +1,100 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/** JDK Flight Recorder event for a roll, see {@link GenesysRollMetrics#flightRecorder()}. */
+@Name("net.rptools.advanceddice.GenesysRoll")
+@Label("Genesys Roll")
+@Category({"RPTools", "Advanced Dice"})
+@Description("A Genesys dice roll and the time spent in each of its phases")
+final class GenesysRollEvent extends Event {
+
+  /** The event type, used to check if it is enabled without creating an event. */
+  private static final GenesysRollEvent PROBE = new GenesysRollEvent();
+
+  /** The string that was rolled. */
+  @Label("Roll String")
+  String rollString;
+
+  /** If the plan was already cached. */
+  @Label("Cached")
+  boolean cached;
+
+  /** If the string was parsed without the ANTLR parser. */
+  @Label("Fast Path")
+  boolean fastPath;
+
+  /** The time taken to get the plan, including lexing and parsing if not cached. */
+  @Label("Parse Time")
+  @Timespan(Timespan.NANOSECONDS)
+  long parseTime;
+
+  /** The time spent waiting for the variable, property and prompt values. */
+  @Label("Resolve Time")
+  @Timespan(Timespan.NANOSECONDS)
+  long resolveTime;
+
+  /** The time taken to roll the dice. */
+  @Label("Evaluate Time")
+  @Timespan(Timespan.NANOSECONDS)
+  long evaluateTime;
+
+  /** The time taken to build the result. */
+  @Label("Build Time")
+  @Timespan(Timespan.NANOSECONDS)
+  long buildTime;
+
+  /** The number of dice rolled and results added. */
+  @Label("Dice Rolled")
+  long diceRolled;
+
+  /** The number of distinct variables, properties and prompts resolved. */
+  @Label("Symbols")
+  int symbolCount;
+
+  /** The number of errors found while parsing the string. */
+  @Label("Errors")
+  int errorCount;
+
+  /**
+   * Commits an event for a roll if the event is enabled.
+   *
+   * @param measurement the measurements of the roll.
+   */
+  static void commit(GenesysRollMeasurement measurement) {
+    if (!PROBE.isEnabled()) {
+      return;
+    }
+    var event = new GenesysRollEvent();
+    event.rollString = measurement.rollString();
+    event.cached = measurement.cached();
+    event.fastPath = measurement.fastPath();
+    event.parseTime = measurement.parseNanos();
+    event.resolveTime = measurement.resolveNanos();
+    event.evaluateTime = measurement.evaluateNanos();
+    event.buildTime = measurement.buildNanos();
+    event.diceRolled = measurement.diceRolled();
+    event.symbolCount = measurement.symbolCount();
+    event.errorCount = measurement.errorCount();
+    event.commit();
+  }
+}
@@ -0,0 +1,521 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import net.rptools.maptool.advanceddice.genesys.GenesysDiceResult.Result;
+import net.rptools.maptool.advanceddice.genesys.GenesysDiceResult.SummarizedResult;
+
+/**
+ * Append only journal of rolls kept in a memory mapped file, so the history of a session is kept
+ * off the heap and persisting it is a sequential write. Each record holds when and by whom a roll
+ * was made, the expression, its totals and optionally the result of each die, or of each group of
+ * dice rolled in bulk.
+ *
+ * <p>The file is mapped in fixed size segments, added as the journal grows, and a record never
+ * spans two segments. The length of each record is written after the rest of it, so a {@link
+ * Reader} never sees a partly written record and can follow the end of the journal while it is
+ * being written, from this or another process. A journal can be opened again after a restart and
+ * appended to where it left off. A record that can not be read, such as one that was being
+ * written when the process stopped, ends the journal and is overwritten by the next append.
+ *
+ * <p>The file starts with a header of a magic number, the format version and the segment size,
+ * followed by the records:
+ *
+ * <pre>
+ * record := int(length) long(timestamp) string(rollerId) string(expression) varint(total){8}
+ *           varint(n) die{n} varint(m) (die varint(count)){m} padding
+ * </pre>
+ *
+ * The strings, numbers and dice are written as by {@link GenesysDiceResultCodec}, and each record
+ * is padded to a multiple of four bytes. A length of {@code -1} means the rest of the segment is
+ * unused, {@code 0} is the end of the journal. The length after a record is set to {@code 0}
+ * before the record's own length is written, so the end is always marked.
+ */
+public class GenesysRollJournal implements Closeable {
+
+  /** The default size of each segment of the file. */
+  public static final int DEFAULT_SEGMENT_SIZE = 16 << 20;
+
+  /** The smallest allowed segment size. */
+  private static final int MIN_SEGMENT_SIZE = 4096;
+
+  /** The magic number at the start of the file. */
+  private static final int MAGIC = 0x47524a4c;
+
+  /** The version of the format written by this journal. */
+  private static final int VERSION = 1;
+
+  /** The size of the header at the start of the first segment. */
+  private static final int HEADER_SIZE = 16;
+
+  /** The length that marks the rest of a segment as unused. */
+  private static final int PADDING = -1;
+
+  /** Access to the record lengths with memory ordering, so readers see whole records. */
+  private static final VarHandle LENGTH =
+      MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+  /**
+   * Record to hold a roll read from the journal.
+   *
+   * @param position the position of the record in the journal.
+   * @param timestamp when the roll was made, in milliseconds since the epoch.
+   * @param rollerId the id of who made the roll.
+   * @param counts the expression and totals of the roll.
+   * @param rolls the result of each die, empty if they were not recorded.
+   * @param summarizedResults the results of dice rolled in bulk, empty if they were not recorded.
+   */
+  public record Entry(
+      long position,
+      long timestamp,
+      String rollerId,
+      GenesysDiceCounts counts,
+      List<Result> rolls,
+      List<SummarizedResult> summarizedResults) {}
+
+  /** The path of the file. */
+  private final Path path;
+
+  /** The channel of the file. */
+  private final FileChannel channel;
+
+  /** The size of each segment of the file. */
+  private final int segmentSize;
+
+  /** The segment being appended to. */
+  private MappedByteBuffer segment;
+
+  /** The index of the segment being appended to. */
+  private int segmentIndex;
+
+  /** The offset in the segment the next record is written at. */
+  private int offset;
+
+  /**
+   * Constructor.
+   *
+   * @param path the path of the file.
+   * @param channel the channel of the file.
+   * @param segmentSize the size of each segment of the file.
+   * @param end the position the next record is written at.
+   * @throws IOException if the file can not be mapped.
+   */
+  private GenesysRollJournal(Path path, FileChannel channel, int segmentSize, long end)
+      throws IOException {
+    this.path = path;
+    this.channel = channel;
+    this.segmentSize = segmentSize;
+    this.segmentIndex = (int) (end / segmentSize);
+    this.offset = (int) (end % segmentSize);
+    this.segment = channel.map(FileChannel.MapMode.READ_WRITE, segmentStart(), segmentSize);
+    // End the journal before a record that could not be read, the next append overwrites it
+    LENGTH.setRelease(segment, offset, 0);
+  }
+
+  /**
+   * Opens a journal with the {@link #DEFAULT_SEGMENT_SIZE}, creating it if the file does not
+   * exist.
+   *
+   * @param path the path of the file.
+   * @return the journal.
+   * @throws IOException if the file can not be opened or is not a journal.
+   */
+  public static GenesysRollJournal open(Path path) throws IOException {
+    return open(path, DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * Opens a journal, creating it if the file does not exist. An existing journal keeps the segment
+   * size it was created with and is appended to after its last record.
+   *
+   * @param path the path of the file.
+   * @param segmentSize the size of each segment of the file if it is created, a multiple of four
+   *     of at least 4096 bytes.
+   * @return the journal.
+   * @throws IOException if the file can not be opened or is not a journal.
+   * @throws IllegalArgumentException if the segment size is not valid.
+   */
+  public static GenesysRollJournal open(Path path, int segmentSize) throws IOException {
+    if (segmentSize < MIN_SEGMENT_SIZE || segmentSize % 4 != 0) {
+      throw new IllegalArgumentException("Invalid segment size: " + segmentSize);
+    }
+    var channel =
+        FileChannel.open(
+            path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      if (channel.size() == 0) {
+        var header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(segmentSize).flip();
+        channel.write(header, 0);
+        return new GenesysRollJournal(path, channel, segmentSize, HEADER_SIZE);
+      }
+      try (var reader = new Reader(path)) {
+        try {
+          while (reader.next() != null) {
+            // Skip to the end
+          }
+        } catch (IllegalArgumentException e) {
+          // A torn record ends the journal
+        }
+        return new GenesysRollJournal(path, channel, reader.segmentSize, reader.position());
+      }
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Opens a reader that reads the journal in a file from the start.
+   *
+   * @param path the path of the file.
+   * @return the reader.
+   * @throws IOException if the file can not be opened or is not a journal.
+   */
+  public static Reader read(Path path) throws IOException {
+    return new Reader(path);
+  }
+
+  /**
+   * Opens a reader that reads this journal from the start.
+   *
+   * @return the reader.
+   * @throws IOException if the file can not be opened.
+   */
+  public Reader read() throws IOException {
+    return new Reader(path);
+  }
+
+  /**
+   * Appends a roll made now.
+   *
+   * @param rollerId the id of who made the roll.
+   * @param result the result of the roll.
+   * @param includeDice if the result of each die and of each group of dice rolled in bulk is
+   *     recorded, otherwise only the totals are.
+   * @return the position of the record in the journal.
+   * @throws IOException if the journal can not be extended.
+   */
+  public long append(String rollerId, GenesysDiceResult result, boolean includeDice)
+      throws IOException {
+    var counts =
+        new GenesysDiceCounts(
+            result.getRollString(),
+            result.getSuccessCount(),
+            result.getFailureCount(),
+            result.getAdvantageCount(),
+            result.getThreatCount(),
+            result.getTriumphCount(),
+            result.getDespairCount(),
+            result.getLightCount(),
+            result.getDarkCount(),
+            List.of());
+    if (!includeDice) {
+      return append(System.currentTimeMillis(), rollerId, counts, List.of(), List.of());
+    }
+    return append(
+        System.currentTimeMillis(),
+        rollerId,
+        counts,
+        result.getRolls(),
+        result.getSummarizedResults());
+  }
+
+  /**
+   * Appends a roll made now of which only the totals are known.
+   *
+   * @param rollerId the id of who made the roll.
+   * @param counts the totals of the roll.
+   * @return the position of the record in the journal.
+   * @throws IOException if the journal can not be extended.
+   */
+  public long append(String rollerId, GenesysDiceCounts counts) throws IOException {
+    return append(System.currentTimeMillis(), rollerId, counts, List.of(), List.of());
+  }
+
+  /**
+   * Appends a roll.
+   *
+   * @param timestamp when the roll was made, in milliseconds since the epoch.
+   * @param rollerId the id of who made the roll.
+   * @param counts the expression and totals of the roll.
+   * @param rolls the result of each die, empty to only record the totals.
+   * @param summarizedResults the results of dice rolled in bulk, empty to only record the totals.
+   * @return the position of the record in the journal.
+   * @throws IOException if the journal can not be extended.
+   * @throws IllegalArgumentException if the record does not fit in a segment.
+   */
+  public synchronized long append(
+      long timestamp,
+      String rollerId,
+      GenesysDiceCounts counts,
+      List<Result> rolls,
+      List<SummarizedResult> summarizedResults)
+      throws IOException {
+    var sizer = new GenesysDiceResultCodec.Writer(null);
+    writeRecord(sizer, timestamp, rollerId, counts, rolls, summarizedResults);
+    int length = sizer.getSize();
+    int recordSize = (Integer.BYTES + length + 3) & ~3;
+    if (recordSize > segmentSize - HEADER_SIZE) {
+      throw new IllegalArgumentException("Roll is too large for the journal: " + length);
+    }
+    if (offset + recordSize > segmentSize) {
+      if (offset < segmentSize) {
+        LENGTH.setRelease(segment, offset, PADDING);
+      }
+      segmentIndex++;
+      offset = 0;
+      segment = channel.map(FileChannel.MapMode.READ_WRITE, segmentStart(), segmentSize);
+    }
+    long position = segmentStart() + offset;
+    var writer = new GenesysDiceResultCodec.Writer(segment.slice(offset + Integer.BYTES, length));
+    writeRecord(writer, timestamp, rollerId, counts, rolls, summarizedResults);
+    // Records are a multiple of four bytes, so a record that ends before the segment does leaves
+    // room for the next length
+    if (offset + recordSize < segmentSize) {
+      LENGTH.setRelease(segment, offset + recordSize, 0);
+    }
+    LENGTH.setRelease(segment, offset, length);
+    offset += recordSize;
+    return position;
+  }
+
+  /**
+   * Writes the contents of the segments to the storage device, the records are otherwise written
+   * when the operating system chooses to.
+   */
+  public synchronized void force() {
+    segment.force();
+  }
+
+  /**
+   * Returns the position the next record is written at.
+   *
+   * @return the position.
+   */
+  public synchronized long position() {
+    return segmentStart() + offset;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * Returns the position of the start of the segment being appended to.
+   *
+   * @return the position.
+   */
+  private long segmentStart() {
+    return (long) segmentIndex * segmentSize;
+  }
+
+  /**
+   * Writes a record, without its length.
+   *
+   * @param writer the writer.
+   * @param timestamp when the roll was made.
+   * @param rollerId the id of who made the roll.
+   * @param counts the expression and totals of the roll.
+   * @param rolls the result of each die.
+   * @param summarizedResults the results of dice rolled in bulk.
+   */
+  private static void writeRecord(
+      GenesysDiceResultCodec.Writer writer,
+      long timestamp,
+      String rollerId,
+      GenesysDiceCounts counts,
+      List<Result> rolls,
+      List<SummarizedResult> summarizedResults) {
+    for (int shift = Long.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+      writer.writeByte((int) (timestamp >>> shift));
+    }
+    writer.writeString(rollerId);
+    writer.writeString(counts.getRollString());
+    writer.writeVarint(counts.getSuccessCount());
+    writer.writeVarint(counts.getFailureCount());
+    writer.writeVarint(counts.getAdvantageCount());
+    writer.writeVarint(counts.getThreatCount());
+    writer.writeVarint(counts.getTriumphCount());
+    writer.writeVarint(counts.getDespairCount());
+    writer.writeVarint(counts.getLightCount());
+    writer.writeVarint(counts.getDarkCount());
+    writer.writeVarint(rolls.size());
+    for (var roll : rolls) {
+      writer.writeByte(GenesysDiceResultCodec.pack(roll.diceType(), roll.resultType()));
+    }
+    writer.writeVarint(summarizedResults.size());
+    for (var summarized : summarizedResults) {
+      writer.writeByte(
+          GenesysDiceResultCodec.pack(summarized.diceType(), summarized.resultType()));
+      writer.writeVarint(summarized.count());
+    }
+  }
+
+  /**
+   * Reads the records of a journal in order. When there are no more records {@link #next()}
+   * returns {@code null}, and can be called again later to follow records as they are appended.
+   * Readers are not thread safe.
+   */
+  public static final class Reader implements Closeable {
+
+    /** The channel of the file. */
+    private final FileChannel channel;
+
+    /** The size of each segment of the file. */
+    private final int segmentSize;
+
+    /** The segment being read, {@code null} if it has not been mapped yet. */
+    private MappedByteBuffer segment;
+
+    /** The index of the segment being read. */
+    private int segmentIndex;
+
+    /** The offset in the segment of the next record. */
+    private int offset = HEADER_SIZE;
+
+    /**
+     * Constructor.
+     *
+     * @param path the path of the file.
+     * @throws IOException if the file can not be opened or is not a journal.
+     */
+    private Reader(Path path) throws IOException {
+      channel = FileChannel.open(path, StandardOpenOption.READ);
+      try {
+        var header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+          throw new IOException("Not a roll journal: " + path);
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+          throw new IOException("Unsupported roll journal version: " + version);
+        }
+        segmentSize = header.getInt();
+        if (segmentSize < MIN_SEGMENT_SIZE || segmentSize % 4 != 0) {
+          throw new IOException("Invalid roll journal segment size: " + segmentSize);
+        }
+      } catch (IOException | RuntimeException e) {
+        channel.close();
+        throw e;
+      }
+    }
+
+    /**
+     * Returns the next record.
+     *
+     * @return the record, {@code null} if there are no more records yet.
+     * @throws IOException if the file can not be mapped.
+     * @throws IllegalArgumentException if the record is not valid.
+     */
+    public Entry next() throws IOException {
+      while (true) {
+        if (segment == null) {
+          long start = (long) segmentIndex * segmentSize;
+          if (channel.size() < start + segmentSize) {
+            return null;
+          }
+          segment = channel.map(FileChannel.MapMode.READ_ONLY, start, segmentSize);
+        }
+        int length = offset < segmentSize ? (int) LENGTH.getAcquire(segment, offset) : PADDING;
+        if (length == 0) {
+          return null;
+        }
+        if (length == PADDING) {
+          segmentIndex++;
+          offset = 0;
+          segment = null;
+          continue;
+        }
+        if (length < 0 || length > segmentSize - offset - Integer.BYTES) {
+          throw new IllegalArgumentException("Invalid roll journal record at " + position());
+        }
+        Entry entry;
+        try {
+          entry = readRecord(position(), segment.slice(offset + Integer.BYTES, length));
+        } catch (BufferUnderflowException | GenesysDiceCodecException e) {
+          throw new IllegalArgumentException("Invalid roll journal record at " + position(), e);
+        }
+        offset += (Integer.BYTES + length + 3) & ~3;
+        return entry;
+      }
+    }
+
+    /**
+     * Returns the position of the next record.
+     *
+     * @return the position.
+     */
+    public long position() {
+      return (long) segmentIndex * segmentSize + offset;
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+
+    /**
+     * Reads a record.
+     *
+     * @param position the position of the record.
+     * @param buffer the record, without its length.
+     * @return the record.
+     */
+    private static Entry readRecord(long position, ByteBuffer buffer) {
+      long timestamp = buffer.getLong();
+      var rollerId = GenesysDiceResultCodec.readString(buffer);
+      var rollString = GenesysDiceResultCodec.readString(buffer);
+      var counts =
+          new GenesysDiceCounts(
+              rollString,
+              GenesysDiceResultCodec.readLength(buffer),
+              GenesysDiceResultCodec.readLength(buffer),
+              GenesysDiceResultCodec.readLength(buffer),
+              GenesysDiceResultCodec.readLength(buffer),
+              GenesysDiceResultCodec.readLength(buffer),
+              GenesysDiceResultCodec.readLength(buffer),
+              GenesysDiceResultCodec.readLength(buffer),
+              GenesysDiceResultCodec.readLength(buffer),
+              List.of());
+      var rolls = new Result[GenesysDiceResultCodec.readCount(buffer)];
+      for (int i = 0; i < rolls.length; i++) {
+        rolls[i] = GenesysDiceResultCodec.readDie(buffer);
+      }
+      return new Entry(
+          position,
+          timestamp,
+          rollerId,
+          counts,
+          List.of(rolls),
+          GenesysDiceResultCodec.readSummarized(buffer));
+    }
+  }
+}
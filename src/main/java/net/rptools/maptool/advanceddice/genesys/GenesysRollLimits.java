@@ -0,0 +1,287 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.rptools.maptool.advanceddice.DiceExpressionError;
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.CountType;
+
+/**
+ * Limits on how much work a single roll may do, checked before any dice are rolled. How deeply
+ * parentheses are nested is checked before the expression is parsed, the number of distinct
+ * variables, properties and prompts before any are resolved, and the number of dice and results
+ * once their counts are resolved. A roll over a limit gets a result with a {@link
+ * DiceExpressionError} describing the limit, as for a syntax error, except that a roll with too
+ * many dice can instead be rolled keeping only counts, see {@link Action#COUNTS_ONLY}. Use {@link
+ * GenesysRollLimitsBuilder} to create limits, and {@link GenesysDiceRoller#withLimits} to give
+ * different callers different limits.
+ */
+public final class GenesysRollLimits {
+
+  /** What to do with a roll that has more dice and results than {@link #getMaxDice()}. */
+  public enum Action {
+    /** Return a result with an error instead of rolling. */
+    REJECT,
+    /**
+     * Roll all the dice and results in bulk, so the result only has {@link
+     * GenesysDiceResult#getSummarizedResults()}. This costs the same however many dice there are,
+     * but rolls with more than {@link #MAX_COUNTED_DICE} are still rejected.
+     */
+    COUNTS_ONLY
+  }
+
+  /**
+   * The most dice and results that can be rolled keeping only counts, any more could overflow the
+   * totals.
+   */
+  public static final long MAX_COUNTED_DICE = Integer.MAX_VALUE / 2;
+
+  /** The limits used by rollers that are not given any. */
+  public static final GenesysRollLimits DEFAULT = new GenesysRollLimitsBuilder().build();
+
+  /** No limits, other than {@link #MAX_COUNTED_DICE}. */
+  public static final GenesysRollLimits NONE =
+      new GenesysRollLimits(MAX_COUNTED_DICE, Integer.MAX_VALUE, Integer.MAX_VALUE, Action.REJECT);
+
+  /** The most dice and results a roll may have. */
+  private final long maxDice;
+
+  /** The most deeply parentheses may be nested. */
+  private final int maxGroupDepth;
+
+  /** The most distinct variables, properties and prompts a roll may resolve. */
+  private final int maxResolverCalls;
+
+  /** What to do with a roll that has too many dice and results. */
+  private final Action overDiceLimit;
+
+  /**
+   * Constructor, use {@link GenesysRollLimitsBuilder} to create limits.
+   *
+   * @param maxDice the most dice and results a roll may have.
+   * @param maxGroupDepth the most deeply parentheses may be nested.
+   * @param maxResolverCalls the most distinct variables, properties and prompts a roll may resolve.
+   * @param overDiceLimit what to do with a roll that has too many dice and results.
+   */
+  GenesysRollLimits(long maxDice, int maxGroupDepth, int maxResolverCalls, Action overDiceLimit) {
+    this.maxDice = maxDice;
+    this.maxGroupDepth = maxGroupDepth;
+    this.maxResolverCalls = maxResolverCalls;
+    this.overDiceLimit = overDiceLimit;
+  }
+
+  /**
+   * Returns the most dice and results a roll may have, each die and each result that is not rolled
+   * counting as one.
+   *
+   * @return the most dice and results.
+   */
+  public long getMaxDice() {
+    return maxDice;
+  }
+
+  /**
+   * Returns the most deeply parentheses may be nested, whether for capture groups or functions.
+   *
+   * @return the most deeply parentheses may be nested.
+   */
+  public int getMaxGroupDepth() {
+    return maxGroupDepth;
+  }
+
+  /**
+   * Returns the most distinct variables, properties and prompts a roll may resolve.
+   *
+   * @return the most distinct variables, properties and prompts.
+   */
+  public int getMaxResolverCalls() {
+    return maxResolverCalls;
+  }
+
+  /**
+   * Returns what is done with a roll that has more dice and results than {@link #getMaxDice()}.
+   *
+   * @return the action.
+   */
+  public Action getOverDiceLimit() {
+    return overDiceLimit;
+  }
+
+  /**
+   * Checks how deeply parentheses are nested in a dice string, before it is parsed. Parentheses in
+   * string literals and in variable, property and prompt names are not counted.
+   *
+   * @param rollString the dice string.
+   * @return an error plan if the parentheses are nested too deeply, otherwise {@code null}.
+   */
+  GenesysRollPlan checkNesting(String rollString) {
+    if (rollString.length() <= maxGroupDepth) {
+      return null;
+    }
+    int depth = 0;
+    for (int i = 0; i < rollString.length(); i++) {
+      char c = rollString.charAt(i);
+      if (c == '(' && ++depth > maxGroupDepth) {
+        return error(
+            rollString,
+            i,
+            "Parentheses nested too deeply, the limit is " + maxGroupDepth + " levels");
+      } else if (c == ')' && depth > 0) {
+        depth--;
+      } else if (c == '\'' || c == '"' || c == '{') {
+        i = skipQuoted(rollString, i);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns where a string literal or a variable, property or prompt name ends. If it is not
+   * closed it is left to the parser, and its contents are checked like the rest of the string.
+   *
+   * @param rollString the dice string.
+   * @param start the index of the opening quote or brace.
+   * @return the index of the closing quote or brace, or {@code start} if there is none.
+   */
+  private static int skipQuoted(String rollString, int start) {
+    char open = rollString.charAt(start);
+    if (open == '{') {
+      int end = rollString.indexOf('}', start + 1);
+      return end < 0 ? start : end;
+    }
+    for (int i = start + 1; i < rollString.length(); i++) {
+      char c = rollString.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (c == open) {
+        return i;
+      }
+    }
+    return start;
+  }
+
+  /**
+   * Checks a plan, before its variables, properties and prompts are resolved.
+   *
+   * @param plan the plan.
+   * @return the plan, or an error plan if it is over a limit.
+   */
+  GenesysRollPlan checkPlan(GenesysRollPlan plan) {
+    if (plan.hasErrors()) {
+      return plan;
+    }
+    var errors = new ArrayList<DiceExpressionError>();
+    if (plan.getGroupDepth() > maxGroupDepth) {
+      errors.add(
+          new DiceExpressionError(
+              1, 0, "Groups nested too deeply, the limit is " + maxGroupDepth + " levels"));
+    }
+    int resolverCalls =
+        plan.getNames(CountType.VARIABLE).size()
+            + plan.getNames(CountType.PROPERTY).size()
+            + plan.getNames(CountType.PROMPT).size();
+    if (resolverCalls > maxResolverCalls) {
+      errors.add(
+          new DiceExpressionError(
+              1,
+              0,
+              "Too many variables, properties and prompts: "
+                  + resolverCalls
+                  + ", the limit is "
+                  + maxResolverCalls));
+    }
+    return errors.isEmpty() ? plan : GenesysRollPlan.error(plan.getRollString(), errors);
+  }
+
+  /**
+   * Checks the number of dice and results of a plan once its counts can be resolved.
+   *
+   * @param plan the plan.
+   * @param context the context the plan is to be rolled with.
+   * @return the plan and context to roll, an error plan if the roll is rejected or a context that
+   *     rolls everything in bulk if it is to keep only counts.
+   */
+  Checked checkDice(GenesysRollPlan plan, GenesysRollPlan.RollContext context) {
+    long dice = plan.cost(context);
+    if (dice <= maxDice) {
+      return new Checked(plan, context, dice);
+    }
+    if (overDiceLimit == Action.COUNTS_ONLY && dice <= MAX_COUNTED_DICE) {
+      return new Checked(plan, context.withSummarizeThreshold(0), dice);
+    }
+    var limit = overDiceLimit == Action.COUNTS_ONLY ? MAX_COUNTED_DICE : maxDice;
+    return new Checked(
+        error(plan.getRollString(), 0, "Too many dice: " + dice + ", the limit is " + limit),
+        context,
+        0);
+  }
+
+  /**
+   * Checks the number of dice and results of a batch of rolls of a plan, each roll counting as at
+   * least one so a batch of empty rolls is still limited. A batch is never rolled keeping only
+   * counts, as the totals of every roll are kept anyway.
+   *
+   * @param plan the plan.
+   * @param context the context the plan is to be rolled with.
+   * @param trialCount the number of times the plan is to be rolled.
+   * @return the plan and context to roll, an error plan if the batch is rejected.
+   */
+  Checked checkBatch(GenesysRollPlan plan, GenesysRollPlan.RollContext context, int trialCount) {
+    if (plan.hasErrors() || trialCount <= 0) {
+      return new Checked(plan, context, 0);
+    }
+    long cost = plan.cost(context);
+    long dice = Math.max(1, cost);
+    if (dice <= maxDice / trialCount) {
+      return new Checked(plan, context, cost * trialCount);
+    }
+    // Both are at most Integer.MAX_VALUE so the product can not overflow
+    long total = Math.min(dice, Integer.MAX_VALUE) * trialCount;
+    return new Checked(
+        error(
+            plan.getRollString(),
+            0,
+            "Too many dice for "
+                + trialCount
+                + " rolls: "
+                + total
+                + ", the limit is "
+                + maxDice),
+        context,
+        0);
+  }
+
+  /**
+   * Creates a plan for a roll that is over a limit.
+   *
+   * @param rollString the dice string.
+   * @param position the position in the dice string the error is reported at.
+   * @param msg the error message.
+   * @return the plan.
+   */
+  private static GenesysRollPlan error(String rollString, int position, String msg) {
+    return GenesysRollPlan.error(rollString, List.of(new DiceExpressionError(1, position, msg)));
+  }
+
+  /**
+   * Record to hold the plan and context to roll after checking the limits.
+   *
+   * @param plan the plan, an error plan if the roll was rejected.
+   * @param context the context.
+   * @param dice the number of dice and results to roll, {@code 0} if the roll was rejected.
+   */
+  record Checked(GenesysRollPlan plan, GenesysRollPlan.RollContext context, long dice) {}
+}
@@ -0,0 +1,106 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+/** Builder class for creating {@link GenesysRollLimits} objects. */
+public class GenesysRollLimitsBuilder {
+
+  /** The default most dice and results a roll may have. */
+  public static final long DEFAULT_MAX_DICE = 1_000_000;
+
+  /** The default most deeply parentheses may be nested. */
+  public static final int DEFAULT_MAX_GROUP_DEPTH = 64;
+
+  /** The default most distinct variables, properties and prompts a roll may resolve. */
+  public static final int DEFAULT_MAX_RESOLVER_CALLS = 256;
+
+  /** The most dice and results a roll may have. */
+  private long maxDice = DEFAULT_MAX_DICE;
+  /** The most deeply parentheses may be nested. */
+  private int maxGroupDepth = DEFAULT_MAX_GROUP_DEPTH;
+  /** The most distinct variables, properties and prompts a roll may resolve. */
+  private int maxResolverCalls = DEFAULT_MAX_RESOLVER_CALLS;
+  /** What to do with a roll that has too many dice and results. */
+  private GenesysRollLimits.Action overDiceLimit = GenesysRollLimits.Action.REJECT;
+
+  /**
+   * Sets the most dice and results a roll may have, defaults to {@link #DEFAULT_MAX_DICE}.
+   *
+   * @param maxDice the most dice and results.
+   * @return this builder.
+   * @throws IllegalArgumentException if the limit is negative or more than {@link
+   *     GenesysRollLimits#MAX_COUNTED_DICE}.
+   */
+  public GenesysRollLimitsBuilder setMaxDice(long maxDice) {
+    if (maxDice < 0 || maxDice > GenesysRollLimits.MAX_COUNTED_DICE) {
+      throw new IllegalArgumentException("Invalid dice limit: " + maxDice);
+    }
+    this.maxDice = maxDice;
+    return this;
+  }
+
+  /**
+   * Sets the most deeply parentheses may be nested, defaults to {@link #DEFAULT_MAX_GROUP_DEPTH}.
+   *
+   * @param maxGroupDepth the most deeply parentheses may be nested.
+   * @return this builder.
+   * @throws IllegalArgumentException if the limit is negative.
+   */
+  public GenesysRollLimitsBuilder setMaxGroupDepth(int maxGroupDepth) {
+    if (maxGroupDepth < 0) {
+      throw new IllegalArgumentException("Group depth limit can not be negative: " + maxGroupDepth);
+    }
+    this.maxGroupDepth = maxGroupDepth;
+    return this;
+  }
+
+  /**
+   * Sets the most distinct variables, properties and prompts a roll may resolve, defaults to
+   * {@link #DEFAULT_MAX_RESOLVER_CALLS}.
+   *
+   * @param maxResolverCalls the most distinct variables, properties and prompts.
+   * @return this builder.
+   * @throws IllegalArgumentException if the limit is negative.
+   */
+  public GenesysRollLimitsBuilder setMaxResolverCalls(int maxResolverCalls) {
+    if (maxResolverCalls < 0) {
+      throw new IllegalArgumentException(
+          "Resolver call limit can not be negative: " + maxResolverCalls);
+    }
+    this.maxResolverCalls = maxResolverCalls;
+    return this;
+  }
+
+  /**
+   * Sets what to do with a roll that has too many dice and results, defaults to {@link
+   * GenesysRollLimits.Action#REJECT}.
+   *
+   * @param overDiceLimit what to do with a roll that has too many dice and results.
+   * @return this builder.
+   */
+  public GenesysRollLimitsBuilder setOverDiceLimit(GenesysRollLimits.Action overDiceLimit) {
+    this.overDiceLimit = overDiceLimit;
+    return this;
+  }
+
+  /**
+   * Builds a {@link GenesysRollLimits} from this builder.
+   *
+   * @return the limits.
+   */
+  public GenesysRollLimits build() {
+    return new GenesysRollLimits(maxDice, maxGroupDepth, maxResolverCalls, overDiceLimit);
+  }
+}
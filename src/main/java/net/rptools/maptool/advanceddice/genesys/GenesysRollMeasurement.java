@@ -0,0 +1,54 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+/**
+ * Record to hold the measurements of a single roll, passed to a {@link GenesysRollMetrics}. Times
+ * are in nanoseconds. The lexer runs on demand as the parser asks for tokens, so lexing and parsing
+ * are measured together.
+ *
+ * @param rollString the string that was rolled.
+ * @param cached {@code true} if the plan was already cached so the string was not parsed.
+ * @param fastPath {@code true} if the string was parsed without the ANTLR parser, {@code false}
+ *     if it was parsed with it or was cached.
+ * @param parseNanos the time taken to get the plan, including lexing and parsing if not cached.
+ * @param resolveNanos the time spent waiting for the variable, property and prompt values.
+ * @param evaluateNanos the time taken to roll the dice.
+ * @param buildNanos the time taken to build the result.
+ * @param diceRolled the number of dice rolled and results added.
+ * @param symbolCount the number of distinct variables, properties and prompts resolved.
+ * @param errorCount the number of errors found while parsing the string.
+ */
+public record GenesysRollMeasurement(
+    String rollString,
+    boolean cached,
+    boolean fastPath,
+    long parseNanos,
+    long resolveNanos,
+    long evaluateNanos,
+    long buildNanos,
+    long diceRolled,
+    int symbolCount,
+    int errorCount) {
+
+  /**
+   * Returns the total time taken by the roll.
+   *
+   * @return the total time in nanoseconds.
+   */
+  public long totalNanos() {
+    return parseNanos + resolveNanos + evaluateNanos + buildNanos;
+  }
+}
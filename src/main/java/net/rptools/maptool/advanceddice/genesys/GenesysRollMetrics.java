@@ -0,0 +1,45 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+/**
+ * Sink for the measurements of each roll made by a {@link GenesysDiceRoller}, e.g. to feed a
+ * metrics library. A sink is called on the thread that made the roll, so it should be quick and
+ * must be thread safe. Rollers given {@link #NONE}, the default, do not measure anything.
+ */
+@FunctionalInterface
+public interface GenesysRollMetrics {
+
+  /** Sink that discards all measurements, rollers given it skip measuring entirely. */
+  GenesysRollMetrics NONE = measurement -> {};
+
+  /**
+   * Records the measurements of a roll.
+   *
+   * @param measurement the measurements.
+   */
+  void record(GenesysRollMeasurement measurement);
+
+  /**
+   * Returns a sink that records each roll as a JDK Flight Recorder event named {@code
+   * net.rptools.advanceddice.GenesysRoll}. Creating the events costs very little when no recording
+   * has the event enabled.
+   *
+   * @return the sink.
+   */
+  static GenesysRollMetrics flightRecorder() {
+    return GenesysRollEvent::commit;
+  }
+}
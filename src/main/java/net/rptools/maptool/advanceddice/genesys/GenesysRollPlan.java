@@ -0,0 +1,744 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+import net.rptools.maptool.advanceddice.DiceExpressionError;
+import net.rptools.maptool.advanceddice.RandomSource;
+
+/**
+ * A pre-parsed Genesys dice expression. The plan holds the resolved structure of the expression
+ * with variables, properties and prompts left open, so it can be rolled any number of times
+ * without lexing or parsing the expression again. Plans are immutable and safe to share between
+ * threads.
+ */
+public final class GenesysRollPlan {
+
+  /** The type of value that determines how many dice or results are added. */
+  public enum CountType {
+    /** A number written in the expression. */
+    LITERAL,
+    /** A variable, e.g. {@code {name}}. */
+    VARIABLE,
+    /** A property, e.g. {@code {@name}}. */
+    PROPERTY,
+    /** A prompt, e.g. {@code {?name}}. */
+    PROMPT
+  }
+
+  /**
+   * Record to hold the number of times a die is rolled or a result added.
+   *
+   * @param type the type of count.
+   * @param name the name of the variable, property or prompt, {@code null} for literals.
+   * @param value the value of a literal count, for other count types the index of the value in the
+   *     slots of a {@link GenesysPreparedRoll} if the count is part of one.
+   */
+  public record Count(CountType type, String name, int value) {
+
+    /** The count used for dice and results that are not preceded by a number. */
+    static final Count ONE = new Count(CountType.LITERAL, null, 1);
+
+    /**
+     * Returns the value of this count.
+     *
+     * @param context the context holding the resolvers for variables, properties and prompts.
+     * @return the value of this count.
+     */
+    int resolve(RollContext context) {
+      if (type != CountType.LITERAL && context.slotValues() != null) {
+        return context.slotValues()[value];
+      }
+      return switch (type) {
+        case LITERAL -> value;
+        case VARIABLE -> context.variableResolver().applyAsInt(name);
+        case PROPERTY -> context.propertyResolver().applyAsInt(name);
+        case PROMPT -> context.promptResolver().applyAsInt(name);
+      };
+    }
+
+    /**
+     * Adds the name of the variable, property or prompt of this count to the names of its type.
+     *
+     * @param names the names of each count type.
+     */
+    void addName(Map<CountType, Set<String>> names) {
+      if (type != CountType.LITERAL) {
+        names.get(type).add(name);
+      }
+    }
+
+    /**
+     * Returns this count with its value taken from a slot, adding the slot if it is new.
+     *
+     * @param slots the slots, in the order they are first used.
+     * @return the count.
+     */
+    Count withSlot(List<GenesysPreparedRoll.Slot> slots) {
+      if (type == CountType.LITERAL) {
+        return this;
+      }
+      var slot = new GenesysPreparedRoll.Slot(type, name);
+      int index = slots.indexOf(slot);
+      if (index < 0) {
+        index = slots.size();
+        slots.add(slot);
+      }
+      return new Count(type, name, index);
+    }
+  }
+
+  /**
+   * Record to hold the values used while evaluating a plan.
+   *
+   * @param variableResolver the function used to resolve variables.
+   * @param propertyResolver the function used to resolve properties.
+   * @param promptResolver the function used to resolve prompts.
+   * @param randomSource the source of random numbers used to roll the dice.
+   * @param summarizeThreshold the number of dice of a type above which they are rolled in bulk.
+   * @param slotValues the values of the slots of a {@link GenesysPreparedRoll}, used instead of the
+   *     resolvers if not {@code null}.
+   */
+  record RollContext(
+      ToIntFunction<String> variableResolver,
+      ToIntFunction<String> propertyResolver,
+      ToIntFunction<String> promptResolver,
+      RandomSource randomSource,
+      int summarizeThreshold,
+      int[] slotValues) {
+
+    /**
+     * Constructor for a context that resolves values with the resolvers.
+     *
+     * @param variableResolver the function used to resolve variables.
+     * @param propertyResolver the function used to resolve properties.
+     * @param promptResolver the function used to resolve prompts.
+     * @param randomSource the source of random numbers used to roll the dice.
+     * @param summarizeThreshold the number of dice of a type above which they are rolled in bulk.
+     */
+    RollContext(
+        ToIntFunction<String> variableResolver,
+        ToIntFunction<String> propertyResolver,
+        ToIntFunction<String> promptResolver,
+        RandomSource randomSource,
+        int summarizeThreshold) {
+      this(
+          variableResolver,
+          propertyResolver,
+          promptResolver,
+          randomSource,
+          summarizeThreshold,
+          null);
+    }
+
+    /**
+     * Returns a copy of this context that uses a different source of random numbers.
+     *
+     * @param randomSource the source of random numbers used to roll the dice.
+     * @return the new context.
+     */
+    RollContext withRandomSource(RandomSource randomSource) {
+      return new RollContext(
+          variableResolver,
+          propertyResolver,
+          promptResolver,
+          randomSource,
+          summarizeThreshold,
+          slotValues);
+    }
+
+    /**
+     * Returns a copy of this context that rolls dice in bulk above a different number.
+     *
+     * @param summarizeThreshold the number of dice of a type above which they are rolled in bulk.
+     * @return the new context.
+     */
+    RollContext withSummarizeThreshold(int summarizeThreshold) {
+      return new RollContext(
+          variableResolver,
+          propertyResolver,
+          promptResolver,
+          randomSource,
+          summarizeThreshold,
+          slotValues);
+    }
+  }
+
+  /** A node in the plan. */
+  sealed interface Node permits Sequence, DiceRoll, FixedResult, Group {
+
+    /**
+     * Evaluates this node, adding its results to the builder.
+     *
+     * @param context the context to evaluate with.
+     * @param builder the builder to add the results to.
+     */
+    void evaluate(RollContext context, GenesysDiceResultBuilder builder);
+
+    /**
+     * Evaluates this node, adding only the totals of its results to the builder.
+     *
+     * @param context the context to evaluate with.
+     * @param counts the builder to add the totals to.
+     */
+    void count(RollContext context, GenesysDiceCountsBuilder counts);
+
+    /**
+     * Adds the dice and fixed results of this node to a pool without rolling anything. Counts that
+     * are negative add nothing, as when rolling.
+     *
+     * @param context the context to resolve counts with.
+     * @param pool the pool, laid out as described in {@link GenesysDicePool#toArray()}.
+     */
+    void collect(RollContext context, int[] pool);
+
+    /**
+     * Adds the names of the variables, properties and prompts used by this node.
+     *
+     * @param names the names of each count type, in the order they are first used.
+     */
+    void addNames(Map<CountType, Set<String>> names);
+
+    /**
+     * Returns this node with the values of its counts taken from slots, see {@link
+     * GenesysPreparedRoll}.
+     *
+     * @param slots the slots, in the order they are first used, new slots are added to it.
+     * @return the node.
+     */
+    Node withSlots(List<GenesysPreparedRoll.Slot> slots);
+
+    /**
+     * Returns the number of dice rolled and results added by this node, without rolling anything.
+     *
+     * @param context the context to resolve counts with.
+     * @return the number of dice and results.
+     */
+    long cost(RollContext context);
+
+    /**
+     * Returns how deeply capture groups are nested in this node.
+     *
+     * @return the depth, {@code 0} if the node has no capture groups.
+     */
+    int groupDepth();
+  }
+
+  /**
+   * A list of rolls, e.g. the whole expression or the contents of a group. The string that
+   * represents the rolls is kept as a range of the expression so no copy is made of it.
+   *
+   * @param source the expression the plan was compiled from.
+   * @param start the index in the expression where the rolls start.
+   * @param end the index in the expression after the end of the rolls.
+   * @param children the rolls in the order they appear in the expression.
+   */
+  record Sequence(String source, int start, int end, List<Node> children) implements Node {
+
+    /**
+     * Returns the string that represents the rolls.
+     *
+     * @return the string that represents the rolls.
+     */
+    String rollString() {
+      return source.substring(start, end);
+    }
+
+    @Override
+    public void evaluate(RollContext context, GenesysDiceResultBuilder builder) {
+      for (var child : children) {
+        child.evaluate(context, builder);
+      }
+    }
+
+    @Override
+    public void count(RollContext context, GenesysDiceCountsBuilder counts) {
+      for (var child : children) {
+        child.count(context, counts);
+      }
+    }
+
+    @Override
+    public void collect(RollContext context, int[] pool) {
+      for (var child : children) {
+        child.collect(context, pool);
+      }
+    }
+
+    @Override
+    public void addNames(Map<CountType, Set<String>> names) {
+      for (var child : children) {
+        child.addNames(names);
+      }
+    }
+
+    @Override
+    public Sequence withSlots(List<GenesysPreparedRoll.Slot> slots) {
+      var slotted = new ArrayList<Node>(children.size());
+      for (var child : children) {
+        slotted.add(child.withSlots(slots));
+      }
+      return new Sequence(source, start, end, slotted);
+    }
+
+    @Override
+    public long cost(RollContext context) {
+      long cost = 0;
+      for (var child : children) {
+        cost += child.cost(context);
+      }
+      return cost;
+    }
+
+    @Override
+    public int groupDepth() {
+      int depth = 0;
+      for (var child : children) {
+        depth = Math.max(depth, child.groupDepth());
+      }
+      return depth;
+    }
+  }
+
+  /**
+   * Rolls a number of dice of the same type.
+   *
+   * @param count the number of dice to roll.
+   * @param diceType the type of dice to roll.
+   */
+  record DiceRoll(Count count, GenesysDiceType diceType) implements Node {
+    @Override
+    public void evaluate(RollContext context, GenesysDiceResultBuilder builder) {
+      int n = count.resolve(context);
+      if (n > context.summarizeThreshold()) {
+        var sides = diceType.rollSides(n, context.randomSource());
+        for (int side = 0; side < sides.length; side++) {
+          builder.addResults(diceType, diceType.getSide(side), sides[side]);
+        }
+        return;
+      }
+      for (int i = 0; i < n; i++) {
+        builder.addResult(diceType, context.randomSource());
+      }
+    }
+
+    @Override
+    public void count(RollContext context, GenesysDiceCountsBuilder counts) {
+      int n = count.resolve(context);
+      if (n > context.summarizeThreshold()) {
+        var sides = diceType.rollSides(n, context.randomSource());
+        for (int side = 0; side < sides.length; side++) {
+          counts.add(diceType.getSide(side), sides[side]);
+        }
+        return;
+      }
+      for (int i = 0; i < n; i++) {
+        counts.add(diceType.roll(context.randomSource()));
+      }
+    }
+
+    @Override
+    public void collect(RollContext context, int[] pool) {
+      pool[diceType.ordinal()] += Math.max(0, count.resolve(context));
+    }
+
+    @Override
+    public void addNames(Map<CountType, Set<String>> names) {
+      count.addName(names);
+    }
+
+    @Override
+    public DiceRoll withSlots(List<GenesysPreparedRoll.Slot> slots) {
+      return new DiceRoll(count.withSlot(slots), diceType);
+    }
+
+    @Override
+    public long cost(RollContext context) {
+      return Math.max(0, count.resolve(context));
+    }
+
+    @Override
+    public int groupDepth() {
+      return 0;
+    }
+  }
+
+  /**
+   * Adds a number of results that were not rolled.
+   *
+   * @param count the number of results to add.
+   * @param resultType the type of result to add.
+   */
+  record FixedResult(Count count, GenesysResultType resultType) implements Node {
+    @Override
+    public void evaluate(RollContext context, GenesysDiceResultBuilder builder) {
+      int n = count.resolve(context);
+      if (n > context.summarizeThreshold()) {
+        builder.addResults(GenesysDiceType.NONE, resultType, n);
+        return;
+      }
+      for (int i = 0; i < n; i++) {
+        builder.addResult(resultType);
+      }
+    }
+
+    @Override
+    public void count(RollContext context, GenesysDiceCountsBuilder counts) {
+      counts.add(resultType, Math.max(0, count.resolve(context)));
+    }
+
+    @Override
+    public void collect(RollContext context, int[] pool) {
+      pool[GenesysDicePool.DICE_TYPES + resultType.ordinal()] +=
+          Math.max(0, count.resolve(context));
+    }
+
+    @Override
+    public void addNames(Map<CountType, Set<String>> names) {
+      count.addName(names);
+    }
+
+    @Override
+    public FixedResult withSlots(List<GenesysPreparedRoll.Slot> slots) {
+      return new FixedResult(count.withSlot(slots), resultType);
+    }
+
+    @Override
+    public long cost(RollContext context) {
+      return Math.max(0, count.resolve(context));
+    }
+
+    @Override
+    public int groupDepth() {
+      return 0;
+    }
+  }
+
+  /**
+   * A named capture group.
+   *
+   * @param name the name of the group.
+   * @param body the rolls inside the group.
+   */
+  record Group(String name, Sequence body) implements Node {
+    @Override
+    public void evaluate(RollContext context, GenesysDiceResultBuilder builder) {
+      var groupBuilder = new GenesysDiceResultBuilder();
+      body.evaluate(context, groupBuilder);
+      builder.addGroup(name, groupBuilder.setRollString(body.source(), body.start(), body.end()));
+    }
+
+    @Override
+    public void count(RollContext context, GenesysDiceCountsBuilder counts) {
+      body.count(context, counts);
+    }
+
+    @Override
+    public void collect(RollContext context, int[] pool) {
+      body.collect(context, pool);
+    }
+
+    @Override
+    public void addNames(Map<CountType, Set<String>> names) {
+      body.addNames(names);
+    }
+
+    @Override
+    public Group withSlots(List<GenesysPreparedRoll.Slot> slots) {
+      return new Group(name, body.withSlots(slots));
+    }
+
+    @Override
+    public long cost(RollContext context) {
+      return body.cost(context);
+    }
+
+    @Override
+    public int groupDepth() {
+      return 1 + body.groupDepth();
+    }
+  }
+
+  /** The string the plan was compiled from. */
+  private final String rollString;
+
+  /** The root of the plan, {@code null} if the expression contained errors. */
+  private final Sequence root;
+
+  /** The string that represents the rolls of the root, kept to avoid copying it for each roll. */
+  private final String rootRollString;
+
+  /** The errors that occurred while parsing the expression. */
+  private final List<DiceExpressionError> errors;
+
+  /** The names of the variables, properties and prompts used, in the order they are first used. */
+  private final Map<CountType, Set<String>> names;
+
+  /** How deeply capture groups are nested in the expression. */
+  private final int groupDepth;
+
+  /** The canonical pool, {@code null} if it depends on the values of any names. */
+  private final GenesysDicePool pool;
+
+  /**
+   * Constructor.
+   *
+   * @param rollString the string the plan was compiled from.
+   * @param root the root of the plan.
+   * @param errors the errors that occurred while parsing the expression.
+   */
+  private GenesysRollPlan(String rollString, Sequence root, List<DiceExpressionError> errors) {
+    this.rollString = rollString;
+    this.root = root;
+    this.rootRollString = root == null ? rollString : root.rollString();
+    this.errors = List.copyOf(errors);
+    this.names = new EnumMap<>(CountType.class);
+    for (var type : CountType.values()) {
+      names.put(type, new LinkedHashSet<>());
+    }
+    if (root != null) {
+      root.addNames(names);
+    }
+    names.replaceAll((type, typeNames) -> Collections.unmodifiableSet(typeNames));
+    this.groupDepth = root == null ? 0 : root.groupDepth();
+    boolean literal = names.values().stream().allMatch(Set::isEmpty);
+    // Literal counts never call the resolvers or need a random source
+    this.pool =
+        root != null && literal
+            ? GenesysDicePool.of(root, new RollContext(null, null, null, null, Integer.MAX_VALUE))
+            : null;
+  }
+
+  /**
+   * Creates a plan for an expression that parsed without errors.
+   *
+   * @param rollString the string the plan was compiled from.
+   * @param root the root of the plan.
+   * @return the plan.
+   */
+  static GenesysRollPlan of(String rollString, Sequence root) {
+    return new GenesysRollPlan(rollString, root, List.of());
+  }
+
+  /**
+   * Creates a plan for an expression that could not be parsed.
+   *
+   * @param rollString the string the plan was compiled from.
+   * @param errors the errors that occurred while parsing the expression.
+   * @return the plan.
+   */
+  static GenesysRollPlan error(String rollString, List<DiceExpressionError> errors) {
+    return new GenesysRollPlan(rollString, null, errors);
+  }
+
+  /**
+   * Returns the string the plan was compiled from.
+   *
+   * @return the string the plan was compiled from.
+   */
+  public String getRollString() {
+    return rollString;
+  }
+
+  /**
+   * Returns if any errors occurred while parsing the expression.
+   *
+   * @return {@code true} if any errors occurred while parsing the expression.
+   */
+  public boolean hasErrors() {
+    return !errors.isEmpty();
+  }
+
+  /**
+   * Returns the errors that occurred while parsing the expression.
+   *
+   * @return the errors that occurred while parsing the expression.
+   */
+  public List<DiceExpressionError> getErrors() {
+    return errors;
+  }
+
+  /**
+   * Returns the names of the variables, properties or prompts used by the expression, each name
+   * only once and in the order they are first used. There are never any names for {@link
+   * CountType#LITERAL}.
+   *
+   * @param type the type of count to return the names of.
+   * @return the names.
+   */
+  public Set<String> getNames(CountType type) {
+    return names.get(type);
+  }
+
+  /**
+   * Returns how deeply capture groups are nested in the expression.
+   *
+   * @return the depth, {@code 0} if the expression has no capture groups.
+   */
+  public int getGroupDepth() {
+    return groupDepth;
+  }
+
+  /**
+   * Returns the canonical pool of the expression, the same for every expression that rolls the
+   * same dice and adds the same results, see {@link GenesysDicePool}. It is computed when the plan
+   * is created.
+   *
+   * @return the pool, {@code null} if the expression contained errors, uses any variables,
+   *     properties or prompts, or has too many dice for a pool.
+   */
+  public GenesysDicePool getPool() {
+    return pool;
+  }
+
+  /**
+   * Returns the number of dice the plan rolls and results it adds, without rolling anything.
+   *
+   * @param context the context holding the resolvers.
+   * @return the number of dice and results, {@code 0} if the expression contained errors.
+   */
+  long cost(RollContext context) {
+    return hasErrors() ? 0 : root.cost(context);
+  }
+
+  /**
+   * Returns the root of the plan.
+   *
+   * @return the root of the plan, {@code null} if the expression contained errors.
+   */
+  Sequence getRoot() {
+    return root;
+  }
+
+  /**
+   * Rolls the plan.
+   *
+   * @param context the context holding the resolvers and random source.
+   * @return the result of the roll.
+   */
+  GenesysDiceResult roll(RollContext context) {
+    return rollWithSeed(context, null);
+  }
+
+  /**
+   * Rolls the plan, recording what is needed to roll it again in the result.
+   *
+   * @param context the context holding the resolvers and random source.
+   * @param seed what is needed to roll the result again, {@code null} if it was not seeded.
+   * @return the result of the roll.
+   */
+  GenesysDiceResult rollWithSeed(RollContext context, GenesysDiceResult.Seed seed) {
+    if (hasErrors()) {
+      return GenesysDiceResult.error(rollString, errors);
+    }
+    var builder = new GenesysDiceResultBuilder();
+    root.evaluate(context, builder);
+    return builder.setRollString(root.source(), root.start(), root.end()).setSeed(seed).build();
+  }
+
+  /**
+   * Rolls the plan, measuring the time taken to roll the dice and build the result.
+   *
+   * @param context the context holding the resolvers and random source.
+   * @param recorder the recorder the times are added to.
+   * @return the result of the roll.
+   */
+  GenesysDiceResult roll(RollContext context, GenesysRollRecorder recorder) {
+    if (hasErrors()) {
+      return GenesysDiceResult.error(rollString, errors);
+    }
+    var builder = new GenesysDiceResultBuilder();
+    long start = System.nanoTime();
+    root.evaluate(context, builder);
+    long evaluated = System.nanoTime();
+    var result = builder.setRollString(root.source(), root.start(), root.end()).build();
+    recorder.evaluateNanos = evaluated - start;
+    recorder.buildNanos = System.nanoTime() - evaluated;
+    return result;
+  }
+
+  /**
+   * Rolls the plan keeping only the totals of the results, measuring the time taken.
+   *
+   * @param context the context holding the resolvers and random source.
+   * @param recorder the recorder the time is added to.
+   * @return the totals of the roll.
+   */
+  GenesysDiceCounts rollCounts(RollContext context, GenesysRollRecorder recorder) {
+    long start = System.nanoTime();
+    var counts = rollCounts(context);
+    recorder.evaluateNanos = System.nanoTime() - start;
+    return counts;
+  }
+
+  /**
+   * Rolls the plan keeping only the totals of the results.
+   *
+   * @param context the context holding the resolvers and random source.
+   * @return the totals of the roll.
+   */
+  GenesysDiceCounts rollCounts(RollContext context) {
+    if (hasErrors()) {
+      return GenesysDiceCounts.error(rollString, errors);
+    }
+    var counts = new GenesysDiceCountsBuilder();
+    root.count(context, counts);
+    return counts.setRollString(rootRollString).build();
+  }
+
+  /**
+   * Rolls the plan a number of times keeping only the totals of each roll.
+   *
+   * @param trialCount the number of times to roll.
+   * @param context the context holding the resolvers and random source, the resolvers should be
+   *     memoized so each value is the same for every roll.
+   * @return the totals of each roll.
+   */
+  GenesysDiceBatchResult rollBatch(int trialCount, RollContext context) {
+    if (trialCount < 0) {
+      throw new IllegalArgumentException("Number of rolls can not be negative: " + trialCount);
+    }
+    if (hasErrors()) {
+      return new GenesysDiceBatchResult(rollString, 0, errors);
+    }
+    var result = new GenesysDiceBatchResult(rootRollString, trialCount, List.of());
+    var counts = new GenesysDiceCountsBuilder();
+    for (int i = 0; i < trialCount; i++) {
+      root.count(context, counts.reset());
+      result.set(i, counts);
+    }
+    return result;
+  }
+
+  /**
+   * Returns a resolver that calls the specified resolver only once for each name. The returned
+   * resolver is safe to share between threads.
+   *
+   * @param resolver the resolver to call.
+   * @return the memoizing resolver.
+   */
+  static ToIntFunction<String> memoize(ToIntFunction<String> resolver) {
+    var values = new ConcurrentHashMap<String, Integer>();
+    return name -> values.computeIfAbsent(name, resolver::applyAsInt);
+  }
+}
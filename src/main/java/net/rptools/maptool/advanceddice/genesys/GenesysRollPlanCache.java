@@ -0,0 +1,149 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Bounded, thread safe, least recently used cache of {@link GenesysRollPlan}s keyed by the roll
+ * string they were compiled from.
+ */
+public class GenesysRollPlanCache {
+
+  /** The default maximum number of plans held by a cache. */
+  public static final int DEFAULT_MAX_SIZE = 256;
+
+  /** The maximum number of plans held, {@code 0} disables caching. */
+  private final int maxSize;
+
+  /** The cached plans, in least to most recently used order. */
+  private final LinkedHashMap<String, GenesysRollPlan> plans;
+
+  /** The number of lookups that found a cached plan. */
+  private long hitCount;
+
+  /** The number of lookups that had to compile a plan. */
+  private long missCount;
+
+  /** The number of plans removed to make room for newer ones. */
+  private long evictionCount;
+
+  /** Creates a cache holding up to {@link #DEFAULT_MAX_SIZE} plans. */
+  public GenesysRollPlanCache() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param maxSize the maximum number of plans held, {@code 0} disables caching.
+   */
+  public GenesysRollPlanCache(int maxSize) {
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("Cache size can not be negative: " + maxSize);
+    }
+    this.maxSize = maxSize;
+    this.plans =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, GenesysRollPlan> eldest) {
+            if (size() > GenesysRollPlanCache.this.maxSize) {
+              evictionCount++;
+              return true;
+            }
+            return false;
+          }
+        };
+  }
+
+  /**
+   * Returns the plan for the roll string, compiling and caching it if it is not already cached.
+   *
+   * @param rollString the roll string.
+   * @param compiler the function used to compile the roll string on a cache miss.
+   * @return the plan for the roll string.
+   */
+  public GenesysRollPlan get(String rollString, Function<String, GenesysRollPlan> compiler) {
+    synchronized (this) {
+      var plan = plans.get(rollString);
+      if (plan != null) {
+        hitCount++;
+        return plan;
+      }
+      missCount++;
+    }
+
+    // Compile outside the lock so a slow parse does not hold up other threads
+    var plan = compiler.apply(rollString);
+    if (maxSize > 0) {
+      synchronized (this) {
+        plans.putIfAbsent(rollString, plan);
+      }
+    }
+    return plan;
+  }
+
+  /** Removes all the plans from the cache. The hit, miss and eviction counts are not reset. */
+  public synchronized void clear() {
+    plans.clear();
+  }
+
+  /**
+   * Returns the maximum number of plans held by the cache.
+   *
+   * @return the maximum number of plans held by the cache.
+   */
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Returns the number of plans currently held by the cache.
+   *
+   * @return the number of plans currently held by the cache.
+   */
+  public synchronized int getSize() {
+    return plans.size();
+  }
+
+  /**
+   * Returns the number of lookups that found a cached plan.
+   *
+   * @return the number of lookups that found a cached plan.
+   */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Returns the number of lookups that had to compile a plan.
+   *
+   * @return the number of lookups that had to compile a plan.
+   */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * Returns the number of plans removed to make room for newer ones.
+   *
+   * @return the number of plans removed to make room for newer ones.
+   */
+  public synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import java.util.ArrayList;
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.Count;
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.CountType;
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.DiceRoll;
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.FixedResult;
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.Group;
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.Node;
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.Sequence;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.AbilityDiceContext;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.AdvantageContext;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.BoostDiceContext;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.ChallengeDiceContext;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.DarkContext;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.DespairContext;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.DifficultyDiceContext;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.FailureContext;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.ForceDiceContext;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.GenesysFunctionContext;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.GenesysMultipleDiceResultsContext;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.GenesysMultipleRollContext;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.GenesysNumberDiceContext;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.GenesysRollsContext;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.GroupedGenesysRollContext;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.LightContext;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.ProficiencyDiceContext;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.SetbackDiceContext;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.StartGenesysContext;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.SuccessContext;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.ThreatContext;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser.TriumphContext;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParserBaseVisitor;
+import org.antlr.v4.runtime.tree.ErrorNode;
+
+/** Tree visitor that compiles the syntax tree built by the parser into a roll plan. */
+public class GenesysRollPlanVisitor extends GenesysDiceParserBaseVisitor<Node> {
+
+  /** The expression being compiled. */
+  private final String rollString;
+
+  /** If every character of the expression is a single code point, so token indexes are offsets. */
+  private final boolean singleCharCodePoints;
+
+  /**
+   * Constructor.
+   *
+   * @param rollString the expression being compiled, roll strings in the plan are ranges of it.
+   */
+  public GenesysRollPlanVisitor(String rollString) {
+    this.rollString = rollString;
+    this.singleCharCodePoints =
+        rollString.codePointCount(0, rollString.length()) == rollString.length();
+  }
+
+  @Override
+  public Node visitStartGenesys(StartGenesysContext ctx) {
+    return visit(ctx.genesysRolls());
+  }
+
+  @Override
+  public Node visitGenesysRolls(GenesysRollsContext ctx) {
+    var children = new ArrayList<Node>();
+    for (var roll : ctx.genesysRoll()) {
+      var child = visit(roll);
+      if (child != null) {
+        children.add(child);
+      }
+    }
+    if (ctx.stop == null || ctx.stop.getStopIndex() < ctx.start.getStartIndex()) {
+      return new Sequence(rollString, 0, 0, children); // Empty list of rolls
+    }
+    int start = toOffset(ctx.start.getStartIndex());
+    int end = toOffset(ctx.stop.getStopIndex() + 1);
+    return new Sequence(rollString, start, end, children);
+  }
+
+  @Override
+  public Node visitGenesysMultipleRoll(GenesysMultipleRollContext ctx) {
+    var single = (DiceRoll) visit(ctx.genesysDiceType());
+    return new DiceRoll(ctx.num == null ? Count.ONE : getCount(ctx.num), single.diceType());
+  }
+
+  @Override
+  public Node visitGenesysMultipleDiceResults(GenesysMultipleDiceResultsContext ctx) {
+    var single = (FixedResult) visit(ctx.genesysDiceResults());
+    return new FixedResult(ctx.num == null ? Count.ONE : getCount(ctx.num), single.resultType());
+  }
+
+  @Override
+  public Node visitGroupedGenesysRoll(GroupedGenesysRollContext ctx) {
+    var body = (Sequence) visit(ctx.genesysRolls());
+    if (ctx.groupName() == null) {
+      // Parentheses without a name do not capture anything, so just roll their contents
+      return body;
+    }
+    return new Group(ctx.groupName().getText().replaceAll(":$", ""), body);
+  }
+
+  @Override
+  public Node visitProficiencyDice(ProficiencyDiceContext ctx) {
+    return new DiceRoll(Count.ONE, GenesysDiceType.PROFICIENCY);
+  }
+
+  @Override
+  public Node visitChallengeDice(ChallengeDiceContext ctx) {
+    return new DiceRoll(Count.ONE, GenesysDiceType.CHALLENGE);
+  }
+
+  @Override
+  public Node visitBoostDice(BoostDiceContext ctx) {
+    return new DiceRoll(Count.ONE, GenesysDiceType.BOOST);
+  }
+
+  @Override
+  public Node visitSetbackDice(SetbackDiceContext ctx) {
+    return new DiceRoll(Count.ONE, GenesysDiceType.SETBACK);
+  }
+
+  @Override
+  public Node visitAbilityDice(AbilityDiceContext ctx) {
+    return new DiceRoll(Count.ONE, GenesysDiceType.ABILITY);
+  }
+
+  @Override
+  public Node visitDifficultyDice(DifficultyDiceContext ctx) {
+    return new DiceRoll(Count.ONE, GenesysDiceType.DIFFICULTY);
+  }
+
+  @Override
+  public Node visitForceDice(ForceDiceContext ctx) {
+    return new DiceRoll(Count.ONE, GenesysDiceType.FORCE);
+  }
+
+  @Override
+  public Node visitSuccess(SuccessContext ctx) {
+    return new FixedResult(Count.ONE, GenesysResultType.SUCCESS);
+  }
+
+  @Override
+  public Node visitFailure(FailureContext ctx) {
+    return new FixedResult(Count.ONE, GenesysResultType.FAILURE);
+  }
+
+  @Override
+  public Node visitTriumph(TriumphContext ctx) {
+    return new FixedResult(Count.ONE, GenesysResultType.TRIUMPH);
+  }
+
+  @Override
+  public Node visitDespair(DespairContext ctx) {
+    return new FixedResult(Count.ONE, GenesysResultType.DESPAIR);
+  }
+
+  @Override
+  public Node visitAdvantage(AdvantageContext ctx) {
+    return new FixedResult(Count.ONE, GenesysResultType.ADVANTAGE);
+  }
+
+  @Override
+  public Node visitThreat(ThreatContext ctx) {
+    return new FixedResult(Count.ONE, GenesysResultType.THREAT);
+  }
+
+  @Override
+  public Node visitLight(LightContext ctx) {
+    return new FixedResult(Count.ONE, GenesysResultType.LIGHT);
+  }
+
+  @Override
+  public Node visitDark(DarkContext ctx) {
+    return new FixedResult(Count.ONE, GenesysResultType.DARK);
+  }
+
+  @Override
+  public Node visitGenesysFunction(GenesysFunctionContext ctx) {
+    // Functions do not contribute to the roll yet
+    return null;
+  }
+
+  @Override
+  public Node visitErrorNode(ErrorNode node) {
+    var text = node.getText();
+    throw new IllegalArgumentException("Invalid roll: " + text);
+  }
+
+  /**
+   * Returns the count represented by the specified context.
+   *
+   * @param num the context to get the count from.
+   * @return the count represented by the specified context.
+   */
+  private Count getCount(GenesysNumberDiceContext num) {
+    if (num.INTEGER_LITERAL() != null) {
+      return new Count(
+          CountType.LITERAL, null, Integer.parseInt(num.INTEGER_LITERAL().getText()));
+    } else if (num.VARIABLE() != null) {
+      return new Count(CountType.VARIABLE, stripBraces(num.VARIABLE().getText(), 1), 0);
+    } else if (num.PROPERTY() != null) {
+      return new Count(CountType.PROPERTY, stripBraces(num.PROPERTY().getText(), 2), 0);
+    } else if (num.PROMPT() != null) {
+      return new Count(CountType.PROMPT, stripBraces(num.PROMPT().getText(), 2), 0);
+    } else {
+      throw new IllegalArgumentException("Unknown number type"); // Shouldn't happen
+    }
+  }
+
+  /**
+   * Removes the opening brace (and marker character) and closing brace from a symbol.
+   *
+   * @param text the text of the symbol, e.g. {@code {@name}}.
+   * @param prefixLength the number of characters to remove from the start.
+   * @return the name of the symbol.
+   */
+  private String stripBraces(String text, int prefixLength) {
+    return text.substring(prefixLength, text.length() - 1);
+  }
+
+  /**
+   * Converts an index in the token stream, which counts code points, to an offset in the
+   * expression.
+   *
+   * @param index the index in the token stream.
+   * @return the offset in the expression.
+   */
+  private int toOffset(int index) {
+    return singleCharCodePoints ? index : rollString.offsetByCodePoints(0, index);
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.CountType;
+
+/** Collects the measurements of a roll as it is made, for a {@link GenesysRollMetrics}. */
+final class GenesysRollRecorder {
+
+  /** If the plan was already cached. */
+  boolean cached = true;
+
+  /** If the string was parsed without the ANTLR parser. */
+  boolean fastPath;
+
+  /** The time taken to get the plan, including lexing and parsing if not cached. */
+  long parseNanos;
+
+  /** The time spent waiting for the variable, property and prompt values. */
+  long resolveNanos;
+
+  /** The time taken to roll the dice. */
+  long evaluateNanos;
+
+  /** The time taken to build the result. */
+  long buildNanos;
+
+  /**
+   * Returns the measurements of the roll.
+   *
+   * @param rollString the string that was rolled.
+   * @param plan the plan that was rolled.
+   * @param diceRolled the number of dice and results rolled, as found when the limits were checked.
+   * @return the measurements.
+   */
+  GenesysRollMeasurement finish(String rollString, GenesysRollPlan plan, long diceRolled) {
+    int symbolCount =
+        plan.getNames(CountType.VARIABLE).size()
+            + plan.getNames(CountType.PROPERTY).size()
+            + plan.getNames(CountType.PROMPT).size();
+    return new GenesysRollMeasurement(
+        rollString,
+        cached,
+        fastPath,
+        parseNanos,
+        resolveNanos,
+        evaluateNanos,
+        buildNanos,
+        diceRolled,
+        symbolCount,
+        plan.getErrors().size());
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import java.util.Arrays;
+
+/**
+ * Class that represents the result of simulating a Genesys dice roll many times. For each count
+ * type a histogram records how many trials rolled each total.
+ */
+public class GenesysSimulationResult {
+
+  /** The z value for a 95% confidence interval. */
+  private static final double Z_95 = 1.959963984540054;
+
+  /**
+   * Record to hold a confidence interval.
+   *
+   * @param lower the lower bound.
+   * @param upper the upper bound.
+   */
+  public record ConfidenceInterval(double lower, double upper) {}
+
+  /** The String that describes the dice that were rolled. */
+  private final String rollString;
+
+  /** The number of trials. */
+  private final long trialCount;
+
+  /** The number of trials that rolled each total, indexed by count type ordinal then total. */
+  private final long[][] histograms;
+
+  /**
+   * Constructor.
+   *
+   * @param rollString the string representing the roll.
+   * @param trialCount the number of trials.
+   * @param histograms the histograms, indexed by count type ordinal then total.
+   */
+  GenesysSimulationResult(String rollString, long trialCount, long[][] histograms) {
+    this.rollString = rollString;
+    this.trialCount = trialCount;
+    this.histograms = histograms;
+  }
+
+  /**
+   * Returns the string representing the roll.
+   *
+   * @return the string representing the roll.
+   */
+  public String getRollString() {
+    return rollString;
+  }
+
+  /**
+   * Returns the number of trials.
+   *
+   * @return the number of trials.
+   */
+  public long getTrialCount() {
+    return trialCount;
+  }
+
+  /**
+   * Returns the histogram for a count type, the value at each index is the number of trials that
+   * rolled that total.
+   *
+   * @param countType the count type.
+   * @return the histogram.
+   */
+  public long[] getHistogram(GenesysCountType countType) {
+    return Arrays.copyOf(histograms[countType.ordinal()], histograms[countType.ordinal()].length);
+  }
+
+  /**
+   * Returns the estimated probability of rolling at least the specified total.
+   *
+   * @param countType the count type.
+   * @param minTotal the minimum total.
+   * @return the estimated probability.
+   */
+  public double getProbabilityAtLeast(GenesysCountType countType, int minTotal) {
+    return (double) countAtLeast(countType, minTotal) / trialCount;
+  }
+
+  /**
+   * Returns the 95% confidence interval of the probability of rolling at least the specified
+   * total, using the Wilson score interval.
+   *
+   * @param countType the count type.
+   * @param minTotal the minimum total.
+   * @return the confidence interval.
+   */
+  public ConfidenceInterval getProbabilityAtLeastInterval(
+      GenesysCountType countType, int minTotal) {
+    double n = trialCount;
+    double p = countAtLeast(countType, minTotal) / n;
+    double z2 = Z_95 * Z_95;
+    double centre = (p + z2 / (2 * n)) / (1 + z2 / n);
+    double halfWidth = Z_95 / (1 + z2 / n) * Math.sqrt(p * (1 - p) / n + z2 / (4 * n * n));
+    return new ConfidenceInterval(centre - halfWidth, centre + halfWidth);
+  }
+
+  /**
+   * Returns the mean total of a count type.
+   *
+   * @param countType the count type.
+   * @return the mean.
+   */
+  public double getMean(GenesysCountType countType) {
+    var histogram = histograms[countType.ordinal()];
+    double sum = 0;
+    for (int total = 0; total < histogram.length; total++) {
+      sum += (double) total * histogram[total];
+    }
+    return sum / trialCount;
+  }
+
+  /**
+   * Returns the sample standard deviation of the total of a count type.
+   *
+   * @param countType the count type.
+   * @return the standard deviation.
+   */
+  public double getStandardDeviation(GenesysCountType countType) {
+    if (trialCount < 2) {
+      return 0;
+    }
+    var histogram = histograms[countType.ordinal()];
+    double mean = getMean(countType);
+    double sumSquares = 0;
+    for (int total = 0; total < histogram.length; total++) {
+      sumSquares += (total - mean) * (total - mean) * histogram[total];
+    }
+    return Math.sqrt(sumSquares / (trialCount - 1));
+  }
+
+  /**
+   * Returns the 95% confidence interval of the mean total of a count type.
+   *
+   * @param countType the count type.
+   * @return the confidence interval.
+   */
+  public ConfidenceInterval getMeanInterval(GenesysCountType countType) {
+    double mean = getMean(countType);
+    double halfWidth = Z_95 * getStandardDeviation(countType) / Math.sqrt(trialCount);
+    return new ConfidenceInterval(mean - halfWidth, mean + halfWidth);
+  }
+
+  /**
+   * Returns the number of trials that rolled at least the specified total.
+   *
+   * @param countType the count type.
+   * @param minTotal the minimum total.
+   * @return the number of trials.
+   */
+  private long countAtLeast(GenesysCountType countType, int minTotal) {
+    var histogram = histograms[countType.ordinal()];
+    long count = 0;
+    for (int total = Math.max(minTotal, 0); total < histogram.length; total++) {
+      count += histogram[total];
+    }
+    return count;
+  }
+}
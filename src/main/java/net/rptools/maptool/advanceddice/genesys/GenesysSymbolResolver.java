@@ -0,0 +1,64 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import java.util.Map;
+import java.util.Set;
+import net.rptools.maptool.advanceddice.genesys.GenesysRollPlan.CountType;
+
+/**
+ * Resolves all the variables, properties and prompts of a roll in a single call, for callers where
+ * each lookup is expensive, e.g. because it has to take a lock. The resolver is given each distinct
+ * name once, however many times it is used in the expression.
+ */
+@FunctionalInterface
+public interface GenesysSymbolResolver {
+
+  /** The prefix of property keys in the map of resolved values. */
+  String PROPERTY_PREFIX = "@";
+
+  /** The prefix of prompt keys in the map of resolved values. */
+  String PROMPT_PREFIX = "?";
+
+  /**
+   * Returns the values of the variables, properties and prompts used by a roll. The values are
+   * keyed the way they are written in the expression without the braces, so a variable is keyed
+   * by its name, a property by its name prefixed with {@link #PROPERTY_PREFIX} and a prompt by its
+   * name prefixed with {@link #PROMPT_PREFIX}. See {@link #key(CountType, String)}.
+   *
+   * @param variables the names of the variables, in the order they are first used.
+   * @param properties the names of the properties, in the order they are first used.
+   * @param prompts the names of the prompts, in the order they are first used.
+   * @return the values, keyed as described above.
+   */
+  Map<String, Integer> resolve(Set<String> variables, Set<String> properties, Set<String> prompts);
+
+  /**
+   * Returns the key of a variable, property or prompt in the map of resolved values.
+   *
+   * @param type the type of count, must not be {@link CountType#LITERAL}.
+   * @param name the name of the variable, property or prompt.
+   * @return the key.
+   * @throws IllegalArgumentException if the type is {@link CountType#LITERAL}.
+   */
+  static String key(CountType type, String name) {
+    return switch (type) {
+      case VARIABLE -> name;
+      case PROPERTY -> PROPERTY_PREFIX + name;
+      case PROMPT -> PROMPT_PREFIX + name;
+      case LITERAL -> throw new IllegalArgumentException("Literals do not have a key");
+    };
+  }
+}
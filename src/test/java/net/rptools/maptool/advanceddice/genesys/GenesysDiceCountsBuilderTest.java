@@ -0,0 +1,67 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests that totals of dice rolled in bulk are exact up to the largest {@code int}. */
+class GenesysDiceCountsBuilderTest {
+
+  /** The most dice rolled in bulk whose faces of two symbols still fit in the totals. */
+  private static final int MAX_DOUBLES = Integer.MAX_VALUE / 2;
+
+  /** Checks a result added many times is totalled up to the largest int and no further. */
+  @Test
+  void totalsOverflowAtIntBoundary() {
+    var counts = new GenesysDiceCountsBuilder().add(GenesysResultType.SUCCESS_SUCCESS, MAX_DOUBLES);
+    assertEquals(Integer.MAX_VALUE - 1, counts.getSuccessCount());
+    counts.add(GenesysResultType.TRIUMPH, 1);
+    assertEquals(Integer.MAX_VALUE, counts.getSuccessCount());
+    assertEquals(1, counts.getTriumphCount());
+    assertThrows(ArithmeticException.class, () -> counts.add(GenesysResultType.SUCCESS, 1));
+    assertThrows(
+        ArithmeticException.class,
+        () ->
+            new GenesysDiceCountsBuilder()
+                .add(GenesysResultType.SUCCESS_SUCCESS, MAX_DOUBLES + 1));
+  }
+
+  /** Checks the totals of a result with dice rolled in bulk are exact at the int boundary. */
+  @Test
+  void summarizedTotalsOverflowAtIntBoundary() {
+    var result =
+        new GenesysDiceResultBuilder()
+            .addResults(
+                GenesysDiceType.PROFICIENCY, GenesysResultType.SUCCESS_SUCCESS, MAX_DOUBLES)
+            .addResult(GenesysDiceType.PROFICIENCY, GenesysResultType.SUCCESS)
+            .build();
+    assertEquals(Integer.MAX_VALUE, result.getSuccessCount());
+    assertEquals(MAX_DOUBLES, result.getNumberOfResult(GenesysResultType.SUCCESS_SUCCESS));
+    var overflowing =
+        new GenesysDiceResultBuilder()
+            .addResults(
+                GenesysDiceType.PROFICIENCY, GenesysResultType.SUCCESS_SUCCESS, MAX_DOUBLES + 1)
+            .build();
+    assertThrows(ArithmeticException.class, overflowing::getSuccessCount);
+    var builder =
+        new GenesysDiceResultBuilder()
+            .addResults(GenesysDiceType.ABILITY, GenesysResultType.SUCCESS, Integer.MAX_VALUE)
+            .addResults(GenesysDiceType.PROFICIENCY, GenesysResultType.SUCCESS, 1);
+    assertThrows(ArithmeticException.class, builder::build);
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToIntFunction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/** Tests that {@link GenesysDicePool} is the same however an expression is written. */
+class GenesysDicePoolTest {
+
+  /** Resolver used for all variables, properties and prompts. */
+  private static final ToIntFunction<String> RESOLVER = n -> 2;
+
+  /** The roller used to get pools. */
+  private final GenesysDiceRoller roller = new GenesysDiceRoller();
+
+  /**
+   * Returns expressions that are all the same pool, two proficiency dice and an ability die.
+   *
+   * @return the expressions.
+   */
+  static List<String> samePool() {
+    return List.of(
+        "2y1g", "g2y", "(1y)(1y)g", "(a:y)(b:y)green", "yellow,proficiency,green", "{var}y1g");
+  }
+
+  /**
+   * Returns expressions with dice and fixed results, whose pools are rolled again from their
+   * strings.
+   *
+   * @return the expressions.
+   */
+  static List<String> corpus() {
+    return List.of(
+        "y",
+        "3g2y1p1r",
+        "2y3g{@skill}p{var}b{?prompt}k",
+        "yellow,green,purple,red,blue,black,white,success,advantage,threat",
+        "2success 3triumph 1despair g",
+        "light dark 2w",
+        "(a:2y(b:g(c:p(d:r(e:3g2y)))))",
+        "250y250g250p250r");
+  }
+
+  /**
+   * Checks expressions for the same pool have the same canonical string, are equal and hash the
+   * same.
+   *
+   * @param expr the expression.
+   */
+  @ParameterizedTest
+  @MethodSource("samePool")
+  void samePoolIsEqual(String expr) {
+    var expected = pool("1g2y");
+    var pool = pool(expr);
+    assertEquals("1g2y", pool.toString(), () -> "Pool of '" + expr + "'");
+    assertEquals(expected, pool, () -> "Pool of '" + expr + "'");
+    assertEquals(expected.hashCode(), pool.hashCode(), () -> "Hash of '" + expr + "'");
+  }
+
+  /** Checks every order of the same dice and results gives equal pools. */
+  @Test
+  void permutationsAreEqual() {
+    var parts = List.of("2y", "g", "3p", "success", "k", "threat");
+    var expected = pool(String.join(" ", parts));
+    for (var permutation : permutations(parts)) {
+      var expr = String.join(" ", permutation);
+      var pool = pool(expr);
+      assertEquals(expected, pool, () -> "Pool of '" + expr + "'");
+      assertEquals(expected.hashCode(), pool.hashCode(), () -> "Hash of '" + expr + "'");
+      assertEquals(expected.toString(), pool.toString(), () -> "String of '" + expr + "'");
+    }
+  }
+
+  /** Checks the canonical string lists dice then results, each in their declared order. */
+  @Test
+  void canonicalOrder() {
+    assertEquals("1b1k1g1p1y1r1w", pool("w r y p g k b").toString());
+    assertEquals("1g1success1threat", pool("threat g success").toString());
+    assertEquals("3g", pool("g 2g").toString());
+  }
+
+  /** Checks pools with different dice or results are not equal. */
+  @Test
+  void differentPoolsAreNotEqual() {
+    assertNotEquals(pool("2y"), pool("1y"));
+    assertNotEquals(pool("2y"), pool("2g"));
+    assertNotEquals(pool("2y"), pool("2y success"));
+    assertFalse(pool("y").isEmpty());
+  }
+
+  /**
+   * Checks the canonical string of a pool is an expression with an equal pool.
+   *
+   * @param expr the expression.
+   */
+  @ParameterizedTest
+  @MethodSource("corpus")
+  void canonicalStringRoundTrips(String expr) {
+    var pool = pool(expr);
+    var reparsed = pool(pool.toString());
+    assertEquals(pool, reparsed, () -> "Pool of '" + expr + "' as '" + pool + "'");
+    assertTrue(
+        Arrays.equals(pool.toArray(), reparsed.toArray()),
+        () -> "Counts of '" + expr + "'");
+  }
+
+  /**
+   * Returns the pool of an expression.
+   *
+   * @param expr the expression.
+   * @return the pool.
+   */
+  private GenesysDicePool pool(String expr) {
+    return roller.getPool(expr, RESOLVER, RESOLVER, RESOLVER);
+  }
+
+  /**
+   * Returns every order of a list.
+   *
+   * @param list the list.
+   * @return the orders.
+   */
+  private static List<List<String>> permutations(List<String> list) {
+    if (list.isEmpty()) {
+      return List.of(List.of());
+    }
+    var permutations = new ArrayList<List<String>>();
+    for (int i = 0; i < list.size(); i++) {
+      var rest = new ArrayList<>(list);
+      var first = rest.remove(i);
+      for (var permutation : permutations(rest)) {
+        var order = new ArrayList<String>();
+        order.add(first);
+        order.addAll(permutation);
+        permutations.add(order);
+      }
+    }
+    return permutations;
+  }
+}
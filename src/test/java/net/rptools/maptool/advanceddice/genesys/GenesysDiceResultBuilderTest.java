@@ -0,0 +1,66 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Set;
+import net.rptools.maptool.advanceddice.genesys.GenesysDiceResult.Result;
+import org.junit.jupiter.api.Test;
+
+/** Tests the results built by {@link GenesysDiceResultBuilder}. */
+class GenesysDiceResultBuilderTest {
+
+  /** Checks capture groups built after the builder is changed are as they were when built. */
+  @Test
+  void groupsIgnoreChangesAfterBuild() {
+    var inner =
+        new GenesysDiceResultBuilder()
+            .setRollString("g")
+            .addResult(GenesysDiceType.ABILITY, GenesysResultType.SUCCESS);
+    var group =
+        new GenesysDiceResultBuilder()
+            .setRollString("y(b:g)")
+            .addResult(GenesysDiceType.PROFICIENCY, GenesysResultType.TRIUMPH)
+            .addGroup("b", inner);
+    var builder =
+        new GenesysDiceResultBuilder()
+            .setRollString("p(a:y(b:g))")
+            .addResult(GenesysDiceType.DIFFICULTY, GenesysResultType.THREAT)
+            .addGroup("a", group);
+    var result = builder.build();
+
+    builder.addGroup("a", new GenesysDiceResultBuilder().addResult(GenesysResultType.DESPAIR));
+    builder.addGroup("c", new GenesysDiceResultBuilder().addResult(GenesysResultType.FAILURE));
+    group.addResult(GenesysDiceType.BOOST, GenesysResultType.ADVANTAGE);
+    inner.addGroup("d", new GenesysDiceResultBuilder().addResult(GenesysResultType.THREAT));
+
+    assertEquals(Set.of("a"), result.getGroupNames());
+    var a = result.getGroup("a");
+    assertEquals(
+        List.of(
+            new Result(GenesysDiceType.PROFICIENCY, GenesysResultType.TRIUMPH),
+            new Result(GenesysDiceType.ABILITY, GenesysResultType.SUCCESS)),
+        a.getRolls());
+    assertEquals(1, a.getTriumphCount());
+    assertEquals(Set.of("b"), a.getGroupNames());
+    var b = a.getGroup("b");
+    assertEquals(
+        List.of(new Result(GenesysDiceType.ABILITY, GenesysResultType.SUCCESS)), b.getRolls());
+    assertEquals(Set.of(), b.getGroupNames());
+    assertEquals(3, result.getRolls().size());
+  }
+}
@@ -0,0 +1,285 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.ToIntFunction;
+import net.rptools.maptool.advanceddice.DiceExpressionError;
+import net.rptools.maptool.advanceddice.RandomSource;
+import net.rptools.maptool.advanceddice.genesys.GenesysDiceResult.Result;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/** Tests that results survive encoding and decoding with {@link GenesysDiceResultCodec}. */
+class GenesysDiceResultCodecTest {
+
+  /** Resolver used for all variables, properties and prompts. */
+  private static final ToIntFunction<String> RESOLVER = n -> 2;
+
+  /** Expressions whose results are checked to survive encoding and decoding unchanged. */
+  private static final List<String> CORPUS =
+      List.of(
+          "",
+          "y",
+          "3g2y1p1r2b1k1w",
+          "success advantage triumph failure threat despair light dark",
+          "(a:2y)(b:3g)p",
+          "(a:2y(b:g(c:p(d:r(e:3g2y)))))",
+          "(a:(b:(c:(d:(e:(f:(g:(h:y)g)p)r)b)k)w)2y)",
+          "{var}y{@prop}g{?prompt}p",
+          "1500g(a:2000y)5p",
+          "(a:2y");
+
+  /**
+   * Returns the corpus.
+   *
+   * @return the expressions.
+   */
+  static List<String> corpus() {
+    return CORPUS;
+  }
+
+  /**
+   * Checks the result of rolling an expression round trips.
+   *
+   * @param expr the expression.
+   */
+  @ParameterizedTest
+  @MethodSource("corpus")
+  void rolledResultRoundTrips(String expr) {
+    var roller = new GenesysDiceRollerBuilder().setRandomSource(RandomSource.seeded(1)).build();
+    verify(roller.roll(expr, RESOLVER, RESOLVER, RESOLVER));
+  }
+
+  /** Checks a result with a non ASCII roll string and a group built directly round trips. */
+  @Test
+  void builtResultRoundTrips() {
+    verify(
+        new GenesysDiceResult(
+            "2y é中🎲",
+            List.of(new Result(GenesysDiceType.ABILITY, GenesysResultType.SUCCESS)),
+            Map.of(
+                "g",
+                new GenesysDiceResult(
+                    "g",
+                    List.of(new Result(GenesysDiceType.BOOST, GenesysResultType.ADVANTAGE)),
+                    Map.of()))));
+  }
+
+  /**
+   * Checks groups built by the builder are written as the ranges they were built at, even when an
+   * earlier run of the same faces would match them.
+   */
+  @Test
+  void builtGroupsRoundTripAsRanges() {
+    var inner =
+        new GenesysDiceResultBuilder()
+            .setRollString("y")
+            .addResult(GenesysDiceType.PROFICIENCY, GenesysResultType.SUCCESS);
+    var outer =
+        new GenesysDiceResultBuilder()
+            .setRollString("y(b:y)")
+            .addResult(GenesysDiceType.PROFICIENCY, GenesysResultType.SUCCESS)
+            .addGroup("b", inner);
+    var summarized =
+        new GenesysDiceResultBuilder()
+            .setRollString("2000g")
+            .addResults(GenesysDiceType.ABILITY, GenesysResultType.SUCCESS, 2000);
+    var original =
+        new GenesysDiceResultBuilder()
+            .setRollString("2y(a:y(b:y))(c:2000g)")
+            .addResult(GenesysDiceType.PROFICIENCY, GenesysResultType.SUCCESS)
+            .addResult(GenesysDiceType.PROFICIENCY, GenesysResultType.SUCCESS)
+            .addGroup("a", outer)
+            .addGroup("c", summarized)
+            .build();
+    verify(original);
+
+    var decoded = GenesysDiceResultCodec.decode(GenesysDiceResultCodec.encode(original));
+    for (var name : List.of("a", "c")) {
+      assertEquals(original.getGroup(name).getRollOffset(), decoded.getGroup(name).getRollOffset());
+      assertEquals(
+          original.getGroup(name).getSummarizedOffset(),
+          decoded.getGroup(name).getSummarizedOffset());
+    }
+    assertEquals(2, decoded.getGroup("a").getRollOffset());
+    assertEquals(1, decoded.getGroup("a").getGroup("b").getRollOffset());
+  }
+
+  /** Checks a result with errors round trips. */
+  @Test
+  void errorResultRoundTrips() {
+    verify(
+        GenesysDiceResult.error("(a", List.of(new DiceExpressionError(1, -1, "missing ')'"))));
+  }
+
+  /** Checks every truncation of a valid encoding is rejected as invalid rather than misread. */
+  @Test
+  void truncatedResultIsRejected() {
+    var result =
+        new GenesysDiceResultBuilder()
+            .setRollString("2y(a:g)(c:2000g)")
+            .addResult(GenesysDiceType.PROFICIENCY, GenesysResultType.SUCCESS)
+            .addResult(GenesysDiceType.PROFICIENCY, GenesysResultType.TRIUMPH)
+            .addGroup(
+                "a",
+                new GenesysDiceResultBuilder()
+                    .setRollString("g")
+                    .addResult(GenesysDiceType.ABILITY, GenesysResultType.ADVANTAGE))
+            .addGroup(
+                "c",
+                new GenesysDiceResultBuilder()
+                    .setRollString("2000g")
+                    .addResults(GenesysDiceType.ABILITY, GenesysResultType.SUCCESS, 2000))
+            .build();
+    var encoded = GenesysDiceResultCodec.encode(result);
+    for (int length = 0; length < encoded.limit(); length++) {
+      var truncated = encoded.duplicate().limit(length);
+      assertThrows(
+          GenesysDiceCodecException.class,
+          () -> GenesysDiceResultCodec.decode(truncated),
+          "Truncated to " + length + " bytes");
+    }
+  }
+
+  /**
+   * Checks lengths longer than the bytes left, malformed integers and counts too large to total are
+   * rejected.
+   */
+  @Test
+  void overlongLengthIsRejected() {
+    var payloads =
+        List.of(
+            // A roll string of Integer.MAX_VALUE bytes
+            new byte[] {1, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07, 'y'},
+            // A roll string of 200 bytes with only 2 left
+            new byte[] {1, (byte) 0xc8, 0x01, 'y', 'g'},
+            // 100 rolls with only 1 byte left
+            new byte[] {1, 0, 100, 0},
+            // A negative length
+            new byte[] {1, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f},
+            // An integer that never ends
+            new byte[] {1, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0},
+            // Two summarized counts of a result that add up to more than Integer.MAX_VALUE
+            new byte[] {
+              1, 0, 0, 2, 0x21, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07, 0x21, 1,
+              0, 0
+            });
+    for (var payload : payloads) {
+      assertThrows(
+          GenesysDiceCodecException.class,
+          () -> GenesysDiceResultCodec.decode(ByteBuffer.wrap(payload)));
+    }
+  }
+
+  /**
+   * Checks groups nested as deeply as the limit decode, and groups nested deeper, however deep,
+   * are rejected instead of overflowing the stack.
+   */
+  @Test
+  void overDeepGroupsAreRejected() {
+    int limit = GenesysDiceResultCodec.MAX_GROUP_DEPTH;
+    var result = GenesysDiceResultCodec.decode(nested(limit));
+    for (int depth = 0; depth < limit; depth++) {
+      result = result.getGroup("");
+    }
+    assertEquals("", result.getRollString());
+    for (int depth : new int[] {limit + 1, 100_000}) {
+      assertThrows(
+          GenesysDiceCodecException.class,
+          () -> GenesysDiceResultCodec.decode(nested(depth)),
+          "Nested " + depth + " deep");
+    }
+  }
+
+  /**
+   * Returns the encoding of empty results nested in groups written in full, as a sender could craft
+   * it whatever the limits of the roller.
+   *
+   * @param depth how deeply the groups are nested.
+   * @return the encoding.
+   */
+  private static ByteBuffer nested(int depth) {
+    var bytes = new ByteArrayOutputStream();
+    bytes.write(GenesysDiceResultCodec.VERSION);
+    for (int i = 0; i < depth; i++) {
+      // Empty roll string, rolls, summarized results and errors, then one inline group named ""
+      bytes.writeBytes(new byte[] {0, 0, 0, 0, 1, 0, 0});
+    }
+    bytes.writeBytes(new byte[] {0, 0, 0, 0, 0});
+    return ByteBuffer.wrap(bytes.toByteArray());
+  }
+
+  /**
+   * Encodes and decodes a result and checks the decoded result is the same.
+   *
+   * @param original the result.
+   */
+  private static void verify(GenesysDiceResult original) {
+    var encoded = GenesysDiceResultCodec.encode(original);
+    assertEquals(
+        GenesysDiceResultCodec.encodedSize(original),
+        encoded.remaining(),
+        () -> "Encoded size for '" + original.getRollString() + "'");
+    var decoded = GenesysDiceResultCodec.decode(encoded);
+    assertFalse(encoded.hasRemaining(), () -> "Bytes left for '" + original.getRollString() + "'");
+    assertEquals(
+        describe(original),
+        describe(decoded),
+        () -> "Round trip for '" + original.getRollString() + "'");
+  }
+
+  /**
+   * Returns a string holding everything in a result, including its groups.
+   *
+   * @param result the result.
+   * @return the description.
+   */
+  private static String describe(GenesysDiceResult result) {
+    var description = new StringBuilder();
+    description
+        .append(result.getRollString())
+        .append(result.getRolls())
+        .append(result.getSummarizedResults())
+        .append(result.getErrors());
+    for (var type : GenesysResultType.values()) {
+      description.append(result.getNumberOfResult(type)).append(',');
+    }
+    description.append(
+        List.of(
+            result.getSuccessCount(),
+            result.getFailureCount(),
+            result.getAdvantageCount(),
+            result.getThreatCount(),
+            result.getTriumphCount(),
+            result.getDespairCount(),
+            result.getLightCount(),
+            result.getDarkCount()));
+    for (var name : new TreeSet<>(result.getGroupNames())) {
+      description.append('{').append(name).append(':');
+      description.append(describe(result.getGroup(name))).append('}');
+    }
+    return description.toString();
+  }
+}
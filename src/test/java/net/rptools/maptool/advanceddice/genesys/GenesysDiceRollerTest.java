@@ -0,0 +1,211 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import net.rptools.maptool.advanceddice.RandomSource;
+import org.junit.jupiter.api.Test;
+
+/** Tests for {@link GenesysDiceRoller}. */
+class GenesysDiceRollerTest {
+
+  /** Resolver used for all variables, properties and prompts. */
+  private static final ToIntFunction<String> RESOLVER = n -> 3;
+
+  /** Checks a seeded roll replays to the same result without calling any supplier. */
+  @Test
+  void seededRollReplays() {
+    var roller = new GenesysDiceRollerBuilder().setRandomSource(RandomSource.seeded(7)).build();
+    var calls = new AtomicInteger();
+    ToIntFunction<String> counting = n -> calls.incrementAndGet();
+    for (var expr : new String[] {"3g2y1p1r", "{a}g{@b}y{?c}k success", "40g12p", "w"}) {
+      var result = roller.rollSeeded(expr, RESOLVER, RESOLVER, RESOLVER);
+      var replayed = roller.replay(expr, result.getSeed());
+      assertSameResult(result, replayed);
+      long seed = result.getSeed().seed();
+      assertSameResult(result, roller.rollSeeded(expr, seed, RESOLVER, RESOLVER, RESOLVER));
+    }
+    var prompted = roller.rollSeeded("{?c}g", counting, counting, counting);
+    assertEquals(1, calls.get());
+    roller.replay("{?c}g", prompted.getSeed());
+    assertEquals(1, calls.get());
+  }
+
+  /** Checks a roll made under looser limits replays on a roller whose limits reject it. */
+  @Test
+  void replayIgnoresStricterLimits() {
+    var loose = new GenesysDiceRoller();
+    var strict =
+        new GenesysDiceRoller()
+            .withLimits(
+                new GenesysRollLimitsBuilder().setMaxDice(5).setMaxResolverCalls(0).build());
+    var result = loose.rollSeeded("20g{v}y", RESOLVER, RESOLVER, RESOLVER);
+    assertFalse(result.hasErrors());
+    assertTrue(strict.roll("20g{v}y", RESOLVER, RESOLVER, RESOLVER).hasErrors());
+    assertSameResult(result, strict.replay("20g{v}y", result.getSeed()));
+  }
+
+  /** Checks a roll that the limits made keep only counts replays the same way without them. */
+  @Test
+  void countsOnlyRollReplaysWithoutLimits() {
+    var countsOnly =
+        new GenesysDiceRoller()
+            .withLimits(
+                new GenesysRollLimitsBuilder()
+                    .setMaxDice(5)
+                    .setOverDiceLimit(GenesysRollLimits.Action.COUNTS_ONLY)
+                    .build());
+    var result = countsOnly.rollSeeded("20g{v}y", RESOLVER, RESOLVER, RESOLVER);
+    assertTrue(result.getRolls().isEmpty());
+    assertEquals(0, result.getSeed().summarizeThreshold());
+    assertSameResult(result, new GenesysDiceRoller().replay("20g{v}y", result.getSeed()));
+  }
+
+  /**
+   * Checks a measured roll calls a resolver that returns a different value each time only once for
+   * each name, and that the dice rolled are measured with the values the dice were rolled with.
+   */
+  @Test
+  void measuredRollResolvesOnce() {
+    var measurements = new ArrayList<GenesysRollMeasurement>();
+    var roller = new GenesysDiceRollerBuilder().setMetrics(measurements::add).build();
+    var calls = new AtomicInteger();
+    ToIntFunction<String> counting = n -> calls.incrementAndGet();
+    var result = roller.roll("{a}g{@b}y success", counting, counting, counting);
+    assertEquals(2, calls.get());
+    assertEquals(1, result.getDiceResults(GenesysDiceType.ABILITY).size());
+    assertEquals(2, result.getDiceResults(GenesysDiceType.PROFICIENCY).size());
+    var counts = roller.rollCounts("{a}g{@b}y success", counting, counting, counting);
+    assertEquals(4, calls.get());
+    assertFalse(counts.hasErrors());
+    assertEquals(2, measurements.size());
+    assertEquals(4, measurements.get(0).diceRolled());
+    assertEquals(8, measurements.get(1).diceRolled());
+    assertEquals(2, measurements.get(1).symbolCount());
+  }
+
+  /**
+   * Checks an asynchronous roll waits for every value, asking for each name once, and rolls the
+   * same dice as a roll with the same values.
+   */
+  @Test
+  void asyncRollWaitsForValues() {
+    var expr = "{a}g{@b}y{a}p{?c}k";
+    var calls = new AtomicInteger();
+    var pending = new CompletableFuture<Integer>();
+    Function<String, CompletableFuture<Integer>> resolver =
+        n -> {
+          calls.incrementAndGet();
+          return n.equals("c") ? pending : CompletableFuture.completedFuture(3);
+        };
+    var async =
+        new GenesysDiceRollerBuilder()
+            .setRandomSource(RandomSource.seeded(5))
+            .build()
+            .rollAsync(expr, resolver, resolver, resolver);
+    assertEquals(3, calls.get());
+    assertFalse(async.isDone());
+    pending.complete(3);
+    var expected =
+        new GenesysDiceRollerBuilder()
+            .setRandomSource(RandomSource.seeded(5))
+            .build()
+            .roll(expr, RESOLVER, RESOLVER, RESOLVER);
+    assertSameResult(expected, async.join());
+  }
+
+  /** Checks an asynchronous roll fails with the failure of a value it waits for. */
+  @Test
+  void asyncRollFailsWithResolver() {
+    var failure = new IllegalStateException("prompt cancelled");
+    Function<String, CompletableFuture<Integer>> resolver =
+        n -> CompletableFuture.completedFuture(1);
+    Function<String, CompletableFuture<Integer>> failing =
+        n -> CompletableFuture.failedFuture(failure);
+    var roller = new GenesysDiceRoller();
+    var e =
+        assertThrows(
+            CompletionException.class,
+            () -> roller.rollAsync("{a}g{?c}y", resolver, resolver, failing).join());
+    assertEquals(failure, e.getCause());
+    Function<String, CompletableFuture<Integer>> throwing =
+        n -> {
+          throw failure;
+        };
+    e =
+        assertThrows(
+            CompletionException.class,
+            () -> roller.rollAsync("{a}g{?c}y", resolver, resolver, throwing).join());
+    assertEquals(failure, e.getCause());
+  }
+
+  /** Checks an asynchronous roll given no future or no value fails naming the value. */
+  @Test
+  void asyncRollFailsWithoutValue() {
+    Function<String, CompletableFuture<Integer>> resolver =
+        n -> CompletableFuture.completedFuture(1);
+    Function<String, CompletableFuture<Integer>> noFuture = n -> null;
+    Function<String, CompletableFuture<Integer>> noValue =
+        n -> CompletableFuture.completedFuture(null);
+    var roller = new GenesysDiceRoller();
+    var e =
+        assertThrows(
+            CompletionException.class,
+            () -> roller.rollAsync("{a}g{@b}y", resolver, noFuture, resolver).join());
+    assertInstanceOf(NullPointerException.class, e.getCause());
+    assertTrue(e.getCause().getMessage().contains("{@b}"), e.getCause()::getMessage);
+    e =
+        assertThrows(
+            CompletionException.class,
+            () -> roller.rollAsync("{a}g{@b}y", resolver, noValue, resolver).join());
+    assertInstanceOf(IllegalArgumentException.class, e.getCause());
+    assertTrue(e.getCause().getMessage().contains("{@b}"), e.getCause()::getMessage);
+  }
+
+  /**
+   * Checks two results rolled the same dice with the same seed.
+   *
+   * @param expected the first result.
+   * @param actual the second result.
+   */
+  private static void assertSameResult(GenesysDiceResult expected, GenesysDiceResult actual) {
+    var expr = expected.getRollString();
+    assertEquals(expr, actual.getRollString());
+    assertEquals(expected.getErrors(), actual.getErrors(), () -> "Errors of '" + expr + "'");
+    assertEquals(expected.getRolls(), actual.getRolls(), () -> "Rolls of '" + expr + "'");
+    assertEquals(
+        expected.getSummarizedResults(),
+        actual.getSummarizedResults(),
+        () -> "Summarized results of '" + expr + "'");
+    for (var resultType : GenesysResultType.values()) {
+      assertEquals(
+          expected.getNumberOfResult(resultType),
+          actual.getNumberOfResult(resultType),
+          () -> resultType + " of '" + expr + "'");
+    }
+    assertEquals(expected.getSeed(), actual.getSeed(), () -> "Seed of '" + expr + "'");
+  }
+}
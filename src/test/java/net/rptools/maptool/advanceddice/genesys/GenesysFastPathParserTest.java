@@ -0,0 +1,145 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Differential tests for {@link GenesysFastPathParser}: every expression the fast path compiles
+ * must give the same plan as the ANTLR parser.
+ */
+class GenesysFastPathParserTest {
+
+  /** Expressions that exercise the edges of the fast path, including ones it must reject. */
+  static final List<String> CORPUS =
+      List.of(
+          "",
+          "   ",
+          "y",
+          "3g2y1p1r",
+          " 3g 2y ",
+          "3 g",
+          "007g",
+          "2y3g{@skill}p{var}b{?prompt}k",
+          "{a:b}g{(x)}y{@p q}r{?#}w",
+          "yellow,green,purple,red,blue,black,white,success,advantage,threat",
+          "y,g,",
+          "y,,g",
+          ",y",
+          "3,g",
+          "3",
+          "3 4g",
+          "{x}{y}g",
+          "abilityboostsetbackchallengedifficultyforceproficiency",
+          "abab",
+          "blblkblackblue",
+          "bl",
+          "blu",
+          "suc success succ",
+          "tri triumph thr thrt threat t",
+          "des despair dark df ds darkpip darkforce n",
+          "light l lf ls lightpip lightforce",
+          "fail failure - * ! $ v",
+          "dif",
+          "diff difficulty d dd",
+          "pro prof proficiency pr",
+          "ch challenge c",
+          "f force w white fw",
+          "G",
+          "ab:y",
+          "(a:2y)",
+          "(2y)",
+          "#fn(1)",
+          "'g'",
+          "{}g",
+          "{@}g",
+          "{?}g",
+          "{}}g",
+          "{g",
+          "g}",
+          "9999999999g",
+          "999999999g",
+          "2147483647*",
+          "3g\t2y\r\n1p\f1r",
+          "{🎲}g",
+          "ég");
+
+  /** Fragments that random expressions are built from. */
+  private static final String[] FRAGMENTS = {
+    "y", "g", "p", "r", "b", "k", "w", "a", "ab", "bl", "blk", "s", "d", "di", "diff", "c", "ch",
+    "f", "t", "th", "thr", "l", "li", "light", "n", "da", "dark", "*", "-", "!", "$", "v", "1",
+    "23", "0", " ", ",", "{x}", "{@p}", "{?q}", "{}", ":", "(", ")", "#f", "'", "x", "e", "su",
+    "suc", "success"
+  };
+
+  /** The number of random expressions checked. */
+  private static final int RANDOM_EXPRESSIONS = 20_000;
+
+  /**
+   * Returns the hand written corpus.
+   *
+   * @return the expressions.
+   */
+  static List<String> corpus() {
+    return CORPUS;
+  }
+
+  /**
+   * Checks the fast path agrees with the ANTLR parser on the hand written corpus.
+   *
+   * @param expr the expression.
+   */
+  @ParameterizedTest
+  @MethodSource("corpus")
+  void corpusMatchesAntlr(String expr) {
+    verify(expr);
+  }
+
+  /** Checks the fast path agrees with the ANTLR parser on seeded random expressions. */
+  @Test
+  void randomExpressionsMatchAntlr() {
+    var random = new SplittableRandom(42);
+    for (int i = 0; i < RANDOM_EXPRESSIONS; i++) {
+      var sb = new StringBuilder();
+      int fragments = random.nextInt(1, 8);
+      for (int f = 0; f < fragments; f++) {
+        sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+      }
+      verify(sb.toString());
+    }
+  }
+
+  /**
+   * Compiles an expression both ways and checks the plans are the same.
+   *
+   * @param expr the expression.
+   */
+  private static void verify(String expr) {
+    var fast = GenesysFastPathParser.parse(expr);
+    if (fast == null) {
+      return; // Falls back to the ANTLR parser, so the result is the same by definition
+    }
+    var antlr = GenesysDiceRoller.compileWithAntlr(expr);
+    assertFalse(antlr.hasErrors(), () -> "ANTLR rejects '" + expr + "': " + antlr.getErrors());
+    assertEquals(antlr.getRoot(), fast.getRoot(), () -> "Fast path differs for '" + expr + "'");
+  }
+}
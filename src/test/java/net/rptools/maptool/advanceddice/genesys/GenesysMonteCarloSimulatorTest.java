@@ -0,0 +1,99 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.ToIntFunction;
+import org.junit.jupiter.api.Test;
+
+/** Tests that {@link GenesysMonteCarloSimulator} is reproducible and agrees with exact results. */
+class GenesysMonteCarloSimulatorTest {
+
+  /** Resolver used for all variables, properties and prompts. */
+  private static final ToIntFunction<String> RESOLVER = n -> 1;
+
+  /** The pool that is simulated, small enough to calculate exactly. */
+  private static final String POOL = "2y1g1p1r{v}k";
+
+  /** Enough trials for several chunks, the last of them partly filled. */
+  private static final long TRIALS = 3L * GenesysMonteCarloSimulator.CHUNK_SIZE + 17;
+
+  /** The seed of the simulations. */
+  private static final long SEED = 1234;
+
+  /** Checks a seed gives the same histograms however many threads run the trials. */
+  @Test
+  void sameSeedSameResultAtAnyParallelism() {
+    var expected = simulate(new ForkJoinPool(1));
+    for (int parallelism : new int[] {2, 3, 8}) {
+      var pool = new ForkJoinPool(parallelism);
+      try {
+        var result = simulate(pool);
+        assertEquals(TRIALS, result.getTrialCount());
+        for (var countType : GenesysCountType.values()) {
+          assertTrue(
+              Arrays.equals(expected.getHistogram(countType), result.getHistogram(countType)),
+              () -> countType + " with parallelism " + parallelism);
+        }
+      } finally {
+        pool.shutdown();
+      }
+    }
+  }
+
+  /** Checks the simulated means are close to the exact means of the probability engine. */
+  @Test
+  void meansMatchProbabilityEngine() {
+    var result = simulate(ForkJoinPool.commonPool());
+    var distribution =
+        new GenesysProbabilityEngine().getDistribution(POOL, RESOLVER, RESOLVER, RESOLVER);
+    double netSuccess = 0;
+    double netAdvantage = 0;
+    double triumph = 0;
+    double despair = 0;
+    for (int total = -10; total <= 10; total++) {
+      int k = total;
+      netSuccess += k * distribution.probability((s, a, t, d, l, n) -> s == k);
+      netAdvantage += k * distribution.probability((s, a, t, d, l, n) -> a == k);
+      triumph += k * distribution.probability((s, a, t, d, l, n) -> t == k);
+      despair += k * distribution.probability((s, a, t, d, l, n) -> d == k);
+    }
+    assertEquals(
+        netSuccess,
+        result.getMean(GenesysCountType.SUCCESS) - result.getMean(GenesysCountType.FAILURE),
+        0.02);
+    assertEquals(
+        netAdvantage,
+        result.getMean(GenesysCountType.ADVANTAGE) - result.getMean(GenesysCountType.THREAT),
+        0.02);
+    assertEquals(triumph, result.getMean(GenesysCountType.TRIUMPH), 0.005);
+    assertEquals(despair, result.getMean(GenesysCountType.DESPAIR), 0.005);
+  }
+
+  /**
+   * Simulates the pool with the seed.
+   *
+   * @param pool the pool that runs the trials.
+   * @return the result.
+   */
+  private static GenesysSimulationResult simulate(ForkJoinPool pool) {
+    return new GenesysMonteCarloSimulator(new GenesysDiceRoller(), pool)
+        .simulate(POOL, TRIALS, SEED, RESOLVER, RESOLVER, RESOLVER);
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import net.rptools.maptool.advanceddice.DiceErrorListener;
+import org.junit.jupiter.api.Test;
+
+/** Tests that a {@link GenesysParserCache} is reset once it holds too many states. */
+class GenesysParserCacheTest {
+
+  /** Checks the states are only counted, and the cache reset, every check interval. */
+  @Test
+  void resetsAtCheckIntervalOnceOverMaximum() {
+    var cache = new GenesysParserCache(1);
+    for (int i = 1; i < GenesysParserCache.CHECK_INTERVAL; i++) {
+      cache.parse("(a:" + i + "g)", new DiceErrorListener());
+    }
+    assertTrue(cache.getStateCount() > 1);
+    assertEquals(0, cache.getResetCount());
+    cache.parse("2y", new DiceErrorListener());
+    assertEquals(1, cache.getResetCount());
+  }
+
+  /** Checks a cache under its maximum is never reset. */
+  @Test
+  void doesNotResetUnderMaximum() {
+    var cache = new GenesysParserCache(Integer.MAX_VALUE);
+    for (int i = 0; i < 4 * GenesysParserCache.CHECK_INTERVAL; i++) {
+      cache.parse(i + "g" + i + "y", new DiceErrorListener());
+    }
+    assertEquals(0, cache.getResetCount());
+  }
+
+  /** Checks a reset keeps the states of the common expressions but drops the rest. */
+  @Test
+  void resetPrimesCommonExpressions() {
+    var cache = new GenesysParserCache();
+    cache.reset();
+    int primed = cache.getStateCount();
+    assertTrue(primed > 0);
+    for (int i = 0; i < 100; i++) {
+      cache.parse("(x" + i + ":" + i + "g #fn(" + i + ", 'a'))", new DiceErrorListener());
+    }
+    cache.reset();
+    assertEquals(primed, cache.getStateCount());
+  }
+
+  /** Checks parsers running on many threads while the cache is reset all succeed. */
+  @Test
+  void concurrentParsesSurviveResets() throws Exception {
+    var cache = new GenesysParserCache(1);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      var futures = new ArrayList<Future<?>>();
+      for (int t = 0; t < 8; t++) {
+        int thread = t;
+        futures.add(
+            executor.submit(
+                () -> {
+                  for (int i = 0; i < 500; i++) {
+                    var listener = new DiceErrorListener();
+                    var tree = cache.parse("(a" + thread + ":" + (i + 1) + "g)2y", listener);
+                    assertNotNull(tree);
+                    assertTrue(listener.getErrors().isEmpty());
+                  }
+                }));
+      }
+      for (var future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    long parses = 8 * 500;
+    assertTrue(cache.getResetCount() > 0);
+    assertTrue(cache.getResetCount() <= parses / GenesysParserCache.CHECK_INTERVAL);
+  }
+}
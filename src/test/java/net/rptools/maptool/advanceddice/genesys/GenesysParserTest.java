@@ -0,0 +1,109 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.rptools.maptool.advanceddice.DiceErrorListener;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceLexer;
+import net.rptools.maptool.advanceddice.parser.GenesysDiceParser;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ListTokenSource;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Tests that the SLL first parse used by the roller accepts and rejects the same expressions as a
+ * full LL parse, reporting the same errors and building the same syntax tree.
+ */
+class GenesysParserTest {
+
+  /** Expressions with groups, functions and errors, in addition to the flat pool corpus. */
+  private static final List<String> CORPUS =
+      List.of(
+          "(a:2y)",
+          "(2y)",
+          "()",
+          "(a:)",
+          "(a:2y(b:g(c:p(d:r(e:3g2y)))))",
+          "(a:(b:(c:(d:(e:(f:(g:(h:y)g)p)r)b)k)w)2y)",
+          "(a:2y),(b:3g),",
+          "(a:2y",
+          "2y)",
+          "(a:b:2y)",
+          "3(a:y)",
+          "#fn(1)",
+          "#fn(1, 'a', \"b\", #g(2))",
+          "#fn()",
+          "#fn(1,)",
+          "2y #fn(1) 3g",
+          "{@}",
+          "3{x}g",
+          "y 3 ,",
+          "(,y)");
+
+  /**
+   * Returns the regression corpus, the flat pool corpus followed by the expressions above.
+   *
+   * @return the expressions.
+   */
+  static List<String> corpus() {
+    var expressions = new ArrayList<>(GenesysFastPathParserTest.CORPUS);
+    expressions.addAll(CORPUS);
+    return expressions;
+  }
+
+  /**
+   * Parses an expression with LL only and with SLL first, and checks the results are the same.
+   *
+   * @param expr the expression.
+   */
+  @ParameterizedTest
+  @MethodSource("corpus")
+  void twoStageParseMatchesLl(String expr) {
+    var llErrors = new DiceErrorListener();
+    var llParser = new GenesysDiceParser(new CommonTokenStream(new ListTokenSource(lex(expr))));
+    llParser.removeErrorListeners();
+    llParser.addErrorListener(llErrors);
+    llParser.getInterpreter().setPredictionMode(PredictionMode.LL);
+    var ll = llParser.startGenesys();
+
+    var twoStageErrors = new DiceErrorListener();
+    var twoStage =
+        GenesysDiceRoller.parse(
+            new CommonTokenStream(new ListTokenSource(lex(expr))), twoStageErrors);
+
+    assertEquals(
+        llErrors.getErrors(), twoStageErrors.getErrors(), () -> "Errors for '" + expr + "'");
+    assertEquals(ll.toStringTree(), twoStage.toStringTree(), () -> "Tree for '" + expr + "'");
+  }
+
+  /**
+   * Lexes an expression.
+   *
+   * @param expr the expression.
+   * @return the tokens.
+   */
+  private static List<? extends Token> lex(String expr) {
+    var lexer = new GenesysDiceLexer(CharStreams.fromString(expr));
+    lexer.removeErrorListeners();
+    return lexer.getAllTokens();
+  }
+}
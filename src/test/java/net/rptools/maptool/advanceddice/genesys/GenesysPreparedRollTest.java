@@ -0,0 +1,137 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import net.rptools.maptool.advanceddice.RandomSource;
+import org.junit.jupiter.api.Test;
+
+/** Tests that the compiled totals of a {@link GenesysPreparedRoll} match walking the plan. */
+class GenesysPreparedRollTest {
+
+  /** The values the slots are rolled with, including negative ones that roll nothing. */
+  private static final int[][] SLOT_VALUES = {{0, 0}, {1, 2}, {3, -1}, {-5, 4}, {-2, -3}, {50, 7}};
+
+  /** Checks compiled and walked totals are the same for the same seed and slot values. */
+  @Test
+  void compiledTotalsMatchWalkedTotals() {
+    for (var expr : List.of("{a}y{b}g", "{a}success{b}threat 2p", "{a}y 3g {b}despair {a}k")) {
+      for (var values : SLOT_VALUES) {
+        for (long seed = 0; seed < 20; seed++) {
+          var compiled = prepare(expr, seed, 0);
+          var walked = prepare(expr, seed, Integer.MAX_VALUE);
+          assertTrue(compiled.isCompiled());
+          var compiledCounts = compiled.executeCounts(values);
+          var walkedCounts = walked.executeCounts(values);
+          assertEquals(
+              totals(walkedCounts), totals(compiledCounts), () -> "Totals for '" + expr + "'");
+          assertEquals(
+              totals(prepare(expr, seed, Integer.MAX_VALUE).execute(values)),
+              totals(walkedCounts),
+              () -> "Counts and roll for '" + expr + "'");
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks compiled and walked totals are the same for the expressions the benchmarks roll, the
+   * roll string included, and that the compile threshold decides which of them is compiled.
+   */
+  @Test
+  void benchmarkCorpusTotalsMatch() {
+    var corpus =
+        List.of(
+            "",
+            "y",
+            "3g2y1p1r2b1k1w",
+            "success advantage triumph failure threat despair light dark",
+            "{skill}g{rank}y{@diff}p{skill}b{?prompt}k",
+            "2y 0g {var}p",
+            "1500g{var}y5p");
+    for (var expr : corpus) {
+      var compiled = prepare(expr, 1, 0);
+      var walked = prepare(expr, 1, Integer.MAX_VALUE);
+      assertTrue(compiled.isCompiled(), () -> "Compiled '" + expr + "'");
+      assertFalse(walked.isCompiled(), () -> "Walked '" + expr + "'");
+      var values = new int[compiled.getSlots().size()];
+      for (int i = 0; i < 100; i++) {
+        Arrays.fill(values, i * 13 % 1200);
+        var compiledCounts = compiled.executeCounts(values);
+        var walkedCounts = walked.executeCounts(values);
+        assertEquals(walkedCounts.getRollString(), compiledCounts.getRollString());
+        assertEquals(
+            totals(walkedCounts), totals(compiledCounts), () -> "Totals for '" + expr + "'");
+      }
+    }
+  }
+
+  /**
+   * Prepares an expression with a seeded random source.
+   *
+   * @param expr the expression.
+   * @param seed the seed.
+   * @param compileThreshold the compile threshold of the roller.
+   * @return the prepared roll.
+   */
+  private static GenesysPreparedRoll prepare(String expr, long seed, int compileThreshold) {
+    return new GenesysDiceRollerBuilder()
+        .setRandomSource(RandomSource.seeded(seed))
+        .setCompileThreshold(compileThreshold)
+        .build()
+        .prepare(expr);
+  }
+
+  /**
+   * Returns the totals of a roll.
+   *
+   * @param counts the counts of the roll.
+   * @return the totals.
+   */
+  private static List<Integer> totals(GenesysDiceCounts counts) {
+    return List.of(
+        counts.getSuccessCount(),
+        counts.getFailureCount(),
+        counts.getAdvantageCount(),
+        counts.getThreatCount(),
+        counts.getTriumphCount(),
+        counts.getDespairCount(),
+        counts.getLightCount(),
+        counts.getDarkCount());
+  }
+
+  /**
+   * Returns the totals of a roll.
+   *
+   * @param result the result of the roll.
+   * @return the totals.
+   */
+  private static List<Integer> totals(GenesysDiceResult result) {
+    return List.of(
+        result.getSuccessCount(),
+        result.getFailureCount(),
+        result.getAdvantageCount(),
+        result.getThreatCount(),
+        result.getTriumphCount(),
+        result.getDespairCount(),
+        result.getLightCount(),
+        result.getDarkCount());
+  }
+}
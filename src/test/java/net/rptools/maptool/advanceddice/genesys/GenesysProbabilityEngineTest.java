@@ -0,0 +1,99 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests the exact distributions of {@link GenesysProbabilityEngine} against enumerated pools. */
+class GenesysProbabilityEngineTest {
+
+  /** The tolerance for probabilities that are sums of exact fractions. */
+  private static final double DELTA = 1e-12;
+
+  /** Checks the distribution of a single ability die, face by face. */
+  @Test
+  void abilityDieMatchesFaces() {
+    // Faces: blank, s, s, ss, a, a, sa, aa
+    var distribution = distribution(GenesysDiceType.ABILITY, 1);
+    assertEquals(6, distribution.getOutcomeCount());
+    assertEquals(1 / 8.0, probability(distribution, 0, 0), DELTA);
+    assertEquals(2 / 8.0, probability(distribution, 1, 0), DELTA);
+    assertEquals(1 / 8.0, probability(distribution, 2, 0), DELTA);
+    assertEquals(2 / 8.0, probability(distribution, 0, 1), DELTA);
+    assertEquals(1 / 8.0, probability(distribution, 1, 1), DELTA);
+    assertEquals(1 / 8.0, probability(distribution, 0, 2), DELTA);
+    assertEquals(4 / 8.0, distribution.getSuccessProbability(), DELTA);
+    assertEquals(0, distribution.getTriumphProbability(), DELTA);
+  }
+
+  /** Checks the distribution of a proficiency die rolled against a difficulty die. */
+  @Test
+  void proficiencyAgainstDifficultyMatchesFaces() {
+    var counts = new int[GenesysDiceType.values().length];
+    counts[GenesysDiceType.PROFICIENCY.ordinal()] = 1;
+    counts[GenesysDiceType.DIFFICULTY.ordinal()] = 1;
+    var distribution = new GenesysProbabilityEngine().getDistribution(counts);
+    // Net successes of the proficiency die are 0 on 4 faces, 1 on 6 and 2 on 2. Those of the
+    // difficulty die are 0 on 5 faces, -1 on 2 and -2 on 1.
+    assertEquals((6 * 5 + 2 * 7) / 96.0, distribution.getSuccessProbability(), DELTA);
+    // blank-blank, s-f (2), t-f, ss-ff (2), a-h (3), sa-fh (3) and aa-hh (2)
+    assertEquals(14 / 96.0, probability(distribution, 0, 0), DELTA);
+    assertEquals(1 / 12.0, distribution.getTriumphProbability(), DELTA);
+    assertEquals(0, distribution.getDespairProbability(), DELTA);
+    assertEquals(1.0, distribution.probability((s, a, t, d, l, n) -> true), DELTA);
+  }
+
+  /** Checks the outcomes of the largest pool the engine allows still sum to certainty. */
+  @Test
+  void totalProbabilityIsOneAtDiceLimit() {
+    var engine =
+        new GenesysProbabilityEngine(
+            new GenesysDiceRoller(),
+            GenesysProbabilityEngine.MAX_DICE_LIMIT,
+            GenesysProbabilityEngine.DEFAULT_MAX_CACHED_OUTCOMES);
+    var counts = new int[GenesysDiceType.values().length];
+    counts[GenesysDiceType.SETBACK.ordinal()] = GenesysProbabilityEngine.MAX_DICE_LIMIT;
+    var distribution = engine.getDistribution(counts);
+    assertEquals(1.0, distribution.probability((s, a, t, d, l, n) -> true), 1e-9);
+  }
+
+  /**
+   * Returns the distribution of a number of dice of one type.
+   *
+   * @param diceType the type of dice.
+   * @param count the number of dice.
+   * @return the distribution.
+   */
+  private static GenesysDistribution distribution(GenesysDiceType diceType, int count) {
+    var counts = new int[GenesysDiceType.values().length];
+    counts[diceType.ordinal()] = count;
+    return new GenesysProbabilityEngine().getDistribution(counts);
+  }
+
+  /**
+   * Returns the probability of exactly a net success and net advantage.
+   *
+   * @param distribution the distribution.
+   * @param netSuccess the net success.
+   * @param netAdvantage the net advantage.
+   * @return the probability.
+   */
+  private static double probability(
+      GenesysDistribution distribution, int netSuccess, int netAdvantage) {
+    return distribution.probability((s, a, t, d, l, n) -> s == netSuccess && a == netAdvantage);
+  }
+}
@@ -0,0 +1,232 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import net.rptools.maptool.advanceddice.RandomSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests appending to, reopening and reading a {@link GenesysRollJournal}. */
+class GenesysRollJournalTest {
+
+  /** The smallest segment size, so that a few records fill a segment. */
+  private static final int SEGMENT_SIZE = 4096;
+
+  /** The directory the journals are written in. */
+  @TempDir Path dir;
+
+  /** Checks the totals and dice of appended rolls are read back in order. */
+  @Test
+  void appendedRollsAreReadBack() throws IOException {
+    var path = dir.resolve("rolls.journal");
+    var results = List.of(roll("3g2y", 1, 100), roll("2p1k", 2, 100), roll("4b", 3, 100));
+    try (var journal = GenesysRollJournal.open(path, SEGMENT_SIZE)) {
+      for (var result : results) {
+        journal.append("gm", result, true);
+      }
+      journal.append("gm", results.get(0), false);
+    }
+    var entries = readAll(path);
+    assertEquals(4, entries.size());
+    for (int i = 0; i < results.size(); i++) {
+      assertEntry(results.get(i), entries.get(i));
+      assertEquals("gm", entries.get(i).rollerId());
+    }
+    assertTrue(entries.get(3).rolls().isEmpty());
+    assertEquals(results.get(0).getSuccessCount(), entries.get(3).counts().getSuccessCount());
+  }
+
+  /** Checks dice rolled in bulk are journaled as summarized results rather than as nothing. */
+  @Test
+  void summarizedRollsKeepTheirCounts() throws IOException {
+    var path = dir.resolve("rolls.journal");
+    var result = roll("40g12p", 4, 0);
+    assertTrue(result.getRolls().isEmpty());
+    assertFalse(result.getSummarizedResults().isEmpty());
+    try (var journal = GenesysRollJournal.open(path, SEGMENT_SIZE)) {
+      journal.append("gm", result, true);
+    }
+    var entry = readAll(path).get(0);
+    assertEntry(result, entry);
+  }
+
+  /** Checks a reopened journal is appended to after its last record. */
+  @Test
+  void reopenedJournalAppendsAfterLastRecord() throws IOException {
+    var path = dir.resolve("rolls.journal");
+    long end;
+    try (var journal = GenesysRollJournal.open(path, SEGMENT_SIZE)) {
+      journal.append("a", roll("2g", 1, 100), true);
+      end = journal.position();
+    }
+    try (var journal = GenesysRollJournal.open(path)) {
+      assertEquals(end, journal.position());
+      assertEquals(end, journal.append("b", roll("2y", 2, 100), true));
+    }
+    var entries = readAll(path);
+    assertEquals(
+        List.of("a", "b"), entries.stream().map(GenesysRollJournal.Entry::rollerId).toList());
+  }
+
+  /** Checks records continue in the next segment when one is full, and are read across them. */
+  @Test
+  void recordsRollOverToNextSegment() throws IOException {
+    var path = dir.resolve("rolls.journal");
+    var results = new ArrayList<GenesysDiceResult>();
+    try (var journal = GenesysRollJournal.open(path, SEGMENT_SIZE)) {
+      for (int i = 0; journal.position() < 3L * SEGMENT_SIZE; i++) {
+        var result = roll("10g10y10p", i, 100);
+        long position = journal.append("gm", result, true);
+        assertTrue(position % SEGMENT_SIZE + 4 < SEGMENT_SIZE, "Record starts in a segment");
+        results.add(result);
+      }
+    }
+    var entries = readAll(path);
+    assertEquals(results.size(), entries.size());
+    for (int i = 0; i < results.size(); i++) {
+      assertEntry(results.get(i), entries.get(i));
+    }
+  }
+
+  /** Checks a record torn by a crash ends the journal and is overwritten by the next append. */
+  @Test
+  void tornTailIsOverwritten() throws IOException {
+    var path = dir.resolve("rolls.journal");
+    var first = roll("3g", 1, 100);
+    long end;
+    try (var journal = GenesysRollJournal.open(path, SEGMENT_SIZE)) {
+      journal.append("gm", first, true);
+      end = journal.position();
+    }
+    // A length that runs past the segment, followed by what is left of its body
+    var torn = ByteBuffer.allocate(64);
+    torn.putInt(SEGMENT_SIZE);
+    while (torn.hasRemaining()) {
+      torn.put((byte) 0x5a);
+    }
+    write(path, end, torn.flip());
+    var second = roll("1p", 2, 100);
+    try (var journal = GenesysRollJournal.open(path)) {
+      assertEquals(end, journal.position());
+      journal.append("gm", second, true);
+    }
+    var entries = readAll(path);
+    assertEquals(2, entries.size());
+    assertEntry(first, entries.get(0));
+    assertEntry(second, entries.get(1));
+  }
+
+  /** Checks the body of an unfinished record is not read as a length after a shorter append. */
+  @Test
+  void unfinishedRecordIsNotReadAfterAppend() throws IOException {
+    var path = dir.resolve("rolls.journal");
+    long end;
+    try (var journal = GenesysRollJournal.open(path, SEGMENT_SIZE)) {
+      journal.append("gm", roll("3g", 1, 100), true);
+      end = journal.position();
+    }
+    // The body of a record whose length was never written
+    var body = ByteBuffer.allocate(256);
+    body.putInt(0);
+    while (body.hasRemaining()) {
+      body.put((byte) 0x11);
+    }
+    write(path, end, body.flip());
+    try (var journal = GenesysRollJournal.open(path)) {
+      journal.append("gm", roll("1g", 2, 100), true);
+    }
+    assertEquals(2, readAll(path).size());
+  }
+
+  /**
+   * Rolls an expression.
+   *
+   * @param rollString the expression.
+   * @param seed the seed of the random source.
+   * @param summarizeThreshold the number of dice of a type above which they are rolled in bulk.
+   * @return the result.
+   */
+  private static GenesysDiceResult roll(String rollString, long seed, int summarizeThreshold) {
+    var roller =
+        new GenesysDiceRollerBuilder()
+            .setRandomSource(RandomSource.seeded(seed))
+            .setSummarizeThreshold(summarizeThreshold)
+            .build();
+    return roller.roll(rollString, n -> 0, n -> 0, n -> 0);
+  }
+
+  /**
+   * Reads every record of a journal.
+   *
+   * @param path the path of the journal.
+   * @return the records.
+   */
+  private static List<GenesysRollJournal.Entry> readAll(Path path) throws IOException {
+    var entries = new ArrayList<GenesysRollJournal.Entry>();
+    try (var reader = GenesysRollJournal.read(path)) {
+      for (var entry = reader.next(); entry != null; entry = reader.next()) {
+        entries.add(entry);
+      }
+      assertNull(reader.next());
+    }
+    return entries;
+  }
+
+  /**
+   * Writes bytes into a file.
+   *
+   * @param path the path of the file.
+   * @param position the position to write at.
+   * @param bytes the bytes.
+   */
+  private static void write(Path path, long position, ByteBuffer bytes) throws IOException {
+    try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      channel.write(bytes, position);
+    }
+  }
+
+  /**
+   * Checks a record holds a result.
+   *
+   * @param expected the result.
+   * @param entry the record.
+   */
+  private static void assertEntry(GenesysDiceResult expected, GenesysRollJournal.Entry entry) {
+    var counts = entry.counts();
+    assertEquals(expected.getRollString(), counts.getRollString());
+    assertEquals(expected.getSuccessCount(), counts.getSuccessCount());
+    assertEquals(expected.getFailureCount(), counts.getFailureCount());
+    assertEquals(expected.getAdvantageCount(), counts.getAdvantageCount());
+    assertEquals(expected.getThreatCount(), counts.getThreatCount());
+    assertEquals(expected.getTriumphCount(), counts.getTriumphCount());
+    assertEquals(expected.getDespairCount(), counts.getDespairCount());
+    assertEquals(expected.getLightCount(), counts.getLightCount());
+    assertEquals(expected.getDarkCount(), counts.getDarkCount());
+    assertEquals(expected.getRolls(), entry.rolls());
+    assertEquals(expected.getSummarizedResults(), entry.summarizedResults());
+  }
+}
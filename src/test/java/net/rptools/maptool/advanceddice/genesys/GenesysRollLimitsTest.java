@@ -0,0 +1,180 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.advanceddice.genesys;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/** Tests that {@link GenesysRollLimits} are checked before anything is rolled. */
+class GenesysRollLimitsTest {
+
+  /** Resolver used for all variables, properties and prompts. */
+  private static final ToIntFunction<String> RESOLVER = n -> 1;
+
+  /** The limits under test. */
+  private final GenesysRollLimits limits =
+      new GenesysRollLimitsBuilder().setMaxDice(100).setMaxGroupDepth(4).build();
+
+  /** The roller with the limits under test. */
+  private final GenesysDiceRoller roller = new GenesysDiceRoller().withLimits(limits);
+
+  /** Checks a roll with exactly the most dice and results is rolled and one more is rejected. */
+  @Test
+  void diceOverLimitAreRejected() {
+    assertFalse(roller.roll("100g", RESOLVER, RESOLVER, RESOLVER).hasErrors());
+    assertFalse(roller.roll("99g success", RESOLVER, RESOLVER, RESOLVER).hasErrors());
+    assertTrue(roller.roll("101g", RESOLVER, RESOLVER, RESOLVER).hasErrors());
+    assertTrue(roller.roll("100g success", RESOLVER, RESOLVER, RESOLVER).hasErrors());
+    assertTrue(roller.roll("{n}g", n -> 101, RESOLVER, RESOLVER).hasErrors());
+    assertTrue(roller.rollCounts("101g", RESOLVER, RESOLVER, RESOLVER).hasErrors());
+  }
+
+  /** Checks a roll over the dice limit keeps only counts when the limits allow it. */
+  @Test
+  void diceOverLimitKeepOnlyCounts() {
+    var countsOnly =
+        new GenesysDiceRollerBuilder()
+            .setSummarizeThreshold(Integer.MAX_VALUE)
+            .setLimits(
+                new GenesysRollLimitsBuilder()
+                    .setMaxDice(100)
+                    .setOverDiceLimit(GenesysRollLimits.Action.COUNTS_ONLY)
+                    .build())
+            .build();
+    var atLimit = countsOnly.roll("100g", RESOLVER, RESOLVER, RESOLVER);
+    assertEquals(100, atLimit.getRolls().size());
+    assertTrue(atLimit.getSummarizedResults().isEmpty());
+
+    var overLimit = countsOnly.roll("101g", RESOLVER, RESOLVER, RESOLVER);
+    assertFalse(overLimit.hasErrors());
+    assertTrue(overLimit.getRolls().isEmpty());
+    int dice = 0;
+    for (var summarized : overLimit.getSummarizedResults()) {
+      dice += summarized.count();
+    }
+    assertEquals(101, dice);
+
+    var uncountable = countsOnly.roll("{n}g{n}y", n -> Integer.MAX_VALUE / 2, RESOLVER, RESOLVER);
+    assertTrue(uncountable.hasErrors());
+  }
+
+  /** Checks the number of distinct names is limited before any of them are resolved. */
+  @Test
+  void resolverCallsOverLimitAreRejected() {
+    var limited =
+        new GenesysDiceRoller()
+            .withLimits(new GenesysRollLimitsBuilder().setMaxResolverCalls(2).build());
+    var calls = new AtomicInteger();
+    ToIntFunction<String> counting = n -> calls.incrementAndGet();
+    assertFalse(limited.roll("{a}g{@b}y", counting, counting, counting).hasErrors());
+    assertFalse(limited.roll("{a}g{a}y{@b}p", counting, counting, counting).hasErrors());
+    calls.set(0);
+    assertTrue(limited.roll("{a}g{@b}y{?c}p", counting, counting, counting).hasErrors());
+    assertEquals(0, calls.get());
+  }
+
+  /** Checks capture groups nested exactly as deep as the limit are allowed and deeper are not. */
+  @Test
+  void groupsOverDepthLimitAreRejected() {
+    var atLimit = nestedPlan(4);
+    assertEquals(4, atLimit.getGroupDepth());
+    assertFalse(limits.checkPlan(atLimit).hasErrors());
+    assertTrue(limits.checkPlan(nestedPlan(5)).hasErrors());
+    assertNull(limits.checkNesting("((((g))))"));
+    assertNotNull(limits.checkNesting("(((((g)))))"));
+  }
+
+  /** Checks a batch whose rolls are each under the limit is rejected if the batch is over it. */
+  @Test
+  void batchOverDiceLimitIsRejected() {
+    var batch = roller.rollBatch("1g", Integer.MAX_VALUE / 2, RESOLVER, RESOLVER, RESOLVER);
+    assertEquals(0, batch.getTrialCount());
+    assertEquals(1, batch.getErrors().size());
+  }
+
+  /** Checks a batch of empty rolls is still limited by the number of rolls. */
+  @Test
+  void batchOfEmptyRollsIsLimited() {
+    assertFalse(roller.rollBatch("", 101, RESOLVER, RESOLVER, RESOLVER).getErrors().isEmpty());
+    assertTrue(roller.rollBatch("", 100, RESOLVER, RESOLVER, RESOLVER).getErrors().isEmpty());
+  }
+
+  /** Checks a batch under the dice limit is rolled. */
+  @Test
+  void batchUnderDiceLimitIsRolled() {
+    var batch = roller.rollBatch("2g{x}y", 25, RESOLVER, RESOLVER, RESOLVER);
+    assertTrue(batch.getErrors().isEmpty());
+    assertEquals(25, batch.getTrialCount());
+  }
+
+  /**
+   * Returns a plan of an ability die inside capture groups nested to a depth.
+   *
+   * @param depth how deeply the groups are nested.
+   * @return the plan.
+   */
+  private static GenesysRollPlan nestedPlan(int depth) {
+    var source = "g";
+    var die = new GenesysRollPlan.DiceRoll(GenesysRollPlan.Count.ONE, GenesysDiceType.ABILITY);
+    var plan = new GenesysRollPlan.Sequence(source, 0, 1, List.of(die));
+    for (int i = 0; i < depth; i++) {
+      plan =
+          new GenesysRollPlan.Sequence(
+              source, 0, 1, List.of(new GenesysRollPlan.Group("g" + i, plan)));
+    }
+    return GenesysRollPlan.of(source, plan);
+  }
+
+  /**
+   * Checks parentheses in strings and names are not counted as nesting.
+   *
+   * @param rollString the dice string.
+   */
+  @ParameterizedTest
+  @ValueSource(
+      strings = {
+        "#fn(1, '(((((', 2)",
+        "#fn(1, \"(((((\", 2)",
+        "#fn(1, 'a\\'(((((', 2)",
+        "{(((((x}g",
+        "{@(((((}g",
+        "{?(((((}g",
+        "((('(((((')))"
+      })
+  void quotedParenthesesAreNotNesting(String rollString) {
+    assertNull(limits.checkNesting(rollString), () -> "Rejected '" + rollString + "'");
+  }
+
+  /**
+   * Checks parentheses outside strings and names, or after an unclosed one, are counted.
+   *
+   * @param rollString the dice string.
+   */
+  @ParameterizedTest
+  @ValueSource(strings = {"(((((g)))))", "'a'(((((g)))))", "{x}(((((g)))))", "'(((((", "{(((((g"})
+  void unquotedParenthesesAreNesting(String rollString) {
+    assertNotNull(limits.checkNesting(rollString), () -> "Accepted '" + rollString + "'");
+  }
+}